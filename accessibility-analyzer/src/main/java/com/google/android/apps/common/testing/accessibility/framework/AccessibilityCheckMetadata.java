@@ -18,7 +18,13 @@ package com.google.android.apps.common.testing.accessibility.framework;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.android.apps.common.testing.accessibility.framework.checks.ClassNameCheck;
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck;
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.TouchTargetSizeCheck;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 
 import javax.annotation.Nullable;
 
@@ -29,10 +35,11 @@ public final class AccessibilityCheckMetadata {
      * appearance of an interface. For example, contrast evaluation samples regions of the display to
      * heuristically evaluate foreground/background contrast ratios.
      * <p>
-     * Expected type: android.graphics.Bitmap, stored in {@link Metadata} as a non-serialized object
+     * Expected type: {@link Image}, or a {@link Supplier} of one which defers decoding until a check
+     * first samples the screen, stored in {@link Metadata} as a non-serialized object
      * <p>
-     * Expected data: A Bitmap containing a full image of the device's default display at the time
-     * check execution occurs. The Bitmap should have dimensions which match the DisplayMetrics
+     * Expected data: An Image containing a full image of the device's default display at the time
+     * check execution occurs. The Image should have dimensions which match the DisplayMetrics
      * obtained from WindowManager's default display. The screen area should not be altered, cropped,
      * or adjusted in any way.
      */
@@ -41,8 +48,8 @@ public final class AccessibilityCheckMetadata {
 
     /**
      * Metadata key for the {@code double} user-defined heuristic contrast ratio. This is used by
-     * @link ImageContrastCheck or @link TextContrastCheck. When the value for this key is set, it
-     * will override the default value used by those checks.
+     * {@link ImageContrastCheck} or {@link TextContrastCheck}. When the value for this key is set,
+     * it will override the default value used by those checks.
      */
     public static final String METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO =
             "com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO";
@@ -55,42 +62,67 @@ public final class AccessibilityCheckMetadata {
     public static final String METADATA_KEY_CUSTOMIZED_TOUCH_TARGET_SIZE =
             "com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.METADATA_KEY_CUSTOMIZED_TOUCH_TARGET_SIZE";
 
+    /**
+     * Metadata key for user-defined package name prefixes which {@link ClassNameCheck} accepts in
+     * addition to its defaults.
+     * <p>
+     * Expected type: {@link ImmutableList} of {@code String}, stored in {@link Metadata} as a
+     * non-serialized object
+     */
+    public static final String METADATA_KEY_CUSTOMIZED_UI_PACKAGE_NAMES =
+            "com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.METADATA_KEY_CUSTOMIZED_UI_PACKAGE_NAMES";
+
     private AccessibilityCheckMetadata() {}
 
     /**
      * @param metadata A {@link Metadata} from which to extract screen capture data.
-     * @return A {@link Bitmap} containing screen capture data from the provided {@code metadata}, or
+     * @return An {@link Image} containing screen capture data from the provided {@code metadata}, or
      *     {@code null} if no screen capture data was present.
      */
-// FIXME: Handle bitmap metadata
-//    public static @Nullable
-//    Bitmap getScreenCaptureFromMetadata(@Nullable Metadata metadata) {
-//        Bitmap screenCapture = null;
-//        if (metadata != null) {
-//            screenCapture =
-//                    (Bitmap)
-//                            metadata.getNonSerializedObject(
-//                                    AccessibilityCheckMetadata.METADATA_KEY_SCREEN_CAPTURE_BITMAP, null);
-//        }
-//        return screenCapture;
-//    }
+    public static @Nullable Image getScreenCaptureFromMetadata(@Nullable Metadata metadata) {
+        Object screenCapture = null;
+        if (metadata != null) {
+            screenCapture =
+                    metadata.getNonSerializedObject(
+                            AccessibilityCheckMetadata.METADATA_KEY_SCREEN_CAPTURE_BITMAP, null);
+        }
+        if (screenCapture instanceof Supplier) {
+            return (Image) ((Supplier<?>) screenCapture).get();
+        }
+        return (Image) screenCapture;
+    }
 
     /**
-     * Adds screen capture data from the provided {@code bitmap} to {@code metadata}
+     * Adds screen capture data from the provided {@code image} to {@code metadata}
      *
-     * @param bitmap A @link Bitmap containing screen capture data as described by {@link
+     * @param image An {@link Image} containing screen capture data as described by {@link
      *     #METADATA_KEY_SCREEN_CAPTURE_BITMAP}
      * @param metadata The {@link Metadata} to which the screen capture data should be added
      */
-// FIXME: Handle bitmap metadata
-//    public static void putScreenCaptureInMetadata(Bitmap bitmap, Metadata metadata) {
-//        checkNotNull(metadata)
-//                .putNonSerializedObject(METADATA_KEY_SCREEN_CAPTURE_BITMAP, checkNotNull(bitmap));
-//    }
+    public static void putScreenCaptureInMetadata(Image image, Metadata metadata) {
+        checkNotNull(metadata)
+                .putNonSerializedObject(METADATA_KEY_SCREEN_CAPTURE_BITMAP, checkNotNull(image));
+    }
+
+    /**
+     * Adds a source of screen capture data to {@code metadata}, which is only consulted once a check
+     * needs to sample the screen. The {@code supplier} is called on every such request, so it should
+     * decode at most once and return the same {@link Image} each time.
+     *
+     * @param supplier A {@link Supplier} of screen capture data as described by {@link
+     *     #METADATA_KEY_SCREEN_CAPTURE_BITMAP}, which may supply {@code null} if the data could not
+     *     be obtained
+     * @param metadata The {@link Metadata} to which the screen capture data should be added
+     */
+    public static void putScreenCaptureSupplierInMetadata(
+            Supplier<Image> supplier, Metadata metadata) {
+        checkNotNull(metadata)
+                .putNonSerializedObject(METADATA_KEY_SCREEN_CAPTURE_BITMAP, checkNotNull(supplier));
+    }
 
     /**
      * @param metadata A {@link Metadata} from which to extract the user-defined heuristic contrast
-     *     ratio used by @link ImageContrastCheck or @link TextContrastCheck.
+     *     ratio used by {@link ImageContrastCheck} or {@link TextContrastCheck}.
      * @return A {@link Double} for the user-defined heuristic contrast ratio from the provided {@code
      *     metadata}, or {@code null} when the metadata is {@code null} or it does not contain the
      *     key.
@@ -120,4 +152,34 @@ public final class AccessibilityCheckMetadata {
             return null;
         }
     }
+
+    /**
+     * @param metadata A {@link Metadata} from which to extract the user-defined package name
+     *     prefixes accepted by {@link ClassNameCheck}.
+     * @return An {@link ImmutableList} of the user-defined package name prefixes from the
+     *     provided {@code metadata}, or {@code null} when the metadata is {@code null} or it does
+     *     not contain the key.
+     */
+    @SuppressWarnings("unchecked")
+    public static @Nullable ImmutableList<String> getCustomizedUiPackageNamesInMetadata(
+            @Nullable Metadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        return (ImmutableList<String>)
+                metadata.getNonSerializedObject(METADATA_KEY_CUSTOMIZED_UI_PACKAGE_NAMES, null);
+    }
+
+    /**
+     * Adds package name prefixes which {@link ClassNameCheck} should accept to {@code metadata}
+     *
+     * @param packageNames The package name prefixes, as described by {@link
+     *     #METADATA_KEY_CUSTOMIZED_UI_PACKAGE_NAMES}
+     * @param metadata The {@link Metadata} to which the package name prefixes should be added
+     */
+    public static void putCustomizedUiPackageNamesInMetadata(
+            Iterable<String> packageNames, Metadata metadata) {
+        checkNotNull(metadata).putNonSerializedObject(
+                METADATA_KEY_CUSTOMIZED_UI_PACKAGE_NAMES, ImmutableList.copyOf(packageNames));
+    }
 }
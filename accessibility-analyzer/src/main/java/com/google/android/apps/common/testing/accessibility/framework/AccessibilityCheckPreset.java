@@ -21,12 +21,15 @@ import com.google.android.apps.common.testing.accessibility.framework.checks.Cli
 import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateSpeakableTextCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.EditableContentDescCheck;
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck;
+import com.google.android.apps.common.testing.accessibility.framework.checks.OverlappingTouchTargetCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.RedundantDescriptionCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.SpeakableTextPresentCheck;
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.TouchTargetSizeCheck;
 import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck;
 import com.google.common.collect.ImmutableClassToInstanceMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -66,8 +69,9 @@ public enum AccessibilityCheckPreset {
                     .put(RedundantDescriptionCheck.class, new RedundantDescriptionCheck())
                     .put(ClassNameCheck.class, new ClassNameCheck())
                     .put(TraversalOrderCheck.class, new TraversalOrderCheck())
-//                    .put(TextContrastCheck.class, new TextContrastCheck())
-//                    .put(ImageContrastCheck.class, new ImageContrastCheck())
+                    .put(OverlappingTouchTargetCheck.class, new OverlappingTouchTargetCheck())
+                    .put(TextContrastCheck.class, new TextContrastCheck())
+                    .put(ImageContrastCheck.class, new ImageContrastCheck())
                     .build();
 
     /**
@@ -82,11 +86,12 @@ public enum AccessibilityCheckPreset {
      * Retrieve checks for {@code AccessibilityHierarchy}s based on a desired preset.
      *
      * @param preset The preset of interest
-     * @return A set of all checks for {@code AccessibilityHierarchy}s with scopes for the preset
+     * @return A set of all checks for {@code AccessibilityHierarchy}s with scopes for the preset,
+     *     iterated in the order in which the checks were introduced
      */
     public static Set<AccessibilityHierarchyCheck>
     getAccessibilityHierarchyChecksForPreset(AccessibilityCheckPreset preset) {
-        Set<AccessibilityHierarchyCheck> checks = new HashSet<>();
+        Set<AccessibilityHierarchyCheck> checks = new LinkedHashSet<>();
 
         if (preset == NO_CHECKS) {
             return checks;
@@ -105,7 +110,6 @@ public enum AccessibilityCheckPreset {
         checks.add(CLASS_TO_HIERARCHY_CHECK.get(EditableContentDescCheck.class));
         checks.add(CLASS_TO_HIERARCHY_CHECK.get(TouchTargetSizeCheck.class));
         checks.add(CLASS_TO_HIERARCHY_CHECK.get(DuplicateSpeakableTextCheck.class));
-//        checks.add(CLASS_TO_HIERARCHY_CHECK.get(TextContrastCheck.class));
         if (preset == VERSION_1_0_CHECKS) {
             return checks;
         }
@@ -119,7 +123,6 @@ public enum AccessibilityCheckPreset {
         }
 
         /* Checks included in version 3.0 */
-//        checks.add(CLASS_TO_HIERARCHY_CHECK.get(ImageContrastCheck.class));
         checks.add(CLASS_TO_HIERARCHY_CHECK.get(ClassNameCheck.class));
         checks.add(CLASS_TO_HIERARCHY_CHECK.get(TraversalOrderCheck.class));
         if (preset == VERSION_3_0_CHECKS) {
@@ -127,10 +130,14 @@ public enum AccessibilityCheckPreset {
         }
 
         /* Checks added since last release */
+        checks.add(CLASS_TO_HIERARCHY_CHECK.get(OverlappingTouchTargetCheck.class));
         if (preset == LATEST) {
             return checks;
         }
 
+        /* Checks to be added to LATEST once their estimates from screen captures are trusted */
+        checks.add(CLASS_TO_HIERARCHY_CHECK.get(TextContrastCheck.class));
+        checks.add(CLASS_TO_HIERARCHY_CHECK.get(ImageContrastCheck.class));
         if (preset == PRERELEASE) {
             return checks;
         }
@@ -0,0 +1,88 @@
+package com.google.android.apps.common.testing.accessibility.framework;
+
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.Nullable;
+
+/**
+ * Runs a set of {@link AccessibilityHierarchyCheck}s against a single
+ * {@link AccessibilityHierarchy}, optionally concurrently.
+ * <p>
+ * Checks are independent of each other once the hierarchy has been built, so each may run as a
+ * separate task on an {@link Executor}. Their results are merged in the order the checks were
+ * supplied, and within each check in the order it reported them, so the outcome does not depend on
+ * how the tasks were scheduled.
+ */
+public final class AccessibilityHierarchyCheckRunner {
+
+    private AccessibilityHierarchyCheckRunner() {}
+
+    /**
+     * Runs each of {@code checks} as a separate task on {@code executor}, and waits for all of them
+     * to complete.
+     *
+     * @param checks The checks to run
+     * @param hierarchy The hierarchy to check, which must not be modified while checks are running
+     * @param fromRoot The element from which to evaluate, or {@code null} to evaluate the active
+     *     window, as for {@link AccessibilityHierarchyCheck#runCheckOnHierarchy}
+     * @param metadata Metadata for the checks, which must not be modified while checks are running
+     * @param executor The executor on which to run the checks. A direct executor runs them
+     *     sequentially on the calling thread.
+     * @return The results of all checks, in the order of {@code checks}
+     * @throws InterruptedException if interrupted while waiting, in which case checks that have not
+     *     yet completed are cancelled
+     * @throws RuntimeException or {@link Error} thrown by the first check, in the order of {@code
+     *     checks}, which failed. Checks that have not yet completed are then cancelled.
+     */
+    public static List<AccessibilityHierarchyCheckResult> runChecks(
+            Iterable<? extends AccessibilityHierarchyCheck> checks,
+            final AccessibilityHierarchy hierarchy,
+            final @Nullable ViewHierarchyElement fromRoot,
+            final @Nullable Metadata metadata,
+            Executor executor) throws InterruptedException {
+        List<FutureTask<List<AccessibilityHierarchyCheckResult>>> tasks = new ArrayList<>();
+        for (final AccessibilityHierarchyCheck check : checks) {
+            FutureTask<List<AccessibilityHierarchyCheckResult>> task =
+                    new FutureTask<>(
+                            new Callable<List<AccessibilityHierarchyCheckResult>>() {
+                                @Override
+                                public List<AccessibilityHierarchyCheckResult> call() {
+                                    return check.runCheckOnHierarchy(hierarchy, fromRoot, metadata);
+                                }
+                            });
+            tasks.add(task);
+            executor.execute(task);
+        }
+
+        List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
+        boolean completed = false;
+        try {
+            for (FutureTask<List<AccessibilityHierarchyCheckResult>> task : tasks) {
+                results.addAll(task.get());
+            }
+            completed = true;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Check failed", cause);
+        } finally {
+            if (!completed) {
+                for (FutureTask<List<AccessibilityHierarchyCheckResult>> task : tasks) {
+                    task.cancel(true);
+                }
+            }
+        }
+        return results;
+    }
+}
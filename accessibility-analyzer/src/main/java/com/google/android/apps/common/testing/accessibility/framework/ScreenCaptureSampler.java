@@ -0,0 +1,28 @@
+package com.google.android.apps.common.testing.accessibility.framework;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implemented by {@link AccessibilityHierarchyCheck}s which sample screen capture data, so that a
+ * caller can decode only the part of the screen capture that the checks will read.
+ *
+ * @see AccessibilityCheckMetadata#METADATA_KEY_SCREEN_CAPTURE_BITMAP
+ */
+public interface ScreenCaptureSampler {
+
+    /**
+     * @param hierarchy The hierarchy the check will be run on
+     * @param fromRoot The root of the subtree the check will be run on, or {@code null} to run on
+     *     the full hierarchy
+     * @return The smallest region of the screen, in screen coordinates, containing every pixel the
+     *     check may sample when run with the same arguments, or {@code null} if it samples none. An
+     *     {@link Image} covering at least this region is sufficient for the check.
+     */
+    @Nullable
+    Rect getSampledRegion(AccessibilityHierarchy hierarchy, @Nullable ViewHierarchyElement fromRoot);
+}
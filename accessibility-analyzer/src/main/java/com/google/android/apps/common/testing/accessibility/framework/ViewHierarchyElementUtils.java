@@ -3,10 +3,15 @@ package com.google.android.apps.common.testing.accessibility.framework;
 import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
 import com.google.android.apps.common.testing.accessibility.framework.replacements.SpannableString;
 import com.google.android.apps.common.testing.accessibility.framework.replacements.SpannableStringBuilder;
 import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -17,8 +22,36 @@ public final class ViewHierarchyElementUtils {
 
     private ViewHierarchyElementUtils() {}
 
+    /**
+     * Determine the smallest rectangle containing the on-screen bounds of each of a set of elements.
+     *
+     * @param elements The elements whose bounds should be contained. Elements with empty bounds
+     * are ignored.
+     * @return The union of the elements' bounds, or {@code null} if none have non-empty bounds
+     */
+    public static @Nullable Rect getUnionOfBounds(Iterable<ViewHierarchyElement> elements) {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (ViewHierarchyElement element : elements) {
+            if (element.isBoundsInScreenEmpty()) {
+                continue;
+            }
+            left = Math.min(left, element.getBoundsInScreenLeft());
+            top = Math.min(top, element.getBoundsInScreenTop());
+            right = Math.max(right, element.getBoundsInScreenRight());
+            bottom = Math.max(bottom, element.getBoundsInScreenBottom());
+        }
+        return (left < right) ? new Rect(left, top, right, bottom) : null;
+    }
+
     /**
      * Determine what text would be spoken by a screen reader for an element.
+     * <p>
+     * The element's subtree is walked iteratively, appending the text of each element to a single
+     * builder, so that deep hierarchies neither overflow the stack nor copy the text of every
+     * subtree into that of its parent.
      *
      * @param element The element whose spoken text is desired. If it or its children are only
      * partially initialized, this method may return additional text that would not be spoken.
@@ -26,47 +59,45 @@ public final class ViewHierarchyElementUtils {
      */
     public static SpannableString getSpeakableTextForElement(ViewHierarchyElement element) {
         SpannableStringBuilder returnStringBuilder = new SpannableStringBuilder();
+        Deque<ViewHierarchyElement> pending = new ArrayDeque<>();
+        pending.push(element);
+        while (!pending.isEmpty()) {
+            ViewHierarchyElement current = getLabelingElement(pending.pop());
+
+            if (!FALSE.equals(current.isImportantForAccessibility())) {
+                // Content descriptions override everything else -- including children
+                SpannableString contentDescription = current.getContentDescription();
+                if (!TextUtils.isEmpty(contentDescription)) {
+                    returnStringBuilder.appendWithSeparator(contentDescription);
+                    continue;
+                }
 
-        if (!FALSE.equals(element.isImportantForAccessibility())) {
-            // Determine if this element is labeled by another element
-            if (element.getLabeledBy() != null) {
-                return getSpeakableTextForElement(element.getLabeledBy());
-            }
-
-            // Content descriptions override everything else -- including children
-            SpannableString contentDescription = element.getContentDescription();
-            if (!TextUtils.isEmpty(contentDescription)) {
-                returnStringBuilder.appendWithSeparator(contentDescription);
-                return returnStringBuilder.build();
-            }
-
-            SpannableString text = element.getText();
-            if (!TextUtils.isEmpty(text) && (TextUtils.getTrimmedLength(text) > 0)) {
-                returnStringBuilder.appendWithSeparator(text);
-            }
+                SpannableString text = current.getText();
+                if (!TextUtils.isEmpty(text) && (TextUtils.getTrimmedLength(text) > 0)) {
+                    returnStringBuilder.appendWithSeparator(text);
+                }
 
-            if (TRUE.equals(element.isCheckable())) {
-                if (TRUE.equals(element.isChecked())) {
-                    returnStringBuilder.appendWithSeparator("Checked");
-                } else if (FALSE.equals(element.isChecked())) {
-                    returnStringBuilder.appendWithSeparator("Not checked");
+                if (TRUE.equals(current.isCheckable())) {
+                    if (TRUE.equals(current.isChecked())) {
+                        returnStringBuilder.appendWithSeparator("Checked");
+                    } else if (FALSE.equals(current.isChecked())) {
+                        returnStringBuilder.appendWithSeparator("Not checked");
+                    }
                 }
-            }
 
-            if (TRUE.equals(element.isListView())
-                    && element.getChildViewCount() == 0) {
-                returnStringBuilder.appendWithSeparator("List showing 0 items");
+                if (TRUE.equals(current.isListView())
+                        && current.getChildViewCount() == 0) {
+                    returnStringBuilder.appendWithSeparator("List showing 0 items");
+                }
             }
-        }
 
-        /* Collect speakable text from children */
-        for (int i = 0; i < element.getChildViewCount(); ++i) {
-            ViewHierarchyElement child = element.getChildView(i);
-            if (!FALSE.equals(child.isVisibleToUser())
-                    && !TRUE.equals(isActionableForAccessibility(child))) {
-                SpannableString childDesc = getSpeakableTextForElement(child);
-                if (!TextUtils.isEmpty(childDesc)) {
-                    returnStringBuilder.appendWithSeparator(childDesc);
+            /* Collect speakable text from children, pushed in reverse so that they are visited in
+             * order */
+            for (int i = current.getChildViewCount() - 1; i >= 0; --i) {
+                ViewHierarchyElement child = current.getChildView(i);
+                if (!FALSE.equals(child.isVisibleToUser())
+                        && !TRUE.equals(isActionableForAccessibility(child))) {
+                    pending.push(child);
                 }
             }
         }
@@ -74,6 +105,35 @@ public final class ViewHierarchyElementUtils {
         return returnStringBuilder.build();
     }
 
+    /**
+     * Determine the element whose text a screen reader speaks in place of an element's own, by
+     * following the chain of elements labeling it.
+     *
+     * @param element The element whose label is desired
+     * @return The last element in the chain of labels of {@code element} which is important for
+     * accessibility, or {@code element} itself if it is not labeled. A chain which loops back on
+     * itself ends at the element which closes the loop.
+     */
+    private static ViewHierarchyElement getLabelingElement(ViewHierarchyElement element) {
+        ViewHierarchyElement current = element;
+        Set<ViewHierarchyElement> visited = null;
+        while (current.isImportantForAccessibility()) {
+            ViewHierarchyElement labeledBy = current.getLabeledBy();
+            if (labeledBy == null) {
+                break;
+            }
+            if (visited == null) {
+                visited = new HashSet<>();
+                visited.add(current);
+            }
+            if (!visited.add(labeledBy)) {
+                break;
+            }
+            current = labeledBy;
+        }
+        return current;
+    }
+
     /**
      * Determines if the supplied {@link ViewHierarchyElement} would be focused during navigation
      * operations with a screen reader.
@@ -83,32 +143,7 @@ public final class ViewHierarchyElementUtils {
      * view}, {@code false} otherwise.
      */
     public static boolean shouldFocusView(ViewHierarchyElement view) {
-        if (!TRUE.equals(view.isVisibleToUser())) {
-            // We don't focus views that are not visible
-            return false;
-        }
-
-        if (isAccessibilityFocusable(view)) {
-            if (!hasAnyImportantDescendant(view)) {
-                // Leaves that are accessibility focusable always gain focus regardless of presence of a
-                // spoken description. This allows unlabeled, but still actionable, widgets to be activated
-                // by the user.
-                return true;
-            } else if (isSpeakingView(view)) {
-                // The view (or its grouped non-actionable children) have content to speak.
-                return true;
-            }
-
-            return false;
-        }
-
-        if (hasText(view)
-                && TRUE.equals(view.isImportantForAccessibility())
-                && !hasFocusableAncestor(view)) {
-            return true;
-        }
-
-        return false;
+        return view.getWindow().getViewFocusability().shouldFocusView(view.getId());
     }
 
     /**
@@ -122,189 +157,4 @@ public final class ViewHierarchyElementUtils {
     private static boolean isActionableForAccessibility(ViewHierarchyElement element) {
         return element.isClickable() || element.isFocusable() || element.isLongClickable();
     }
-
-    /**
-     * Determines if the supplied {@link ViewHierarchyElement} has an ancestor which meets the
-     * criteria for gaining accessibility focus. <p> NOTE: This method only evaluates ancestors which
-     * may be considered important for accessibility and explicitly does not evaluate the supplied
-     * {@code view}.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if an ancestor of {@code view} may gain accessibility focus, {@code false}
-     * otherwise
-     */
-    private static boolean hasFocusableAncestor(ViewHierarchyElement view) {
-        ViewHierarchyElement parent = getImportantForAccessibilityAncestor(view);
-        if (parent == null) {
-            return false;
-        }
-
-        if (isAccessibilityFocusable(parent)) {
-            return true;
-        }
-
-        return hasFocusableAncestor(parent);
-    }
-
-    /**
-     * Determines if the supplied {@link ViewHierarchyElement} meets the criteria for gaining
-     * accessibility focus.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if it is possible for {@code view} to gain accessibility focus, {@code
-     * false} otherwise.
-     */
-    private static boolean isAccessibilityFocusable(ViewHierarchyElement view) {
-        if (!TRUE.equals(view.isVisibleToUser())) {
-            return false;
-        }
-
-        if (!view.isImportantForAccessibility()) {
-            return false;
-        }
-
-        if (TRUE.equals(isActionableForAccessibility(view))) {
-            return true;
-        }
-
-        return isChildOfScrollableContainer(view) && isSpeakingView(view);
-    }
-
-    /**
-     * Determines if the supplied {@link ViewHierarchyElement} is a top-level item within a scrollable
-     * container.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if {@code view} is a top-level view within a scrollable container, {@code
-     * false} otherwise
-     */
-    private static boolean isChildOfScrollableContainer(ViewHierarchyElement view) {
-
-        // Identify the nearest importantForAccessibility parent
-        ViewHierarchyElement parent = getImportantForAccessibilityAncestor(view);
-
-        if (parent == null) {
-            return false;
-        }
-
-        if (TRUE.equals(parent.isScrollable())) {
-            return true;
-        }
-
-        // Specifically check for parents that are AdapterView, ScrollView, or HorizontalScrollView, but
-        // exclude Spinners, which are a special case of AdapterView.  TalkBack explicitly identifies
-        // views with parents matching these classes as direct children of a scrollable container.
-        if (TRUE.equals(parent.isSpinner())) {
-            return false;
-        }
-
-        return (TRUE.equals(parent.isAdapterView()))
-                || (TRUE.equals(parent.isScrollView()))
-                || (TRUE.equals(parent.isHorizontalScrollView()));
-    }
-
-    /**
-     * Determines if the supplied {@link ViewHierarchyElement} is one which would produce speech if it
-     * were to gain accessibility focus. <p> NOTE: This method also evaluates the subtree of the
-     * {@code view} for children that should be included in {@code view}'s spoken description.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if a spoken description for {@code view} was determined, {@code false}
-     * otherwise.
-     */
-    private static boolean isSpeakingView(ViewHierarchyElement view) {
-        if (hasText(view)) {
-            return true;
-        } else if (TRUE.equals(view.isCheckable())) {
-            // Special case for checkable items, which screen readers may describe without text
-            return true;
-        } else if (hasNonFocusableSpeakingChildren(view)) {
-            return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * Determines if the supplied {@link ViewHierarchyElement} has child view(s) which are not
-     * independently accessibility focusable and also have a spoken description. Put another way, this
-     * method determines if {@code view} has at least one child which should be included in {@code
-     * view}'s spoken description if {@code view} were to be accessibility focused.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if {@code view} has non-actionable speaking children within its subtree
-     */
-    private static boolean hasNonFocusableSpeakingChildren(ViewHierarchyElement view) {
-        for (int i = 0; i < view.getChildViewCount(); ++i) {
-            ViewHierarchyElement child = view.getChildView(i);
-            if ((child == null)
-                    || (!TRUE.equals(child.isVisibleToUser()))
-                    || isAccessibilityFocusable(child)) {
-                continue;
-            }
-
-            if (TRUE.equals(child.isImportantForAccessibility())
-                    && isSpeakingView(child)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    /**
-     * Determines if the supplied {@link ViewHierarchyElement} has a contentDescription or text.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if {@code view} has a contentDescription or text, {@code false} otherwise.
-     */
-    private static boolean hasText(ViewHierarchyElement view) {
-        return !TextUtils.isEmpty(view.getText()) || !TextUtils.isEmpty(view.getContentDescription());
-    }
-
-    /**
-     * Returns the nearest ancestor in the provided {@code view}'s lineage that is important for
-     * accessibility.
-     *
-     * @param view The {@link ViewHierarchyElement} to evaluate
-     * @return The first important for accessibility {@link ViewHierarchyElement} in {@code view}'s
-     * lineage, or {@code null} if no such ancestor exists.
-     */
-    private static @Nullable
-    ViewHierarchyElement getImportantForAccessibilityAncestor(
-            ViewHierarchyElement view) {
-        ViewHierarchyElement parent = view.getParentView();
-        while ((parent != null) && !TRUE.equals(view.isImportantForAccessibility())) {
-            parent = parent.getParentView();
-        }
-
-        return parent;
-    }
-
-    /**
-     * Determines if the provided {@code element} has any descendant, direct or indirect, which is
-     * considered important for accessibility.  This is useful in determining whether or not the
-     * Android framework will attempt to reparent any child in the subtree as a direct descendant of
-     * {@code element} while converting the hierarchy to an accessibility API representation.
-     *
-     * @param element the {@link ViewHierarchyElement} to evaluate
-     * @return {@code true} if any child in {@code element}'s subtree is considered important for
-     *         accessibility, {@code false} otherwise
-     */
-    private static boolean hasAnyImportantDescendant(ViewHierarchyElement element) {
-        for (int i = 0; i < element.getChildViewCount(); ++i) {
-            ViewHierarchyElement child = element.getChildView(i);
-            if (TRUE.equals(child.isImportantForAccessibility())) {
-                return true;
-            }
-
-            if (child.getChildViewCount() > 0) {
-                if (hasAnyImportantDescendant(child)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
-    }
 }
@@ -1,5 +1,6 @@
 package com.google.android.apps.common.testing.accessibility.framework.checks;
 
+import static com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.getCustomizedUiPackageNamesInMetadata;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.Boolean.TRUE;
 
@@ -12,6 +13,9 @@ import com.google.android.apps.common.testing.accessibility.framework.replacemen
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.utils.text.PrefixMatcher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -44,20 +48,25 @@ public class ClassNameCheck extends AccessibilityHierarchyCheck {
      */
     public static final String KEY_ACCESSIBILITY_CLASS_NAME = "KEY_ACCESSIBILITY_CLASS_NAME";
 
-    private static final List<String> VALID_UI_PACKAGE_NAMES = new ArrayList<>(11);
-
-    static {
-        VALID_UI_PACKAGE_NAMES.add("android.app");
-        VALID_UI_PACKAGE_NAMES.add("android.appwidget");
-        VALID_UI_PACKAGE_NAMES.add("android.inputmethodservice");
-        VALID_UI_PACKAGE_NAMES.add("android.support");
-        VALID_UI_PACKAGE_NAMES.add("android.view");
-        VALID_UI_PACKAGE_NAMES.add("android.webkit");
-        VALID_UI_PACKAGE_NAMES.add("android.widget");
-        VALID_UI_PACKAGE_NAMES.add("androidx.drawerlayout.widget");
-        VALID_UI_PACKAGE_NAMES.add("androidx.recyclerview.widget");
-        VALID_UI_PACKAGE_NAMES.add("androidx.appcompat.widget");
-    }
+    private static final ImmutableList<String> VALID_UI_PACKAGE_NAMES =
+            ImmutableList.of(
+                    "android.app",
+                    "android.appwidget",
+                    "android.inputmethodservice",
+                    "android.support",
+                    "android.view",
+                    "android.webkit",
+                    "android.widget",
+                    "androidx.drawerlayout.widget",
+                    "androidx.recyclerview.widget",
+                    "androidx.appcompat.widget");
+
+    private static final PrefixMatcher VALID_UI_PACKAGE_MATCHER =
+            new PrefixMatcher(VALID_UI_PACKAGE_NAMES);
+
+    /* The matcher most recently compiled for customized package names, with the names it accepts
+     * beyond the defaults. Each run on the same names reuses it rather than compiling again. */
+    private volatile @Nullable CustomizedPackageMatcher customizedPackageMatcher;
 
     @Override
     protected @Nullable
@@ -77,6 +86,7 @@ public class ClassNameCheck extends AccessibilityHierarchyCheck {
             @Nullable Metadata metadata) {
         List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
 
+        PrefixMatcher packageMatcher = getPackageMatcher(metadata);
         List<ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
         for (ViewHierarchyElement view : viewsToEval) {
             if (!view.isImportantForAccessibility()) {
@@ -124,15 +134,7 @@ public class ClassNameCheck extends AccessibilityHierarchyCheck {
                 continue;
             }
 
-            boolean isValidUiClass = false;
-            for (String packageName : VALID_UI_PACKAGE_NAMES) {
-                if (className.toString().startsWith(packageName)) {
-                    isValidUiClass = true;
-                    break;
-                }
-            }
-
-            if (!isValidUiClass) {
+            if (!packageMatcher.matchesPrefixOf(className)) {
                 Metadata resultMetadata = new Metadata();
                 resultMetadata.putString(KEY_ACCESSIBILITY_CLASS_NAME, className.toString());
                 results.add(
@@ -147,6 +149,24 @@ public class ClassNameCheck extends AccessibilityHierarchyCheck {
         return results;
     }
 
+    /**
+     * @return a matcher for {@link #VALID_UI_PACKAGE_NAMES} and any customized package names in
+     *     {@code metadata}
+     */
+    private PrefixMatcher getPackageMatcher(@Nullable Metadata metadata) {
+        ImmutableList<String> customizedPackageNames =
+                getCustomizedUiPackageNamesInMetadata(metadata);
+        if ((customizedPackageNames == null) || customizedPackageNames.isEmpty()) {
+            return VALID_UI_PACKAGE_MATCHER;
+        }
+        CustomizedPackageMatcher cached = customizedPackageMatcher;
+        if ((cached == null) || !cached.packageNames.equals(customizedPackageNames)) {
+            cached = new CustomizedPackageMatcher(customizedPackageNames);
+            customizedPackageMatcher = cached;
+        }
+        return cached.matcher;
+    }
+
     @Override
     public String getMessageForResultData(
             Locale locale, int resultId, @Nullable ResultMetadata metadata) {
@@ -192,4 +212,17 @@ public class ClassNameCheck extends AccessibilityHierarchyCheck {
     public String getTitleMessage(Locale locale) {
         return StringManager.getString(locale, "check_title_class_name_not_supported");
     }
+
+    /** A {@link PrefixMatcher} for the default package names together with customized ones. */
+    private static class CustomizedPackageMatcher {
+
+        final ImmutableList<String> packageNames;
+        final PrefixMatcher matcher;
+
+        CustomizedPackageMatcher(ImmutableList<String> packageNames) {
+            this.packageNames = packageNames;
+            this.matcher =
+                    new PrefixMatcher(Iterables.concat(VALID_UI_PACKAGE_NAMES, packageNames));
+        }
+    }
 }
@@ -25,12 +25,10 @@ import com.google.android.apps.common.testing.accessibility.framework.replacemen
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -97,25 +95,27 @@ public class DuplicateClickableBoundsCheck extends AccessibilityHierarchyCheck {
         List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
 
         /* Find all bounds and the clickable views that have those bounds within the full hierarchy */
-        Map<ViewLocationActionHolder, List<ViewHierarchyElement>> locationActionToViewMap =
-                getLocationActionToViewMap(hierarchy.getActiveWindow().getAllViews());
+        List<ViewHierarchyElement> allViews = hierarchy.getActiveWindow().getAllViews();
+        ElementGroups groups = getBoundsActionGroups(allViews);
 
         /* Deal with any duplicate bounds within our set of elements to evaluate */
-        List<ViewHierarchyElement> viewsToEval =
-                (fromRoot != null) ? fromRoot.getSelfAndAllDescendants() : null;
-        for (List<ViewHierarchyElement> elements : locationActionToViewMap.values()) {
-            if (elements.size() < 2) {
+        boolean[] viewsToEval = ElementGroups.getViewsToEvaluate(hierarchy, fromRoot);
+        for (int group = 0; group < groups.getGroupCount(); ++group) {
+            int size = groups.getGroupSize(group);
+            if (size < 2) {
                 continue; // Bounds are not duplicated
             }
 
-            for (ViewHierarchyElement culprit : elements) {
-                if ((viewsToEval == null) || (viewsToEval.contains(culprit))) {
+            int member = groups.getFirstMember(group);
+            for (; member != -1; member = groups.getNextMember(member)) {
+                ViewHierarchyElement culprit = allViews.get(groups.getViewId(member));
+                if ((viewsToEval == null) || viewsToEval[culprit.getId()]) {
                     Metadata resultMetadata = new Metadata();
                     resultMetadata.putBoolean(KEY_CONFLICTS_BECAUSE_CLICKABLE, culprit.isClickable());
                     resultMetadata
                             .putBoolean(KEY_CONFLICTS_BECAUSE_LONG_CLICKABLE, culprit.isLongClickable());
-                    resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT, elements.size() - 1);
-                    setBoundsInMetadata(culprit.getBoundsInScreen(), resultMetadata);
+                    resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT, size - 1);
+                    setBoundsInMetadata(culprit, resultMetadata);
                     results.add(new AccessibilityHierarchyCheckResult(
                             this.getClass(),
                             AccessibilityCheckResultType.ERROR,
@@ -140,7 +140,7 @@ public class DuplicateClickableBoundsCheck extends AccessibilityHierarchyCheck {
             if ((bounds == null) && (culprit != null)) {
                 // For legacy results, remap hierarchy element bounds to metadata
                 ResultMetadata updatedMetadata = (metadata != null) ? metadata.clone() : new Metadata();
-                setBoundsInMetadata(culprit.getBoundsInScreen(), updatedMetadata);
+                setBoundsInMetadata(culprit, updatedMetadata);
                 AccessibilityHierarchyCheckResult updatedResult =
                         new AccessibilityHierarchyCheckResult(
                                 this.getClass(),
@@ -209,33 +209,62 @@ public class DuplicateClickableBoundsCheck extends AccessibilityHierarchyCheck {
     }
 
     /**
-     * @param allViews Set of views to index by their speakable text
-     * @return map from speakable text to all views with that speakable text
+     * Groups the visible, important, clickable or long-clickable views with equal bounds which
+     * share an action. A view joins the first group with its bounds whose first view shares an
+     * action with it, or else starts a new group.
+     *
+     * @param allViews All views of the window, in order of their ids
+     * @return the groups, in order of their first views
      */
-    private Map<ViewLocationActionHolder, List<ViewHierarchyElement>> getLocationActionToViewMap(
-            Collection<ViewHierarchyElement> allViews) {
-        Map<ViewLocationActionHolder, List<ViewHierarchyElement>> locationActionToViewMap =
-                new HashMap<>();
-
+    private static ElementGroups getBoundsActionGroups(List<ViewHierarchyElement> allViews) {
+        int[] candidates = new int[allViews.size()];
+        int candidateCount = 0;
         for (ViewHierarchyElement view : allViews) {
-            if (!Boolean.TRUE.equals(view.isVisibleToUser())) {
-                continue;
+            if (Boolean.TRUE.equals(view.isVisibleToUser())
+                    && view.isImportantForAccessibility()
+                    && (view.isClickable() || view.isLongClickable())) {
+                candidates[candidateCount++] = view.getId();
             }
+        }
 
-            boolean clickable = view.isClickable();
-            boolean longClickable = view.isLongClickable();
-            Rect bounds = view.getBoundsInScreen();
-            if (view.isImportantForAccessibility() && (clickable || longClickable)) {
-                ViewLocationActionHolder viewLocationActionHolder =
-                        new ViewLocationActionHolder(bounds, clickable, longClickable);
-                if (!locationActionToViewMap.containsKey(viewLocationActionHolder)) {
-                    locationActionToViewMap.put(viewLocationActionHolder,
-                            new ArrayList<ViewHierarchyElement>());
-                }
-                locationActionToViewMap.get(viewLocationActionHolder).add(view);
+        ElementGroups groups = new ElementGroups(candidateCount);
+        if (candidateCount == 0) {
+            return groups;
+        }
+        WindowHierarchyElement window = allViews.get(0).getWindow();
+
+        // Packed bounds and actions of the first view of each group, as ELEMENT_MASK_* bits
+        long[] groupKeys = new long[candidateCount * 2];
+        byte[] groupActions = new byte[candidateCount];
+        for (int member = 0; member < candidateCount; ++member) {
+            int viewId = candidates[member];
+            long topLeft = ((long) window.getViewBoundsLeft(viewId) << 32)
+                    | (window.getViewBoundsTop(viewId) & 0xFFFFFFFFL);
+            long bottomRight = ((long) window.getViewBoundsRight(viewId) << 32)
+                    | (window.getViewBoundsBottom(viewId) & 0xFFFFFFFFL);
+            ViewHierarchyElement view = allViews.get(viewId);
+            byte actions = (byte) ((view.isClickable() ? ELEMENT_MASK_CLICKABLE : 0)
+                    | (view.isLongClickable() ? ELEMENT_MASK_LONG_CLICKABLE : 0));
+
+            int group = groups.findOrAddGroup(
+                    hash(topLeft, bottomRight),
+                    other -> (groupKeys[other * 2] == topLeft)
+                            && (groupKeys[other * 2 + 1] == bottomRight)
+                            && ((groupActions[other] & actions) != 0));
+            if (groups.getGroupSize(group) == 0) {
+                groupKeys[group * 2] = topLeft;
+                groupKeys[group * 2 + 1] = bottomRight;
+                groupActions[group] = actions;
             }
+            groups.addMember(group, viewId);
         }
-        return locationActionToViewMap;
+        return groups;
+    }
+
+    private static int hash(long topLeft, long bottomRight) {
+        long hash = (topLeft * 0x9E3779B97F4A7C15L) ^ bottomRight;
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ (hash >>> 32));
     }
 
     private static String getActionString(Locale locale, boolean clickable, boolean longClickable) {
@@ -259,11 +288,11 @@ public class DuplicateClickableBoundsCheck extends AccessibilityHierarchyCheck {
         return getActionString(locale, clickable, longClickable);
     }
 
-    private static void setBoundsInMetadata(Rect rect, ResultMetadata metadata) {
-        metadata.putInt(KEY_CONFLICTING_LOCATION_LEFT, rect.getLeft());
-        metadata.putInt(KEY_CONFLICTING_LOCATION_TOP, rect.getTop());
-        metadata.putInt(KEY_CONFLICTING_LOCATION_RIGHT, rect.getRight());
-        metadata.putInt(KEY_CONFLICTING_LOCATION_BOTTOM, rect.getBottom());
+    private static void setBoundsInMetadata(ViewHierarchyElement view, ResultMetadata metadata) {
+        metadata.putInt(KEY_CONFLICTING_LOCATION_LEFT, view.getBoundsInScreenLeft());
+        metadata.putInt(KEY_CONFLICTING_LOCATION_TOP, view.getBoundsInScreenTop());
+        metadata.putInt(KEY_CONFLICTING_LOCATION_RIGHT, view.getBoundsInScreenRight());
+        metadata.putInt(KEY_CONFLICTING_LOCATION_BOTTOM, view.getBoundsInScreenBottom());
     }
 
     private static @Nullable Rect getBoundsFromMetadata(@Nullable ResultMetadata metadata) {
@@ -280,42 +309,4 @@ public class DuplicateClickableBoundsCheck extends AccessibilityHierarchyCheck {
         }
         return null;
     }
-
-    private static class ViewLocationActionHolder {
-        private final Rect location;
-        private final boolean clickable;
-        private final boolean longClickable;
-
-        public ViewLocationActionHolder(Rect location, boolean clickable, boolean longClickable) {
-            this.location = location;
-            this.clickable = clickable;
-            this.longClickable = longClickable;
-        }
-
-        @Override
-        public int hashCode() {
-            // We explicitly ignore the action mask when computing the hash so equals() can compare
-            // individual masked actions.
-            return location.hashCode();
-        }
-
-        @Override
-        public boolean equals(@Nullable Object obj) {
-            if (this == obj) {
-                return true;
-            }
-
-            if (!(obj instanceof ViewLocationActionHolder)) {
-                return false;
-            }
-
-            ViewLocationActionHolder other = (ViewLocationActionHolder) obj;
-            if (!location.equals(other.location)) {
-                return false;
-            }
-
-            // Consider any shared action as equivalent.
-            return (clickable && other.clickable) || (longClickable && other.longClickable);
-        }
-    }
 }
@@ -20,17 +20,13 @@ import com.google.android.apps.common.testing.accessibility.framework.Accessibil
 import com.google.android.apps.common.testing.accessibility.framework.Metadata;
 import com.google.android.apps.common.testing.accessibility.framework.ResultMetadata;
 import com.google.android.apps.common.testing.accessibility.framework.ViewHierarchyElementUtils;
-import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -75,59 +71,62 @@ public class DuplicateSpeakableTextCheck extends AccessibilityHierarchyCheck {
         List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
 
         /* Find all text and the views that have that text throughout the full hierarchy */
-        Map<String, List<ViewHierarchyElement>> textToViewMap = getSpeakableTextToViewMap(
-                hierarchy.getActiveWindow().getAllViews());
+        List<ViewHierarchyElement> allViews = hierarchy.getActiveWindow().getAllViews();
+        ElementGroups groups = getSpeakableTextGroups(allViews);
+        boolean[] viewsToEval = ElementGroups.getViewsToEvaluate(hierarchy, fromRoot);
 
         /* Deal with any duplicated text */
-        for (String speakableText : textToViewMap.keySet()) {
-            if (textToViewMap.get(speakableText).size() < 2) {
+        for (int group = 0; group < groups.getGroupCount(); ++group) {
+            if (groups.getGroupSize(group) < 2) {
                 continue; // Text is not duplicated
             }
 
-            // We've found duplicated text. Sort the Views into clickable and non-clickable if they're
-            // within scope for evaluation.
-            List<ViewHierarchyElement> clickableViews = new ArrayList<>();
-            List<ViewHierarchyElement> nonClickableViews = new ArrayList<>();
-            List<ViewHierarchyElement> viewsToEval = (fromRoot != null)
-                    ? fromRoot.getSelfAndAllDescendants() : null;
-            for (ViewHierarchyElement view : textToViewMap.get(speakableText)) {
-                if ((viewsToEval == null) || (viewsToEval.contains(view))) {
+            // We've found duplicated text. Find the first clickable and the first non-clickable
+            // View within scope for evaluation.
+            ViewHierarchyElement firstClickableView = null;
+            ViewHierarchyElement firstNonClickableView = null;
+            int viewsInScope = 0;
+            int member = groups.getFirstMember(group);
+            for (; member != -1; member = groups.getNextMember(member)) {
+                ViewHierarchyElement view = allViews.get(groups.getViewId(member));
+                if ((viewsToEval == null) || viewsToEval[view.getId()]) {
+                    ++viewsInScope;
                     if (Boolean.TRUE.equals(view.isClickable())) {
-                        clickableViews.add(view);
-                    } else {
-                        nonClickableViews.add(view);
+                        if (firstClickableView == null) {
+                            firstClickableView = view;
+                        }
+                    } else if (firstNonClickableView == null) {
+                        firstNonClickableView = view;
                     }
                 }
             }
 
-            if (!clickableViews.isEmpty()) {
+            String speakableText = ViewHierarchyElementUtils.getSpeakableTextForElement(
+                    allViews.get(groups.getViewId(groups.getFirstMember(group)))).toString().trim();
+            if (firstClickableView != null) {
                 /* Display warning */
                 Metadata resultMetadata = new Metadata();
                 resultMetadata.putString(
                         KEY_SPEAKABLE_TEXT, speakableText);
-                resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT,
-                        (clickableViews.size() + nonClickableViews.size() - 1));
+                resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT, viewsInScope - 1);
                 results.add(new AccessibilityHierarchyCheckResult(
                         this.getClass(),
                         AccessibilityCheckResultType.WARNING,
-                        clickableViews.get(0),
+                        firstClickableView,
                         RESULT_ID_CLICKABLE_SAME_SPEAKABLE_TEXT,
                         resultMetadata));
-                clickableViews.remove(0);
-            } else if (!nonClickableViews.isEmpty()) {
+            } else if (firstNonClickableView != null) {
                 /* Only duplication is on non-clickable views */
                 Metadata resultMetadata = new Metadata();
                 resultMetadata.putString(
                         KEY_SPEAKABLE_TEXT, speakableText);
-                resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT,
-                        (clickableViews.size() + nonClickableViews.size() - 1));
+                resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT, viewsInScope - 1);
                 results.add(new AccessibilityHierarchyCheckResult(
                         this.getClass(),
                         AccessibilityCheckResultType.INFO,
-                        nonClickableViews.get(0),
+                        firstNonClickableView,
                         RESULT_ID_NON_CLICKABLE_SAME_SPEAKABLE_TEXT,
                         resultMetadata));
-                nonClickableViews.remove(0);
             }
         }
 
@@ -188,12 +187,19 @@ public class DuplicateSpeakableTextCheck extends AccessibilityHierarchyCheck {
     }
 
     /**
-     * @param allViews Set of views to index by their speakable text
-     * @return map from speakable text to all views with that speakable text
+     * Groups views by their speakable text, ignoring leading and trailing whitespace as {@link
+     * String#trim()} does. The text is hashed and compared in place, so no trimmed copy is made.
+     *
+     * @param allViews All views of the window, in order of their ids
+     * @return the groups, in order of their first views
      */
-    private Map<String, List<ViewHierarchyElement>> getSpeakableTextToViewMap(
-            Collection<ViewHierarchyElement> allViews) {
-        Map<String, List<ViewHierarchyElement>> textToViewMap = new HashMap<>();
+    private static ElementGroups getSpeakableTextGroups(List<ViewHierarchyElement> allViews) {
+        ElementGroups groups = new ElementGroups(allViews.size());
+        // Untrimmed speakable text of the first view of each group, and the bounds of its trimmed
+        // region
+        CharSequence[] groupTexts = new CharSequence[allViews.size()];
+        int[] groupTextStarts = new int[allViews.size()];
+        int[] groupTextEnds = new int[allViews.size()];
 
         for (ViewHierarchyElement view : allViews) {
             if (!ViewHierarchyElementUtils.shouldFocusView(view)) {
@@ -201,17 +207,51 @@ public class DuplicateSpeakableTextCheck extends AccessibilityHierarchyCheck {
                 continue;
             }
 
-            String speakableText =
-                    ViewHierarchyElementUtils.getSpeakableTextForElement(view).toString().trim();
-            if (TextUtils.isEmpty(speakableText)) {
+            CharSequence speakableText = ViewHierarchyElementUtils.getSpeakableTextForElement(view);
+            int start = 0;
+            int end = speakableText.length();
+            while ((start < end) && (speakableText.charAt(start) <= ' ')) {
+                ++start;
+            }
+            while ((start < end) && (speakableText.charAt(end - 1) <= ' ')) {
+                --end;
+            }
+            if (start == end) {
                 continue;
             }
 
-            if (!textToViewMap.containsKey(speakableText)) {
-                textToViewMap.put(speakableText, new ArrayList<ViewHierarchyElement>());
+            int hash = 0;
+            for (int i = start; i < end; ++i) {
+                hash = 31 * hash + speakableText.charAt(i);
+            }
+            int trimmedStart = start;
+            int trimmedEnd = end;
+            int group = groups.findOrAddGroup(
+                    hash,
+                    other -> regionsMatch(
+                            groupTexts[other], groupTextStarts[other], groupTextEnds[other],
+                            speakableText, trimmedStart, trimmedEnd));
+            if (groups.getGroupSize(group) == 0) {
+                groupTexts[group] = speakableText;
+                groupTextStarts[group] = start;
+                groupTextEnds[group] = end;
+            }
+            groups.addMember(group, view.getId());
+        }
+        return groups;
+    }
+
+    private static boolean regionsMatch(
+            CharSequence first, int firstStart, int firstEnd,
+            CharSequence second, int secondStart, int secondEnd) {
+        if ((firstEnd - firstStart) != (secondEnd - secondStart)) {
+            return false;
+        }
+        for (int i = 0; i < (firstEnd - firstStart); ++i) {
+            if (first.charAt(firstStart + i) != second.charAt(secondStart + i)) {
+                return false;
             }
-            textToViewMap.get(speakableText).add(view);
         }
-        return textToViewMap;
+        return true;
     }
 }
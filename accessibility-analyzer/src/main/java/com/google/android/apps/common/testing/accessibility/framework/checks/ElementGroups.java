@@ -0,0 +1,125 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import javax.annotation.Nullable;
+
+/**
+ * Groups views of a window by a key, as a {@code HashMap} from keys to lists of views would, for
+ * the checks which report views sharing a key. Groups are found through an open-addressing table
+ * of their hashes, and each group's views form a linked list through flat arrays, so grouping
+ * allocates no object per view.
+ * <p>
+ * Groups, and the views of each group, are numbered in the order they were added. A member is the
+ * position at which a view was added.
+ */
+final class ElementGroups {
+
+    /* View id of each member */
+    private final int[] viewIds;
+    /* The next member of the same group, or -1 */
+    private final int[] next;
+    private final int[] groupHeads;
+    private final int[] groupTails;
+    private final int[] groupSizes;
+    /* Groups by the slot of their hashes, or -1 */
+    private final int[] table;
+    private final int mask;
+    private int groupCount;
+    private int memberCount;
+
+    /** @param capacity the number of views which may be added */
+    ElementGroups(int capacity) {
+        viewIds = new int[capacity];
+        next = new int[capacity];
+        groupHeads = new int[capacity];
+        groupTails = new int[capacity];
+        groupSizes = new int[capacity];
+        table = new int[Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1];
+        Arrays.fill(table, -1);
+        mask = table.length - 1;
+    }
+
+    /**
+     * Finds the group for a key. Of the groups added with the same hash, the first one matching
+     * the key is found, so a key may match groups whose keys do not match each other.
+     *
+     * @param hash the hash of the key
+     * @param matchesGroup whether the key of a group, given its number, matches the key
+     * @return the number of the first group matching the key, or of a new, empty group with the
+     *     key if none does
+     */
+    int findOrAddGroup(int hash, IntPredicate matchesGroup) {
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != -1) {
+            if (matchesGroup.test(table[slot])) {
+                return table[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int group = groupCount++;
+        groupHeads[group] = -1;
+        table[slot] = group;
+        return group;
+    }
+
+    /** Adds the view with id {@code viewId} as the last member of {@code group}. */
+    void addMember(int group, int viewId) {
+        int member = memberCount++;
+        viewIds[member] = viewId;
+        next[member] = -1;
+        if (groupHeads[group] == -1) {
+            groupHeads[group] = member;
+        } else {
+            next[groupTails[group]] = member;
+        }
+        groupTails[group] = member;
+        ++groupSizes[group];
+    }
+
+    int getGroupCount() {
+        return groupCount;
+    }
+
+    int getGroupSize(int group) {
+        return groupSizes[group];
+    }
+
+    /** @return the first member of {@code group}, or -1 if it has none */
+    int getFirstMember(int group) {
+        return groupHeads[group];
+    }
+
+    /** @return the member of the same group added after {@code member}, or -1 if there is none */
+    int getNextMember(int member) {
+        return next[member];
+    }
+
+    int getViewId(int member) {
+        return viewIds[member];
+    }
+
+    /**
+     * @param hierarchy the hierarchy being checked
+     * @param fromRoot the root of the views to evaluate, or {@code null} to evaluate all views
+     * @return whether each view of the active window, indexed by id, is to be evaluated, or {@code
+     *     null} if all are
+     */
+    static @Nullable boolean[] getViewsToEvaluate(
+            AccessibilityHierarchy hierarchy, @Nullable ViewHierarchyElement fromRoot) {
+        if (fromRoot == null) {
+            return null;
+        }
+        WindowHierarchyElement window = hierarchy.getActiveWindow();
+        boolean[] viewsToEval = new boolean[window.getAllViews().size()];
+        for (ViewHierarchyElement view : fromRoot.getSelfAndAllDescendants()) {
+            if (view.getWindow() == window) {
+                viewsToEval[view.getId()] = true;
+            }
+        }
+        return viewsToEval;
+    }
+}
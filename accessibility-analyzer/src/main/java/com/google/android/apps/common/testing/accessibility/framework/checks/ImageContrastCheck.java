@@ -0,0 +1,262 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Boolean.TRUE;
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheck;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult;
+import com.google.android.apps.common.testing.accessibility.framework.Metadata;
+import com.google.android.apps.common.testing.accessibility.framework.ResultMetadata;
+import com.google.android.apps.common.testing.accessibility.framework.ScreenCaptureSampler;
+import com.google.android.apps.common.testing.accessibility.framework.ViewHierarchyElementUtils;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatch;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastUtils;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Check to ensure that an ImageView has sufficient contrast between its foreground and background,
+ * as estimated from the screen capture pixels within the view's bounds.
+ */
+public class ImageContrastCheck extends AccessibilityHierarchyCheck
+        implements ScreenCaptureSampler {
+
+    /** Result when the view is not visible. */
+    public static final int RESULT_ID_NOT_VISIBLE = 1;
+    /** Result when the view is not an {@code ImageView}. */
+    public static final int RESULT_ID_NOT_IMAGEVIEW = 2;
+    /** Result when no screen capture data was provided. */
+    public static final int RESULT_ID_NO_SCREENCAPTURE = 3;
+    /** Result when the view lies outside of the screen capture. */
+    public static final int RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE = 4;
+    /** Result when the screen capture shows nothing but a single color within the view. */
+    public static final int RESULT_ID_SCREENCAPTURE_DATA_HIDDEN = 5;
+    /** Result when the estimated contrast of the view's image is too low. */
+    public static final int RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT = 6;
+    /** Result when the estimated contrast of the view's image is lower than the user-defined ratio. */
+    public static final int RESULT_ID_CUSTOMIZED_IMAGE_CONTRAST_NOT_SUFFICIENT = 7;
+
+    /** Result metadata key for the {@code double} contrast ratio of the view's image. */
+    public static final String KEY_CONTRAST_RATIO = "KEY_CONTRAST_RATIO";
+    /** Result metadata key for the {@code double} user-defined contrast ratio. */
+    public static final String KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO =
+            "KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO";
+    /** Result metadata key for the {@code int} estimated foreground color of the view. */
+    public static final String KEY_FOREGROUND_COLOR = "KEY_FOREGROUND_COLOR";
+    /** Result metadata key for the {@code int} estimated background color of the view. */
+    public static final String KEY_BACKGROUND_COLOR = "KEY_BACKGROUND_COLOR";
+    /** Result metadata key for the {@code String} bounds of the view. */
+    public static final String KEY_VIEW_BOUNDS_STRING = "KEY_VIEW_BOUNDS_STRING";
+    /** Result metadata key for the {@code String} bounds of the screen capture. */
+    public static final String KEY_SCREENSHOT_BOUNDS_STRING = "KEY_SCREENSHOT_BOUNDS_STRING";
+
+    /** Tolerance applied to contrast ratios, to account for rounding of the reported ratio. */
+    private static final double CONTRAST_TOLERANCE = 0.01d;
+
+    @Override
+    protected String getHelpTopic() {
+        return "7158390"; // Color contrast
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.LOW_CONTRAST;
+    }
+
+    @Override
+    public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
+            AccessibilityHierarchy hierarchy,
+            @Nullable ViewHierarchyElement fromRoot,
+            @Nullable Metadata metadata) {
+        List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
+        // Screen capture data is only decoded once a view needs its pixels sampled.
+        Supplier<Image> screenCaptureSupplier = Suppliers.memoize(
+                () -> AccessibilityCheckMetadata.getScreenCaptureFromMetadata(metadata));
+        Double customizedRatio =
+                AccessibilityCheckMetadata.getCustomizedHeuristicContrastRatioInMetadata(metadata);
+        double requiredRatio = (customizedRatio != null)
+                ? customizedRatio
+                : ContrastUtils.CONTRAST_RATIO_WCAG_LARGE_TEXT;
+        // Every view evaluated on this thread shares the swatch's histogram buffers.
+        ContrastSwatch swatch = ContrastSwatch.forCurrentThread();
+
+        List<ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+        for (ViewHierarchyElement view : viewsToEval) {
+            if (!TRUE.equals(view.isVisibleToUser())) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_NOT_VISIBLE,
+                        null));
+                continue;
+            }
+
+            if (!TRUE.equals(view.isImageView())) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_NOT_IMAGEVIEW,
+                        null));
+                continue;
+            }
+
+            Image screenCapture = screenCaptureSupplier.get();
+            if (screenCapture == null) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_NO_SCREENCAPTURE,
+                        null));
+                continue;
+            }
+
+            Rect viewBounds = view.getBoundsInScreen();
+            Rect screenCaptureBounds = screenCapture.getBounds();
+            if (viewBounds.isEmpty() || !screenCaptureBounds.contains(viewBounds)) {
+                Metadata resultMetadata = new Metadata();
+                resultMetadata.putString(KEY_VIEW_BOUNDS_STRING, viewBounds.toShortString());
+                resultMetadata.putString(
+                        KEY_SCREENSHOT_BOUNDS_STRING, screenCaptureBounds.toShortString());
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE,
+                        resultMetadata));
+                continue;
+            }
+
+            swatch.process(screenCapture, viewBounds);
+            if (swatch.isUniform()) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_SCREENCAPTURE_DATA_HIDDEN,
+                        null));
+                continue;
+            }
+
+            double contrastRatio = swatch.getContrastRatio();
+            if (contrastRatio >= requiredRatio - CONTRAST_TOLERANCE) {
+                continue;
+            }
+
+            Metadata resultMetadata = new Metadata();
+            resultMetadata.putDouble(KEY_CONTRAST_RATIO, contrastRatio);
+            resultMetadata.putInt(KEY_FOREGROUND_COLOR, swatch.getForegroundColor());
+            resultMetadata.putInt(KEY_BACKGROUND_COLOR, swatch.getBackgroundColor());
+            if (customizedRatio != null) {
+                resultMetadata.putDouble(KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO, customizedRatio);
+            }
+            results.add(new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.WARNING,
+                    view,
+                    (customizedRatio != null)
+                            ? RESULT_ID_CUSTOMIZED_IMAGE_CONTRAST_NOT_SUFFICIENT
+                            : RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT,
+                    resultMetadata));
+        }
+
+        return results;
+    }
+
+    @Override
+    public @Nullable Rect getSampledRegion(
+            AccessibilityHierarchy hierarchy, @Nullable ViewHierarchyElement fromRoot) {
+        List<ViewHierarchyElement> sampledViews = new ArrayList<>();
+        for (ViewHierarchyElement view : getElementsToEvaluate(fromRoot, hierarchy)) {
+            if (isSampled(view)) {
+                sampledViews.add(view);
+            }
+        }
+        return ViewHierarchyElementUtils.getUnionOfBounds(sampledViews);
+    }
+
+    @Override
+    public String getMessageForResultData(
+            Locale locale, int resultId, @Nullable ResultMetadata metadata) {
+        switch (resultId) {
+            case RESULT_ID_NOT_VISIBLE:
+                return StringManager.getString(locale, "result_message_not_visible");
+            case RESULT_ID_NOT_IMAGEVIEW:
+                return StringManager.getString(locale, "result_message_not_imageview");
+            case RESULT_ID_NO_SCREENCAPTURE:
+                return StringManager.getString(locale, "result_message_no_screencapture");
+            case RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(locale, "result_message_view_not_within_screencapture"),
+                        metadata.getString(KEY_VIEW_BOUNDS_STRING),
+                        metadata.getString(KEY_SCREENSHOT_BOUNDS_STRING));
+            case RESULT_ID_SCREENCAPTURE_DATA_HIDDEN:
+                return StringManager.getString(locale, "result_message_screencapture_data_hidden");
+            case RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(locale, "result_message_image_contrast_not_sufficient"),
+                        metadata.getDouble(KEY_CONTRAST_RATIO),
+                        ContrastUtils.CONTRAST_RATIO_WCAG_LARGE_TEXT,
+                        metadata.getInt(KEY_FOREGROUND_COLOR) & 0xFFFFFF,
+                        metadata.getInt(KEY_BACKGROUND_COLOR) & 0xFFFFFF);
+            case RESULT_ID_CUSTOMIZED_IMAGE_CONTRAST_NOT_SUFFICIENT:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(
+                                locale, "result_message_image_customized_contrast_not_sufficient"),
+                        metadata.getDouble(KEY_CONTRAST_RATIO),
+                        metadata.getDouble(KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO),
+                        metadata.getInt(KEY_FOREGROUND_COLOR) & 0xFFFFFF,
+                        metadata.getInt(KEY_BACKGROUND_COLOR) & 0xFFFFFF);
+            default:
+                throw new IllegalStateException("Unsupported result id");
+        }
+    }
+
+    @Override
+    public String getShortMessageForResultData(
+            Locale locale, int resultId, @Nullable ResultMetadata metadata) {
+        switch (resultId) {
+            case RESULT_ID_NOT_VISIBLE:
+            case RESULT_ID_NOT_IMAGEVIEW:
+            case RESULT_ID_NO_SCREENCAPTURE:
+            case RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE:
+            case RESULT_ID_SCREENCAPTURE_DATA_HIDDEN:
+                return getMessageForResultData(locale, resultId, metadata);
+            case RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT:
+            case RESULT_ID_CUSTOMIZED_IMAGE_CONTRAST_NOT_SUFFICIENT:
+                return StringManager.getString(locale, "result_message_brief_image_contrast_not_sufficient");
+            default:
+                throw new IllegalStateException("Unsupported result id");
+        }
+    }
+
+    @Override
+    public String getTitleMessage(Locale locale) {
+        return StringManager.getString(locale, "check_title_image_contrast");
+    }
+
+    /** @return {@code true} if the screen capture is sampled within the view's bounds */
+    private static boolean isSampled(ViewHierarchyElement view) {
+        return TRUE.equals(view.isVisibleToUser()) && TRUE.equals(view.isImageView());
+    }
+}
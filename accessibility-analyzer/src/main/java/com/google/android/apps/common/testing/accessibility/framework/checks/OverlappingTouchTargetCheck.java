@@ -0,0 +1,403 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Boolean.TRUE;
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheck;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult;
+import com.google.android.apps.common.testing.accessibility.framework.Metadata;
+import com.google.android.apps.common.testing.accessibility.framework.ResultMetadata;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Check to detect actionable views whose touch targets partially cover one another, so that a touch
+ * in the shared region may activate the wrong item.
+ * <p>
+ * Views nested within one another are not reported, as handling a touch within a clickable
+ * container is a common and intentional pattern. Views with exactly the same bounds are reported by
+ * {@link DuplicateClickableBoundsCheck} instead.
+ * <p>
+ * Overlapping pairs are found with a sweep over the left edges of the candidate views, keeping the
+ * views crossed by the sweep line in an interval tree over their vertical extent. This costs
+ * O((n + k) log n) for n candidate views and k overlapping pairs.
+ */
+public class OverlappingTouchTargetCheck extends AccessibilityHierarchyCheck {
+    /** Result when the view's touch target overlaps that of another actionable view. */
+    public static final int RESULT_ID_OVERLAPPING_TOUCH_TARGET = 1;
+
+    /** Result metadata key for the {@code int} number of other views overlapping the view. */
+    public static final String KEY_OVERLAPPING_VIEW_COUNT = "KEY_OVERLAPPING_VIEW_COUNT";
+    /** Result metadata key for the {@code int} left coordinate of the view. */
+    public static final String KEY_LOCATION_LEFT = "KEY_LOCATION_LEFT";
+    /** Result metadata key for the {@code int} top coordinate of the view. */
+    public static final String KEY_LOCATION_TOP = "KEY_LOCATION_TOP";
+    /** Result metadata key for the {@code int} right coordinate of the view. */
+    public static final String KEY_LOCATION_RIGHT = "KEY_LOCATION_RIGHT";
+    /** Result metadata key for the {@code int} bottom coordinate of the view. */
+    public static final String KEY_LOCATION_BOTTOM = "KEY_LOCATION_BOTTOM";
+    /**
+     * Result metadata key for the {@code int} left coordinate of the first overlapping view, in
+     * depth-first ordering.
+     */
+    public static final String KEY_OVERLAPPING_LOCATION_LEFT = "KEY_OVERLAPPING_LOCATION_LEFT";
+    /**
+     * Result metadata key for the {@code int} top coordinate of the first overlapping view, in
+     * depth-first ordering.
+     */
+    public static final String KEY_OVERLAPPING_LOCATION_TOP = "KEY_OVERLAPPING_LOCATION_TOP";
+    /**
+     * Result metadata key for the {@code int} right coordinate of the first overlapping view, in
+     * depth-first ordering.
+     */
+    public static final String KEY_OVERLAPPING_LOCATION_RIGHT = "KEY_OVERLAPPING_LOCATION_RIGHT";
+    /**
+     * Result metadata key for the {@code int} bottom coordinate of the first overlapping view, in
+     * depth-first ordering.
+     */
+    public static final String KEY_OVERLAPPING_LOCATION_BOTTOM = "KEY_OVERLAPPING_LOCATION_BOTTOM";
+
+    @Override
+    protected @Nullable String getHelpTopic() {
+        return null;
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.TOUCH_TARGET_SIZE;
+    }
+
+    @Override
+    public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
+            AccessibilityHierarchy hierarchy,
+            @Nullable ViewHierarchyElement fromRoot,
+            @Nullable Metadata metadata) {
+        List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
+
+        /* Find all actionable views with overlapping bounds within the full window */
+        List<ViewHierarchyElement> allViews = hierarchy.getActiveWindow().getAllViews();
+        List<ViewHierarchyElement> candidates = new ArrayList<>();
+        for (ViewHierarchyElement view : allViews) {
+            if (TRUE.equals(view.isVisibleToUser())
+                    && view.isImportantForAccessibility()
+                    && (view.isClickable() || view.isLongClickable())
+                    && !view.isBoundsInScreenEmpty()) {
+                candidates.add(view);
+            }
+        }
+        if (candidates.size() < 2) {
+            return results;
+        }
+
+        int[] overlapCounts = new int[candidates.size()];
+        int[] firstOverlapping = new int[candidates.size()];
+        Arrays.fill(firstOverlapping, Integer.MAX_VALUE);
+        findOverlaps(candidates, overlapCounts, firstOverlapping);
+
+        /* Report views within our set of elements to evaluate */
+        for (int i = 0; i < candidates.size(); ++i) {
+            ViewHierarchyElement culprit = candidates.get(i);
+            if ((overlapCounts[i] == 0)
+                    || ((fromRoot != null) && !culprit.isSelfOrDescendantOf(fromRoot))) {
+                continue;
+            }
+
+            Rect bounds = culprit.getBoundsInScreen();
+            Rect overlappingBounds = candidates.get(firstOverlapping[i]).getBoundsInScreen();
+            Metadata resultMetadata = new Metadata();
+            resultMetadata.putInt(KEY_OVERLAPPING_VIEW_COUNT, overlapCounts[i]);
+            resultMetadata.putInt(KEY_LOCATION_LEFT, bounds.getLeft());
+            resultMetadata.putInt(KEY_LOCATION_TOP, bounds.getTop());
+            resultMetadata.putInt(KEY_LOCATION_RIGHT, bounds.getRight());
+            resultMetadata.putInt(KEY_LOCATION_BOTTOM, bounds.getBottom());
+            resultMetadata.putInt(KEY_OVERLAPPING_LOCATION_LEFT, overlappingBounds.getLeft());
+            resultMetadata.putInt(KEY_OVERLAPPING_LOCATION_TOP, overlappingBounds.getTop());
+            resultMetadata.putInt(KEY_OVERLAPPING_LOCATION_RIGHT, overlappingBounds.getRight());
+            resultMetadata.putInt(KEY_OVERLAPPING_LOCATION_BOTTOM, overlappingBounds.getBottom());
+            results.add(new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.WARNING,
+                    culprit,
+                    RESULT_ID_OVERLAPPING_TOUCH_TARGET,
+                    resultMetadata));
+        }
+
+        return results;
+    }
+
+    @Override
+    public String getMessageForResultData(
+            Locale locale, int resultId, @Nullable ResultMetadata metadata) {
+        switch (resultId) {
+            case RESULT_ID_OVERLAPPING_TOUCH_TARGET:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                Rect bounds = new Rect(
+                        metadata.getInt(KEY_LOCATION_LEFT),
+                        metadata.getInt(KEY_LOCATION_TOP),
+                        metadata.getInt(KEY_LOCATION_RIGHT),
+                        metadata.getInt(KEY_LOCATION_BOTTOM));
+                Rect overlappingBounds = new Rect(
+                        metadata.getInt(KEY_OVERLAPPING_LOCATION_LEFT),
+                        metadata.getInt(KEY_OVERLAPPING_LOCATION_TOP),
+                        metadata.getInt(KEY_OVERLAPPING_LOCATION_RIGHT),
+                        metadata.getInt(KEY_OVERLAPPING_LOCATION_BOTTOM));
+                return String.format(locale,
+                        StringManager.getString(locale, "result_message_overlapping_touch_target"),
+                        bounds.toShortString(),
+                        metadata.getInt(KEY_OVERLAPPING_VIEW_COUNT),
+                        overlappingBounds.toShortString());
+            default:
+                throw new IllegalStateException("Unsupported result id");
+        }
+    }
+
+    @Override
+    public String getShortMessageForResultData(
+            Locale locale, int resultId, @Nullable ResultMetadata metadata) {
+        switch (resultId) {
+            case RESULT_ID_OVERLAPPING_TOUCH_TARGET:
+                return StringManager.getString(locale, "result_message_brief_overlapping_touch_target");
+            default:
+                throw new IllegalStateException("Unsupported result id");
+        }
+    }
+
+    @Override
+    public String getTitleMessage(Locale locale) {
+        return StringManager.getString(locale, "check_title_overlapping_touch_target");
+    }
+
+    /**
+     * Finds every pair of {@code candidates} whose bounds overlap with non-zero area, and which are
+     * neither nested within one another nor of identical bounds.
+     *
+     * @param overlapCounts populated with the number of views overlapping each candidate
+     * @param firstOverlapping populated with the lowest index of a candidate overlapping each
+     *     candidate
+     */
+    private static void findOverlaps(List<ViewHierarchyElement> candidates, int[] overlapCounts,
+                                     int[] firstOverlapping) {
+        int count = candidates.size();
+        int[] lefts = new int[count];
+        int[] tops = new int[count];
+        int[] rights = new int[count];
+        int[] bottoms = new int[count];
+        long[] byLeft = new long[count];
+        long[] byRight = new long[count];
+        for (int i = 0; i < count; ++i) {
+            ViewHierarchyElement view = candidates.get(i);
+            lefts[i] = view.getBoundsInScreenLeft();
+            tops[i] = view.getBoundsInScreenTop();
+            rights[i] = view.getBoundsInScreenRight();
+            bottoms[i] = view.getBoundsInScreenBottom();
+            byLeft[i] = ((long) lefts[i] << 32) | i;
+            byRight[i] = ((long) rights[i] << 32) | i;
+        }
+        // Coordinates may be negative for views positioned off-screen, so sort by the signed high word.
+        Arrays.sort(byLeft);
+        Arrays.sort(byRight);
+
+        IntervalTree active = new IntervalTree(tops, bottoms);
+        int[] overlapping = new int[16];
+        int nextToRemove = 0;
+        for (long entry : byLeft) {
+            int current = (int) entry;
+
+            // Views ending at or before this left edge can no longer overlap anything to come.
+            while ((nextToRemove < count) && ((int) (byRight[nextToRemove] >> 32) <= lefts[current])) {
+                active.remove((int) byRight[nextToRemove++]);
+            }
+
+            int found = active.findOverlapping(tops[current], bottoms[current], overlapping);
+            if (found > overlapping.length) {
+                overlapping = new int[Integer.highestOneBit(found) << 1];
+                found = active.findOverlapping(tops[current], bottoms[current], overlapping);
+            }
+            for (int i = 0; i < found; ++i) {
+                int other = overlapping[i];
+                if (isNested(candidates.get(current), candidates.get(other))
+                        || ((lefts[current] == lefts[other])
+                                && (tops[current] == tops[other])
+                                && (rights[current] == rights[other])
+                                && (bottoms[current] == bottoms[other]))) {
+                    continue;
+                }
+                ++overlapCounts[current];
+                ++overlapCounts[other];
+                firstOverlapping[current] = Math.min(firstOverlapping[current], other);
+                firstOverlapping[other] = Math.min(firstOverlapping[other], current);
+            }
+            active.insert(current);
+        }
+    }
+
+    private static boolean isNested(ViewHierarchyElement first, ViewHierarchyElement second) {
+        return first.isSelfOrDescendantOf(second) || second.isSelfOrDescendantOf(first);
+    }
+
+    /**
+     * Dynamic set of vertical intervals {@code [top, bottom)}, held in a treap ordered by top and
+     * augmented with the greatest bottom of each subtree.
+     */
+    private static class IntervalTree {
+        private static final int NONE = -1;
+
+        private final int[] tops;
+        private final int[] bottoms;
+        private final int[] leftChild;
+        private final int[] rightChild;
+        private final int[] priority;
+        private final int[] maxBottom;
+        private int root = NONE;
+
+        IntervalTree(int[] tops, int[] bottoms) {
+            this.tops = tops;
+            this.bottoms = bottoms;
+            int count = tops.length;
+            this.leftChild = new int[count];
+            this.rightChild = new int[count];
+            this.priority = new int[count];
+            this.maxBottom = new int[count];
+            for (int i = 0; i < count; ++i) {
+                // A fixed mix of the index keeps the tree shape, and therefore results, reproducible.
+                int hash = i * 0x9E3779B9;
+                priority[i] = hash ^ (hash >>> 16);
+            }
+        }
+
+        void insert(int item) {
+            leftChild[item] = NONE;
+            rightChild[item] = NONE;
+            maxBottom[item] = bottoms[item];
+            root = insert(root, item);
+        }
+
+        void remove(int item) {
+            root = remove(root, item);
+        }
+
+        /**
+         * Writes the items whose intervals overlap {@code [top, bottom)} into {@code out}.
+         *
+         * @return the number of overlapping items, which may exceed the length of {@code out}, in
+         *     which case only the first {@code out.length} items were written
+         */
+        int findOverlapping(int top, int bottom, int[] out) {
+            return findOverlapping(root, top, bottom, out, 0);
+        }
+
+        private int findOverlapping(int node, int top, int bottom, int[] out, int found) {
+            if ((node == NONE) || (maxBottom[node] <= top)) {
+                return found;
+            }
+            found = findOverlapping(leftChild[node], top, bottom, out, found);
+            if (tops[node] >= bottom) {
+                // Items in the right subtree start even lower
+                return found;
+            }
+            if (bottoms[node] > top) {
+                if (found < out.length) {
+                    out[found] = node;
+                }
+                ++found;
+            }
+            return findOverlapping(rightChild[node], top, bottom, out, found);
+        }
+
+        private int insert(int node, int item) {
+            if (node == NONE) {
+                return item;
+            }
+            if (compare(item, node) < 0) {
+                leftChild[node] = insert(leftChild[node], item);
+                if (priority[leftChild[node]] > priority[node]) {
+                    node = rotateRight(node);
+                }
+            } else {
+                rightChild[node] = insert(rightChild[node], item);
+                if (priority[rightChild[node]] > priority[node]) {
+                    node = rotateLeft(node);
+                }
+            }
+            update(node);
+            return node;
+        }
+
+        private int remove(int node, int item) {
+            if (node == NONE) {
+                return NONE;
+            }
+            int comparison = compare(item, node);
+            if (comparison < 0) {
+                leftChild[node] = remove(leftChild[node], item);
+            } else if (comparison > 0) {
+                rightChild[node] = remove(rightChild[node], item);
+            } else {
+                return merge(leftChild[node], rightChild[node]);
+            }
+            update(node);
+            return node;
+        }
+
+        private int merge(int left, int right) {
+            if (left == NONE) {
+                return right;
+            }
+            if (right == NONE) {
+                return left;
+            }
+            if (priority[left] > priority[right]) {
+                rightChild[left] = merge(rightChild[left], right);
+                update(left);
+                return left;
+            }
+            leftChild[right] = merge(left, leftChild[right]);
+            update(right);
+            return right;
+        }
+
+        private int rotateRight(int node) {
+            int pivot = leftChild[node];
+            leftChild[node] = rightChild[pivot];
+            rightChild[pivot] = node;
+            update(node);
+            update(pivot);
+            return pivot;
+        }
+
+        private int rotateLeft(int node) {
+            int pivot = rightChild[node];
+            rightChild[node] = leftChild[pivot];
+            leftChild[pivot] = node;
+            update(node);
+            update(pivot);
+            return pivot;
+        }
+
+        private void update(int node) {
+            int max = bottoms[node];
+            if (leftChild[node] != NONE) {
+                max = Math.max(max, maxBottom[leftChild[node]]);
+            }
+            if (rightChild[node] != NONE) {
+                max = Math.max(max, maxBottom[rightChild[node]]);
+            }
+            maxBottom[node] = max;
+        }
+
+        private int compare(int first, int second) {
+            int comparison = Integer.compare(tops[first], tops[second]);
+            return (comparison != 0) ? comparison : Integer.compare(first, second);
+        }
+    }
+}
@@ -24,13 +24,14 @@ import com.google.android.apps.common.testing.accessibility.framework.ResultMeta
 import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
-import com.google.android.apps.common.testing.accessibility.framework.uielement.DeviceState;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
-import com.google.common.base.Ascii;
-import com.google.common.collect.Lists;
+import com.google.android.apps.common.testing.accessibility.framework.utils.text.MultiPatternMatcher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
@@ -56,8 +57,15 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
      */
     public static final String KEY_CONTENT_DESCRIPTION = "KEY_CONTENT_DESCRIPTION";
 
-    private static final List<CharSequence> redundantWords =
-            Lists.<CharSequence>newArrayList("button");
+    /**
+     * Words which are redundant in a content description, by the language of the locale in which
+     * they are redundant. The check runs only for languages listed here.
+     */
+    private static final ImmutableMap<String, ImmutableList<String>> REDUNDANT_WORDS_BY_LANGUAGE =
+            ImmutableMap.of(Locale.ENGLISH.getLanguage(), ImmutableList.of("button"));
+
+    private static final ImmutableMap<String, MultiPatternMatcher> MATCHERS_BY_LANGUAGE =
+            compileMatchers(REDUNDANT_WORDS_BY_LANGUAGE);
 
     @Override
     protected String getHelpTopic() {
@@ -76,7 +84,9 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
             @Nullable Metadata metadata) {
         List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
 
-        if (!isEnglish(hierarchy)) {
+        MultiPatternMatcher redundantWordMatcher =
+                MATCHERS_BY_LANGUAGE.get(hierarchy.getDeviceState().getLocale().getLanguage());
+        if (redundantWordMatcher == null) {
             results.add(new AccessibilityHierarchyCheckResult(
                     this.getClass(), AccessibilityCheckResultType.NOT_RUN,
                     null,
@@ -107,18 +117,18 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
                         null));
                 continue;
             }
-            for (CharSequence redundantWord : redundantWords) {
-                if (Ascii.toLowerCase(contentDescription.toString()).contains(redundantWord)) {
-                    Metadata resultMetadata = new Metadata();
-                    resultMetadata.putString(KEY_CONTENT_DESCRIPTION, contentDescription.toString());
-                    results.add(
-                            new AccessibilityHierarchyCheckResult(
-                                    this.getClass(),
-                                    AccessibilityCheckResultType.WARNING,
-                                    view,
-                                    RESULT_ID_CONTENT_DESC_ENDS_WITH_VIEW_TYPE,
-                                    resultMetadata));
-                }
+            // One result per redundant word found, as the list may name several
+            int found = redundantWordMatcher.findAll(contentDescription).cardinality();
+            for (int i = 0; i < found; ++i) {
+                Metadata resultMetadata = new Metadata();
+                resultMetadata.putString(KEY_CONTENT_DESCRIPTION, contentDescription.toString());
+                results.add(
+                        new AccessibilityHierarchyCheckResult(
+                                this.getClass(),
+                                AccessibilityCheckResultType.WARNING,
+                                view,
+                                RESULT_ID_CONTENT_DESC_ENDS_WITH_VIEW_TYPE,
+                                resultMetadata));
             }
         }
         return results;
@@ -192,12 +202,13 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
         return StringManager.getString(locale, "check_title_redundant_description");
     }
 
-    /**
-     * Indicates whether the locale recorded in the {@link DeviceState} was English.
-     */
-    private static boolean isEnglish(AccessibilityHierarchy hierarchy) {
-        return hierarchy.getDeviceState().getLocale().getLanguage().equals(
-                Locale.ENGLISH.getLanguage());
+    private static ImmutableMap<String, MultiPatternMatcher> compileMatchers(
+            ImmutableMap<String, ImmutableList<String>> wordsByLanguage) {
+        ImmutableMap.Builder<String, MultiPatternMatcher> builder = ImmutableMap.builder();
+        for (Map.Entry<String, ImmutableList<String>> entry : wordsByLanguage.entrySet()) {
+            builder.put(entry.getKey(), new MultiPatternMatcher(entry.getValue()));
+        }
+        return builder.build();
     }
 
     private static @Nullable String generateMessageForResultId(Locale locale, int resultId) {
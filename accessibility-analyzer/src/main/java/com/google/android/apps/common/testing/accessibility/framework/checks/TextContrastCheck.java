@@ -0,0 +1,468 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Boolean.TRUE;
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheck;
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult;
+import com.google.android.apps.common.testing.accessibility.framework.Metadata;
+import com.google.android.apps.common.testing.accessibility.framework.ResultMetadata;
+import com.google.android.apps.common.testing.accessibility.framework.ScreenCaptureSampler;
+import com.google.android.apps.common.testing.accessibility.framework.ViewHierarchyElementUtils;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
+import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatch;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastUtils;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+/**
+ * Check to ensure that a TextView has sufficient contrast between its text and background.
+ * <p>
+ * When screen capture data is available through {@link
+ * AccessibilityCheckMetadata#METADATA_KEY_SCREEN_CAPTURE_BITMAP}, the foreground and background
+ * colors are estimated from the pixels within the view's bounds. Otherwise the view's declared text
+ * and background drawable colors are compared.
+ */
+public class TextContrastCheck extends AccessibilityHierarchyCheck
+        implements ScreenCaptureSampler {
+
+    /** Result when the view is not visible. */
+    public static final int RESULT_ID_NOT_VISIBLE = 1;
+    /** Result when the view is not a {@code TextView}. */
+    public static final int RESULT_ID_NOT_TEXT_VIEW = 2;
+    /** Result when the view has no text. */
+    public static final int RESULT_ID_TEXTVIEW_EMPTY = 3;
+    /** Result when the view's text color could not be obtained. */
+    public static final int RESULT_ID_COULD_NOT_GET_TEXT_COLOR = 4;
+    /** Result when the view's background color could not be obtained. */
+    public static final int RESULT_ID_COULD_NOT_GET_BACKGROUND_COLOR = 5;
+    /** Result when the view's text color is not opaque. */
+    public static final int RESULT_ID_TEXT_MUST_BE_OPAQUE = 6;
+    /** Result when the view's background color is not opaque. */
+    public static final int RESULT_ID_BACKGROUND_MUST_BE_OPAQUE = 7;
+    /** Result when the contrast of the view's declared text and background colors is too low. */
+    public static final int RESULT_ID_TEXTVIEW_CONTRAST_NOT_SUFFICIENT = 8;
+    /** Result when the view lies outside of the screen capture. */
+    public static final int RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE = 9;
+    /** Result when the screen capture shows nothing but a single color within the view. */
+    public static final int RESULT_ID_SCREENCAPTURE_DATA_HIDDEN = 10;
+    /** Result when the estimated contrast of the view's text is too low. */
+    public static final int RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT = 11;
+    /**
+     * Result when the estimated contrast of the view's text is too low for small text, and the size
+     * of the text is unknown.
+     */
+    public static final int RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_BORDERLINE = 12;
+    /** Result when the estimated contrast of the view's text is lower than the user-defined ratio. */
+    public static final int RESULT_ID_TEXTVIEW_HEURISTIC_CUSTOMIZED_CONTRAST_NOT_SUFFICIENT = 13;
+
+    /** Result metadata key for the {@code double} contrast ratio of the view's text. */
+    public static final String KEY_CONTRAST_RATIO = "KEY_CONTRAST_RATIO";
+    /** Result metadata key for the {@code double} contrast ratio required of the view's text. */
+    public static final String KEY_REQUIRED_CONTRAST_RATIO = "KEY_REQUIRED_CONTRAST_RATIO";
+    /** Result metadata key for the {@code double} contrast ratio required of large text. */
+    public static final String KEY_TOLERANT_CONTRAST_RATIO = "KEY_TOLERANT_CONTRAST_RATIO";
+    /** Result metadata key for the {@code double} user-defined contrast ratio. */
+    public static final String KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO =
+            "KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO";
+    /** Result metadata key for the {@code int} declared text color of the view. */
+    public static final String KEY_TEXT_COLOR = "KEY_TEXT_COLOR";
+    /** Result metadata key for the {@code int} estimated foreground color of the view. */
+    public static final String KEY_FOREGROUND_COLOR = "KEY_FOREGROUND_COLOR";
+    /** Result metadata key for the {@code int} declared or estimated background color of the view. */
+    public static final String KEY_BACKGROUND_COLOR = "KEY_BACKGROUND_COLOR";
+    /** Result metadata key for the {@code float} opacity percentage of the view's text color. */
+    public static final String KEY_TEXT_OPACITY = "KEY_TEXT_OPACITY";
+    /** Result metadata key for the {@code float} opacity percentage of the view's background. */
+    public static final String KEY_BACKGROUND_OPACITY = "KEY_BACKGROUND_OPACITY";
+    /** Result metadata key for the {@code String} bounds of the view. */
+    public static final String KEY_VIEW_BOUNDS_STRING = "KEY_VIEW_BOUNDS_STRING";
+    /** Result metadata key for the {@code String} bounds of the screen capture. */
+    public static final String KEY_SCREENSHOT_BOUNDS_STRING = "KEY_SCREENSHOT_BOUNDS_STRING";
+
+    /** Tolerance applied to contrast ratios, to account for rounding of the reported ratio. */
+    private static final double CONTRAST_TOLERANCE = 0.01d;
+
+    private static final int TYPEFACE_BOLD = 1;
+
+    @Override
+    protected String getHelpTopic() {
+        return "7158390"; // Color contrast
+    }
+
+    @Override
+    public Category getCategory() {
+        return Category.LOW_CONTRAST;
+    }
+
+    @Override
+    public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
+            AccessibilityHierarchy hierarchy,
+            @Nullable ViewHierarchyElement fromRoot,
+            @Nullable Metadata metadata) {
+        List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
+        // Screen capture data is only decoded once a view needs its pixels sampled.
+        Supplier<Image> screenCaptureSupplier = Suppliers.memoize(
+                () -> AccessibilityCheckMetadata.getScreenCaptureFromMetadata(metadata));
+        Double customizedRatio =
+                AccessibilityCheckMetadata.getCustomizedHeuristicContrastRatioInMetadata(metadata);
+        float scaledDensity = hierarchy.getDeviceState().getDefaultDisplayInfo()
+                .getMetricsWithoutDecoration().getScaledDensity();
+
+        List<ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+        for (ViewHierarchyElement view : viewsToEval) {
+            if (!TRUE.equals(view.isVisibleToUser())) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_NOT_VISIBLE,
+                        null));
+                continue;
+            }
+
+            if (!TRUE.equals(view.isTextView())) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_NOT_TEXT_VIEW,
+                        null));
+                continue;
+            }
+
+            if (TextUtils.isEmpty(view.getText())) {
+                results.add(new AccessibilityHierarchyCheckResult(
+                        this.getClass(),
+                        AccessibilityCheckResultType.NOT_RUN,
+                        view,
+                        RESULT_ID_TEXTVIEW_EMPTY,
+                        null));
+                continue;
+            }
+
+            Boolean isLargeText = isLargeText(view, scaledDensity);
+            Image screenCapture = screenCaptureSupplier.get();
+            AccessibilityHierarchyCheckResult result = (screenCapture != null)
+                    ? evaluateScreenCapture(view, screenCapture, isLargeText, customizedRatio)
+                    : evaluateDeclaredColors(view, isLargeText, customizedRatio);
+            if (result != null) {
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    @Override
+    public @Nullable Rect getSampledRegion(
+            AccessibilityHierarchy hierarchy, @Nullable ViewHierarchyElement fromRoot) {
+        List<ViewHierarchyElement> sampledViews = new ArrayList<>();
+        for (ViewHierarchyElement view : getElementsToEvaluate(fromRoot, hierarchy)) {
+            if (isSampled(view)) {
+                sampledViews.add(view);
+            }
+        }
+        return ViewHierarchyElementUtils.getUnionOfBounds(sampledViews);
+    }
+
+    @Override
+    public String getMessageForResultData(
+            Locale locale, int resultId, @Nullable ResultMetadata metadata) {
+        switch (resultId) {
+            case RESULT_ID_NOT_VISIBLE:
+                return StringManager.getString(locale, "result_message_not_visible");
+            case RESULT_ID_NOT_TEXT_VIEW:
+                return StringManager.getString(locale, "result_message_not_text_view");
+            case RESULT_ID_TEXTVIEW_EMPTY:
+                return StringManager.getString(locale, "result_message_textview_empty");
+            case RESULT_ID_COULD_NOT_GET_TEXT_COLOR:
+                return StringManager.getString(locale, "result_message_could_not_get_text_color");
+            case RESULT_ID_COULD_NOT_GET_BACKGROUND_COLOR:
+                return StringManager.getString(locale, "result_message_could_not_get_background_color");
+            case RESULT_ID_TEXT_MUST_BE_OPAQUE:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return StringManager.getString(locale, "result_message_text_must_be_opaque")
+                        + " "
+                        + String.format(locale,
+                        StringManager.getString(locale, "result_message_addendum_opacity_description"),
+                        metadata.getFloat(KEY_TEXT_OPACITY));
+            case RESULT_ID_BACKGROUND_MUST_BE_OPAQUE:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return StringManager.getString(locale, "result_message_background_must_be_opaque")
+                        + " "
+                        + String.format(locale,
+                        StringManager.getString(locale, "result_message_addendum_opacity_description"),
+                        metadata.getFloat(KEY_BACKGROUND_OPACITY));
+            case RESULT_ID_TEXTVIEW_CONTRAST_NOT_SUFFICIENT:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(locale, "result_message_textview_contrast_not_sufficient"),
+                        metadata.getDouble(KEY_CONTRAST_RATIO),
+                        metadata.getDouble(KEY_REQUIRED_CONTRAST_RATIO),
+                        metadata.getInt(KEY_TEXT_COLOR) & 0xFFFFFF,
+                        metadata.getInt(KEY_BACKGROUND_COLOR) & 0xFFFFFF);
+            case RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(locale, "result_message_view_not_within_screencapture"),
+                        metadata.getString(KEY_VIEW_BOUNDS_STRING),
+                        metadata.getString(KEY_SCREENSHOT_BOUNDS_STRING));
+            case RESULT_ID_SCREENCAPTURE_DATA_HIDDEN:
+                return StringManager.getString(locale, "result_message_screencapture_data_hidden");
+            case RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(
+                                locale, "result_message_textview_heuristic_contrast_not_sufficient"),
+                        metadata.getDouble(KEY_CONTRAST_RATIO),
+                        metadata.getDouble(KEY_REQUIRED_CONTRAST_RATIO),
+                        metadata.getInt(KEY_FOREGROUND_COLOR) & 0xFFFFFF,
+                        metadata.getInt(KEY_BACKGROUND_COLOR) & 0xFFFFFF);
+            case RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_BORDERLINE:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(
+                                locale, "result_message_textview_heuristic_contrast_borderline"),
+                        metadata.getDouble(KEY_CONTRAST_RATIO),
+                        metadata.getDouble(KEY_REQUIRED_CONTRAST_RATIO),
+                        metadata.getDouble(KEY_TOLERANT_CONTRAST_RATIO),
+                        metadata.getInt(KEY_FOREGROUND_COLOR) & 0xFFFFFF,
+                        metadata.getInt(KEY_BACKGROUND_COLOR) & 0xFFFFFF);
+            case RESULT_ID_TEXTVIEW_HEURISTIC_CUSTOMIZED_CONTRAST_NOT_SUFFICIENT:
+                // Metadata will have been set for this result ID
+                checkNotNull(metadata);
+                return String.format(locale,
+                        StringManager.getString(
+                                locale, "result_message_textview_heuristic_customized_contrast_not_sufficient"),
+                        metadata.getDouble(KEY_CONTRAST_RATIO),
+                        metadata.getDouble(KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO),
+                        metadata.getInt(KEY_FOREGROUND_COLOR) & 0xFFFFFF,
+                        metadata.getInt(KEY_BACKGROUND_COLOR) & 0xFFFFFF);
+            default:
+                throw new IllegalStateException("Unsupported result id");
+        }
+    }
+
+    @Override
+    public String getShortMessageForResultData(
+            Locale locale, int resultId, @Nullable ResultMetadata metadata) {
+        switch (resultId) {
+            case RESULT_ID_NOT_VISIBLE:
+            case RESULT_ID_NOT_TEXT_VIEW:
+            case RESULT_ID_TEXTVIEW_EMPTY:
+            case RESULT_ID_COULD_NOT_GET_TEXT_COLOR:
+            case RESULT_ID_COULD_NOT_GET_BACKGROUND_COLOR:
+            case RESULT_ID_TEXT_MUST_BE_OPAQUE:
+            case RESULT_ID_BACKGROUND_MUST_BE_OPAQUE:
+            case RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE:
+            case RESULT_ID_SCREENCAPTURE_DATA_HIDDEN:
+                return getMessageForResultData(locale, resultId, metadata);
+            case RESULT_ID_TEXTVIEW_CONTRAST_NOT_SUFFICIENT:
+            case RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT:
+            case RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_BORDERLINE:
+            case RESULT_ID_TEXTVIEW_HEURISTIC_CUSTOMIZED_CONTRAST_NOT_SUFFICIENT:
+                return StringManager.getString(locale, "result_message_brief_text_contrast_not_sufficient");
+            default:
+                throw new IllegalStateException("Unsupported result id");
+        }
+    }
+
+    @Override
+    public String getTitleMessage(Locale locale) {
+        return StringManager.getString(locale, "check_title_text_contrast");
+    }
+
+    private @Nullable AccessibilityHierarchyCheckResult evaluateDeclaredColors(
+            ViewHierarchyElement view, @Nullable Boolean isLargeText, @Nullable Double customizedRatio) {
+        Integer textColor = view.getTextColor();
+        if (textColor == null) {
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.NOT_RUN,
+                    view,
+                    RESULT_ID_COULD_NOT_GET_TEXT_COLOR,
+                    null);
+        }
+
+        Integer backgroundColor = view.getBackgroundDrawableColor();
+        if (backgroundColor == null) {
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.NOT_RUN,
+                    view,
+                    RESULT_ID_COULD_NOT_GET_BACKGROUND_COLOR,
+                    null);
+        }
+
+        int textAlpha = textColor >>> 24;
+        if (textAlpha < 255) {
+            Metadata resultMetadata = new Metadata();
+            resultMetadata.putFloat(KEY_TEXT_OPACITY, (textAlpha / 255f) * 100f);
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.NOT_RUN,
+                    view,
+                    RESULT_ID_TEXT_MUST_BE_OPAQUE,
+                    resultMetadata);
+        }
+
+        int backgroundAlpha = backgroundColor >>> 24;
+        if (backgroundAlpha < 255) {
+            Metadata resultMetadata = new Metadata();
+            resultMetadata.putFloat(KEY_BACKGROUND_OPACITY, (backgroundAlpha / 255f) * 100f);
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.NOT_RUN,
+                    view,
+                    RESULT_ID_BACKGROUND_MUST_BE_OPAQUE,
+                    resultMetadata);
+        }
+
+        double contrastRatio = ContrastUtils.calculateContrastRatioOfColors(textColor, backgroundColor);
+        double requiredRatio;
+        if (customizedRatio != null) {
+            requiredRatio = customizedRatio;
+        } else {
+            requiredRatio = TRUE.equals(isLargeText)
+                    ? ContrastUtils.CONTRAST_RATIO_WCAG_LARGE_TEXT
+                    : ContrastUtils.CONTRAST_RATIO_WCAG_NORMAL_TEXT;
+        }
+        if (contrastRatio >= requiredRatio - CONTRAST_TOLERANCE) {
+            return null;
+        }
+
+        Metadata resultMetadata = new Metadata();
+        resultMetadata.putDouble(KEY_CONTRAST_RATIO, contrastRatio);
+        resultMetadata.putDouble(KEY_REQUIRED_CONTRAST_RATIO, requiredRatio);
+        resultMetadata.putInt(KEY_TEXT_COLOR, textColor);
+        resultMetadata.putInt(KEY_BACKGROUND_COLOR, backgroundColor);
+        return new AccessibilityHierarchyCheckResult(
+                this.getClass(),
+                AccessibilityCheckResultType.ERROR,
+                view,
+                RESULT_ID_TEXTVIEW_CONTRAST_NOT_SUFFICIENT,
+                resultMetadata);
+    }
+
+    private @Nullable AccessibilityHierarchyCheckResult evaluateScreenCapture(
+            ViewHierarchyElement view,
+            Image screenCapture,
+            @Nullable Boolean isLargeText,
+            @Nullable Double customizedRatio) {
+        Rect viewBounds = view.getBoundsInScreen();
+        Rect screenCaptureBounds = screenCapture.getBounds();
+        if (viewBounds.isEmpty() || !screenCaptureBounds.contains(viewBounds)) {
+            Metadata resultMetadata = new Metadata();
+            resultMetadata.putString(KEY_VIEW_BOUNDS_STRING, viewBounds.toShortString());
+            resultMetadata.putString(KEY_SCREENSHOT_BOUNDS_STRING, screenCaptureBounds.toShortString());
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.NOT_RUN,
+                    view,
+                    RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE,
+                    resultMetadata);
+        }
+
+        ContrastSwatch swatch = ContrastSwatch.forCurrentThread();
+        swatch.process(screenCapture, viewBounds);
+        if (swatch.isUniform()) {
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.NOT_RUN,
+                    view,
+                    RESULT_ID_SCREENCAPTURE_DATA_HIDDEN,
+                    null);
+        }
+
+        double contrastRatio = swatch.getContrastRatio();
+        Metadata resultMetadata = new Metadata();
+        resultMetadata.putDouble(KEY_CONTRAST_RATIO, contrastRatio);
+        resultMetadata.putInt(KEY_FOREGROUND_COLOR, swatch.getForegroundColor());
+        resultMetadata.putInt(KEY_BACKGROUND_COLOR, swatch.getBackgroundColor());
+        if (customizedRatio != null) {
+            if (contrastRatio >= customizedRatio - CONTRAST_TOLERANCE) {
+                return null;
+            }
+            resultMetadata.putDouble(KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO, customizedRatio);
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.ERROR,
+                    view,
+                    RESULT_ID_TEXTVIEW_HEURISTIC_CUSTOMIZED_CONTRAST_NOT_SUFFICIENT,
+                    resultMetadata);
+        }
+
+        double requiredRatio = TRUE.equals(isLargeText)
+                ? ContrastUtils.CONTRAST_RATIO_WCAG_LARGE_TEXT
+                : ContrastUtils.CONTRAST_RATIO_WCAG_NORMAL_TEXT;
+        if (contrastRatio >= requiredRatio - CONTRAST_TOLERANCE) {
+            return null;
+        }
+
+        // Without a known text size, a ratio sufficient for large text may still be acceptable.
+        if ((isLargeText == null)
+                && (contrastRatio
+                >= ContrastUtils.CONTRAST_RATIO_WCAG_LARGE_TEXT - CONTRAST_TOLERANCE)) {
+            resultMetadata.putDouble(KEY_REQUIRED_CONTRAST_RATIO, requiredRatio);
+            resultMetadata.putDouble(
+                    KEY_TOLERANT_CONTRAST_RATIO, ContrastUtils.CONTRAST_RATIO_WCAG_LARGE_TEXT);
+            return new AccessibilityHierarchyCheckResult(
+                    this.getClass(),
+                    AccessibilityCheckResultType.WARNING,
+                    view,
+                    RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_BORDERLINE,
+                    resultMetadata);
+        }
+
+        resultMetadata.putDouble(KEY_REQUIRED_CONTRAST_RATIO, requiredRatio);
+        return new AccessibilityHierarchyCheckResult(
+                this.getClass(),
+                AccessibilityCheckResultType.ERROR,
+                view,
+                RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT,
+                resultMetadata);
+    }
+
+    /**
+     * @return {@link Boolean#TRUE} if the view's text is large as defined by WCAG, {@link
+     *     Boolean#FALSE} if it is not, or {@code null} if the text size is unknown
+     */
+    private static @Nullable Boolean isLargeText(ViewHierarchyElement view, float scaledDensity) {
+        Float textSize = view.getTextSize();
+        if ((textSize == null) || (scaledDensity <= 0)) {
+            return null;
+        }
+
+        float textSizeSp = textSize / scaledDensity;
+        Integer typefaceStyle = view.getTypefaceStyle();
+        boolean isBold = (typefaceStyle != null) && ((typefaceStyle & TYPEFACE_BOLD) != 0);
+        return (textSizeSp >= ContrastUtils.WCAG_LARGE_TEXT_MIN_SIZE)
+                || (isBold && (textSizeSp >= ContrastUtils.WCAG_LARGE_BOLD_TEXT_MIN_SIZE));
+    }
+
+    /** @return {@code true} if the screen capture is sampled within the view's bounds */
+    private static boolean isSampled(ViewHierarchyElement view) {
+        return TRUE.equals(view.isVisibleToUser())
+                && TRUE.equals(view.isTextView())
+                && !TextUtils.isEmpty(view.getText());
+    }
+}
@@ -24,11 +24,12 @@ import com.google.android.apps.common.testing.accessibility.framework.ResultMeta
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -64,6 +65,17 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
             @Nullable Metadata metadata) {
         List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
         List<ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+
+        // Analyze the traversal constraints of all evaluated views at once, so that views sharing a
+        // chain do not each walk it.
+        TraversalGraph graph = new TraversalGraph(hierarchy);
+        for (ViewHierarchyElement view : viewsToEval) {
+            if (TRUE.equals(view.isVisibleToUser()) && view.isImportantForAccessibility()) {
+                graph.addView(view);
+            }
+        }
+        graph.analyze();
+
         for (ViewHierarchyElement view : viewsToEval) {
             if (!TRUE.equals(view.isVisibleToUser())) {
                 results.add(new AccessibilityHierarchyCheckResult(
@@ -87,11 +99,7 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
 
             // See if view is involved in an accessibilityTraversalBefore cycle or an
             // accessibilityTraversalAfter cycle.
-            List<ViewHierarchyElement> beforeChain;
-            List<ViewHierarchyElement> afterChain;
-            try {
-                beforeChain = buildNodeChain(view, (el) -> el.getAccessibilityTraversalBefore());
-            } catch (CycleException e) {
+            if (graph.leadsToBeforeCycle(view)) {
                 results.add(
                         new AccessibilityHierarchyCheckResult(
                                 this.getClass(),
@@ -101,9 +109,7 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
                                 null));
                 continue;
             }
-            try {
-                afterChain = buildNodeChain(view, (el) -> el.getAccessibilityTraversalAfter());
-            } catch (CycleException e) {
+            if (graph.leadsToAfterCycle(view)) {
                 results.add(
                         new AccessibilityHierarchyCheckResult(
                                 this.getClass(),
@@ -115,9 +121,7 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
             }
 
             // See if view is involved in over constraint by before and after.
-            Set<ViewHierarchyElement> intersection = intersectionOf(beforeChain, afterChain);
-            intersection.remove(view);
-            if (!intersection.isEmpty()) {
+            if (graph.isOverConstrained(view)) {
                 results.add(
                         new AccessibilityHierarchyCheckResult(
                                 this.getClass(),
@@ -179,48 +183,230 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
     }
 
     /**
-     * Build a sequence of elements starting from {@code start} by repeatedly applying {@code
-     * nextElementFunction}.
-     *
-     * @throws CycleException if a loop is detected
+     * The functional graphs formed by
+     * {@link ViewHierarchyElement#getAccessibilityTraversalBefore()} and
+     * {@link ViewHierarchyElement#getAccessibilityTraversalAfter()} over the views of a hierarchy.
+     * The graphs are analyzed from a set of added views in time linear in the number of views
+     * reached, with a logarithmic factor for over-constraint.
+     * <p>
+     * A view leads to a cycle if following one of the functions from it repeats a view. A view
+     * which leads to no cycle is over-constrained if the chains of views following it by each
+     * function have a view in common. Views are only reached by following the functions from added
+     * views, and the after function is only followed from views which lead to no before cycle.
      */
-    private List<ViewHierarchyElement> buildNodeChain(
-            ViewHierarchyElement start, NextElementFunction nextElementFunction) throws CycleException {
-        List<ViewHierarchyElement> chain = new ArrayList<>();
-        chain.add(start);
-        ViewHierarchyElement ptr = start;
-        while (true) {
-            ptr = nextElementFunction.apply(ptr);
-            if (ptr == null) {
-                return chain;
+    private static class TraversalGraph {
+        private static final byte UNVISITED = 0;
+        private static final byte ON_PATH = 1;
+        private static final byte ACYCLIC = 2;
+        private static final byte CYCLIC = 3;
+
+        /* Index of the first view of each window among all views of the hierarchy */
+        private final int[] windowOffsets;
+        private final ViewHierarchyElement[] views;
+        private final int[] beforeNext;
+        private final int[] afterNext;
+        private final byte[] beforeStates;
+        private final byte[] afterStates;
+        private final boolean[] added;
+        private final boolean[] overConstrained;
+        private final List<ViewHierarchyElement> addedViews = new ArrayList<>();
+
+        TraversalGraph(AccessibilityHierarchy hierarchy) {
+            Collection<WindowHierarchyElement> windows = hierarchy.getAllWindows();
+            windowOffsets = new int[windows.size() + 1];
+            for (WindowHierarchyElement window : windows) {
+                windowOffsets[window.getId() + 1] = window.getAllViews().size();
             }
-            if (chain.contains(ptr)) {
-                throw new CycleException(chain);
+            for (int i = 1; i < windowOffsets.length; ++i) {
+                windowOffsets[i] += windowOffsets[i - 1];
             }
-            chain.add(ptr);
+            int count = windowOffsets[windows.size()];
+            views = new ViewHierarchyElement[count];
+            beforeNext = new int[count];
+            afterNext = new int[count];
+            beforeStates = new byte[count];
+            afterStates = new byte[count];
+            added = new boolean[count];
+            overConstrained = new boolean[count];
         }
-    }
 
-    /** Find the elements that two lists have in common. */
-    private static <T> Set<T> intersectionOf(List<T> list1, List<T> list2) {
-        Set<T> intersection = new HashSet<T>(list1);
-        intersection.retainAll(new HashSet<T>(list2));
-        return intersection;
-    }
+        void addView(ViewHierarchyElement view) {
+            int index = indexOf(view);
+            views[index] = view;
+            added[index] = true;
+            addedViews.add(view);
+        }
 
-    private interface NextElementFunction {
-        @Nullable ViewHierarchyElement apply(ViewHierarchyElement el);
-    }
+        boolean leadsToBeforeCycle(ViewHierarchyElement view) {
+            return beforeStates[indexOf(view)] == CYCLIC;
+        }
+
+        boolean leadsToAfterCycle(ViewHierarchyElement view) {
+            return afterStates[indexOf(view)] == CYCLIC;
+        }
+
+        boolean isOverConstrained(ViewHierarchyElement view) {
+            return overConstrained[indexOf(view)];
+        }
+
+        void analyze() {
+            int[] path = new int[views.length];
+            boolean hasQueries = false;
+            for (ViewHierarchyElement view : addedViews) {
+                int index = indexOf(view);
+                if (walk(index, true, path) == ACYCLIC) {
+                    hasQueries |= (walk(index, false, path) == ACYCLIC);
+                }
+            }
+            if (hasQueries) {
+                findOverConstrained();
+            }
+        }
+
+        /**
+         * Follows a function from a view until reaching a view whose state is known, then marks
+         * every view on the way with the resulting state. Each view is thus followed at most once.
+         *
+         * @return the state of the view at {@code start}
+         */
+        private byte walk(int start, boolean before, int[] path) {
+            byte[] states = before ? beforeStates : afterStates;
+            int[] next = before ? beforeNext : afterNext;
+            int length = 0;
+            int current = start;
+            while ((current != -1) && (states[current] == UNVISITED)) {
+                states[current] = ON_PATH;
+                path[length++] = current;
+                ViewHierarchyElement nextView = before
+                        ? views[current].getAccessibilityTraversalBefore()
+                        : views[current].getAccessibilityTraversalAfter();
+                if (nextView == null) {
+                    next[current] = -1;
+                } else {
+                    int nextIndex = indexOf(nextView);
+                    views[nextIndex] = nextView;
+                    next[current] = nextIndex;
+                }
+                current = next[current];
+            }
+
+            // A view still on the path was reached twice, so the path runs into a cycle.
+            byte state = (current == -1) ? ACYCLIC
+                    : (states[current] == ON_PATH) ? CYCLIC : states[current];
+            for (int i = 0; i < length; ++i) {
+                states[path[i]] = state;
+            }
+            return state;
+        }
 
-    private static class CycleException extends Exception {
-        private final List<ViewHierarchyElement> elements;
+        /**
+         * Marks the added views whose acyclic before and after chains share a view. The after
+         * chains form a forest, in which a view's chain is its path to a root, so membership of a
+         * chain is tested by containment of Euler tour intervals. A depth-first traversal of the
+         * before forest keeps the intervals of the views on the current before chain in a Fenwick
+         * tree, so each view is tested against its whole before chain at once.
+         */
+        private void findOverConstrained() {
+            int count = views.length;
+            int[] afterEntry = new int[count];
+            int[] afterExit = new int[count];
+            int afterSize = eulerTour(afterNext, afterStates, afterEntry, afterExit, null);
 
-        CycleException(List<ViewHierarchyElement> elements) {
-            this.elements = elements;
+            int[] fenwick = new int[afterSize + 2];
+            int[] beforeEntry = new int[count];
+            eulerTour(beforeNext, beforeStates, beforeEntry, null, (index, entering) -> {
+                if (entering && added[index] && (afterStates[index] == ACYCLIC)) {
+                    overConstrained[index] = prefixSum(fenwick, afterEntry[index]) > 0;
+                }
+                if (afterStates[index] == ACYCLIC) {
+                    int delta = entering ? 1 : -1;
+                    addToFenwick(fenwick, afterEntry[index], delta);
+                    addToFenwick(fenwick, afterExit[index] + 1, -delta);
+                }
+            });
         }
 
-        List<ViewHierarchyElement> getElements() {
-            return elements;
+        /**
+         * Numbers the acyclic views of a forest, given by the parent of each view, in depth-first
+         * order.
+         *
+         * @param entry populated with the number of each view, starting from 1
+         * @param exit if not {@code null}, populated with the greatest number within each view's
+         *     subtree
+         * @param visitor if not {@code null}, notified on entering and leaving each view
+         * @return the number of views in the forest
+         */
+        private int eulerTour(int[] parents, byte[] states, int[] entry, @Nullable int[] exit,
+                              @Nullable TourVisitor visitor) {
+            int count = views.length;
+            int[] firstChild = new int[count];
+            int[] nextSibling = new int[count];
+            Arrays.fill(firstChild, -1);
+            for (int i = count - 1; i >= 0; --i) {
+                if ((states[i] == ACYCLIC) && (parents[i] != -1)) {
+                    nextSibling[i] = firstChild[parents[i]];
+                    firstChild[parents[i]] = i;
+                }
+            }
+
+            int[] stack = new int[count];
+            int[] cursor = new int[count];
+            int number = 0;
+            for (int root = 0; root < count; ++root) {
+                if ((states[root] != ACYCLIC) || (parents[root] != -1)) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth] = root;
+                cursor[depth] = firstChild[root];
+                entry[root] = ++number;
+                if (visitor != null) {
+                    visitor.visit(root, true);
+                }
+                while (depth >= 0) {
+                    int child = cursor[depth];
+                    if (child != -1) {
+                        cursor[depth] = nextSibling[child];
+                        stack[++depth] = child;
+                        cursor[depth] = firstChild[child];
+                        entry[child] = ++number;
+                        if (visitor != null) {
+                            visitor.visit(child, true);
+                        }
+                    } else {
+                        int index = stack[depth--];
+                        if (exit != null) {
+                            exit[index] = number;
+                        }
+                        if (visitor != null) {
+                            visitor.visit(index, false);
+                        }
+                    }
+                }
+            }
+            return number;
         }
+
+        private int indexOf(ViewHierarchyElement view) {
+            return windowOffsets[view.getWindow().getId()] + view.getId();
+        }
+
+        private static void addToFenwick(int[] fenwick, int position, int delta) {
+            for (int i = position; i < fenwick.length; i += i & -i) {
+                fenwick[i] += delta;
+            }
+        }
+
+        private static int prefixSum(int[] fenwick, int position) {
+            int sum = 0;
+            for (int i = position; i > 0; i -= i & -i) {
+                sum += fenwick[i];
+            }
+            return sum;
+        }
+    }
+
+    private interface TourVisitor {
+        void visit(int index, boolean entering);
     }
 }
@@ -19,21 +19,57 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.CharSequenceProto;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.SpanProto;
 import com.google.common.collect.ImmutableList;
-import java.util.ArrayList;
 import java.util.List;
 
 import javax.annotation.Nullable;
 
-/** Used as a local replacement for Android's @link android.text.SpannableString */
+/**
+ * Used as a local replacement for Android's @link android.text.SpannableString
+ * <p>
+ * When created from a proto, the spans are decoded on the first call to {@link #getSpans()}, as
+ * most strings are only ever read as text.
+ */
 public class SpannableString implements CharSequence, Replaceable {
 
     private final String rawString;
-    private final ImmutableList<Span> spans;
+
+    // Encoded spans, or null if the spans were supplied already decoded
+    private final @Nullable List<SpanProto> spanProtos;
+
+    // Decoded lazily from spanProtos. Racing threads decode equal lists, so no lock is needed.
+    private volatile @Nullable ImmutableList<Span> spans;
 
     public SpannableString(CharSequenceProto proto) {
         rawString = proto.getText();
+        spanProtos = proto.getSpanList();
+    }
+
+    public SpannableString(String rawString, List<Span> spans) {
+        this.rawString = rawString;
+        this.spanProtos = null;
+        this.spans = ImmutableList.<Span>copyOf(spans);
+    }
+
+    /**
+     * @return a {@link List} of {@link Span} objects representing markup spans annotating this {@code
+     *     CharSequence}
+     */
+    public List<Span> getSpans() {
+        ImmutableList<Span> result = spans;
+        if (result == null) {
+            result = decodeSpans(checkNotNull(spanProtos));
+            spans = result;
+        }
+        return result;
+    }
+
+    private static ImmutableList<Span> decodeSpans(List<SpanProto> spanProtos) {
+        if (spanProtos.isEmpty()) {
+            return ImmutableList.of();
+        }
+
         ImmutableList.Builder<Span> spansBuilder = ImmutableList.<Span>builder();
-        for (SpanProto span : proto.getSpanList()) {
+        for (SpanProto span : spanProtos) {
             Span localSpan;
             switch (span.getType()) {
                 case URL:
@@ -53,20 +89,7 @@ public class SpannableString implements CharSequence, Replaceable {
                 spansBuilder.add(localSpan);
             }
         }
-        this.spans = spansBuilder.build();
-    }
-
-    protected SpannableString(String rawString, List<Span> spans) {
-        this.rawString = rawString;
-        this.spans = ImmutableList.<Span>copyOf(spans);
-    }
-
-    /**
-     * @return a {@link List} of {@link Span} objects representing markup spans annotating this {@code
-     *     CharSequence}
-     */
-    public List<Span> getSpans() {
-        return spans;
+        return spansBuilder.build();
     }
 
     @Override
@@ -92,7 +115,7 @@ public class SpannableString implements CharSequence, Replaceable {
     public CharSequenceProto toProto() {
         CharSequenceProto.Builder builder = CharSequenceProto.newBuilder();
         builder.setText(rawString);
-        for (Span span : spans) {
+        for (Span span : getSpans()) {
             builder.addSpan(span.toProto());
         }
 
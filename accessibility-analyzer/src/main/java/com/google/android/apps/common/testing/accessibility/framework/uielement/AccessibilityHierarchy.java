@@ -22,6 +22,8 @@ import com.google.android.apps.common.testing.accessibility.framework.uielement.
 import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.WindowHierarchyElementProto;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,6 +39,13 @@ import javax.annotation.Nullable;
  * <p>
  * Such a hierarchy may contain a forest of {@link WindowHierarchyElement}s, each of which contain a
  * tree of {@link ViewHierarchyElement}s.
+ * <p>
+ * A hierarchy and its windows and views do not change once built, and may be shared between
+ * threads, such as to run several checks on it concurrently. Every reference between them is set
+ * before the hierarchy's constructor completes, so they are visible to any thread which reaches
+ * them through the hierarchy, even if the hierarchy itself is shared without synchronization.
+ * Values which are computed lazily are immutable and cached without locks, so threads which race
+ * to compute one at worst compute equal values.
  */
 public class AccessibilityHierarchy {
 
@@ -56,6 +65,10 @@ public class AccessibilityHierarchy {
         this.deviceState = deviceState;
         this.windowHierarchyElements = windowHierarchyElements;
         this.activeWindow = activeWindow;
+
+        // Set while constructing, so that the back-pointers are published along with the final
+        // fields through which the windows are reached.
+        setAccessibilityHierarchy();
     }
 
     /**
@@ -144,6 +157,18 @@ public class AccessibilityHierarchy {
         return builder;
     }
 
+    /**
+     * Returns a new builder that can build an AccessibilityHierarchy from a snapshot, without
+     * parsing a proto.
+     *
+     * @param snapshot A preprocessed representation of a hierarchy
+     */
+    public static Builder newBuilder(AccessibilityHierarchySnapshot snapshot) {
+        Builder builder = new Builder();
+        builder.snapshot = checkNotNull(snapshot);
+        return builder;
+    }
+
     /**
      * A builder for {@link AccessibilityHierarchy}; obtained using @link
      * AccessibilityHierarchy#builder.
@@ -151,12 +176,15 @@ public class AccessibilityHierarchy {
     public static class Builder {
         private @Nullable
         AccessibilityHierarchyProto proto;
+        private @Nullable AccessibilityHierarchySnapshot snapshot;
         private boolean disposeInstances = false;
 
         public AccessibilityHierarchy build() {
             AccessibilityHierarchy result;
             if (proto != null) {
                 result = buildHierarchyFromProto(proto);
+            } else if (snapshot != null) {
+                result = buildHierarchyFromSnapshot(snapshot);
             } else {
                 throw new IllegalStateException("Nothing from which to build");
             }
@@ -167,20 +195,46 @@ public class AccessibilityHierarchy {
             DeviceState deviceState = new DeviceState(proto.getDeviceState());
             int activeWindowId = proto.getActiveWindowId();
 
+            // Held only while building, so that names are shared within a hierarchy but the pool
+            // does not outlive it.
+            Interner<String> stringInterner = Interners.newStrongInterner();
             List<WindowHierarchyElement> windowHierarchyElements =
                     new ArrayList<>(proto.getWindowsCount());
             for (WindowHierarchyElementProto windowProto : proto.getWindowsList()) {
-                windowHierarchyElements.add(WindowHierarchyElement.newBuilder(windowProto).build());
+                windowHierarchyElements.add(
+                        WindowHierarchyElement.newBuilder(windowProto)
+                                .setStringInterner(stringInterner)
+                                .build());
             }
             checkState(
                     !windowHierarchyElements.isEmpty(),
                     "Hierarchies must contain at least one window.");
             WindowHierarchyElement activeWindow = windowHierarchyElements.get(activeWindowId);
 
-            AccessibilityHierarchy hierarchy =
-                    new AccessibilityHierarchy(deviceState, windowHierarchyElements, activeWindow);
-            hierarchy.setAccessibilityHierarchy();
-            return hierarchy;
+            return new AccessibilityHierarchy(
+                    deviceState,
+                    Collections.unmodifiableList(windowHierarchyElements),
+                    activeWindow);
+        }
+
+        private AccessibilityHierarchy buildHierarchyFromSnapshot(
+                AccessibilityHierarchySnapshot snapshot) {
+            DeviceState deviceState = new DeviceState(snapshot.getDeviceState());
+            List<WindowHierarchyElement> windowHierarchyElements =
+                    new ArrayList<>(snapshot.getWindows().size());
+            for (AccessibilityHierarchySnapshot.WindowSnapshot window : snapshot.getWindows()) {
+                windowHierarchyElements.add(WindowHierarchyElement.newBuilder(window).build());
+            }
+            checkState(
+                    !windowHierarchyElements.isEmpty(),
+                    "Hierarchies must contain at least one window.");
+            WindowHierarchyElement activeWindow =
+                    windowHierarchyElements.get(snapshot.getActiveWindowId());
+
+            return new AccessibilityHierarchy(
+                    deviceState,
+                    Collections.unmodifiableList(windowHierarchyElements),
+                    activeWindow);
         }
     }
 }
@@ -0,0 +1,749 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Span;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.SpannableString;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Spans;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.AccessibilityHierarchyProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.DeviceStateProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.WindowHierarchyElementProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.RectProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.SpanProto;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A preprocessed, flat representation of an {@link AccessibilityHierarchy}, from which the
+ * hierarchy can be built without parsing its protocol buffer.
+ * <p>
+ * The properties of the views of each window are stored as little-endian columns, indexed by view
+ * id, with every string held once in a table shared by the whole hierarchy. The parent, children
+ * and depth-first subtree range of each view are stored as precomputed arrays too. Columns are read
+ * in place, so a snapshot wrapped around a memory-mapped file is built into a hierarchy without
+ * first being copied or decoded as a whole. Device state and window properties, of which there are
+ * few, are kept as small protocol buffers.
+ * <p>
+ * A snapshot builds a hierarchy equal to the one built from the {@link AccessibilityHierarchyProto}
+ * it was written from.
+ */
+public final class AccessibilityHierarchySnapshot {
+
+    private static final int MAGIC = 0x53594841; // "AHYS" in little-endian order
+    private static final int VERSION = 1;
+
+    /* Strings which are absent are stored as this index into the string table */
+    private static final int NO_STRING = -1;
+
+    /* Columns of the strings of each view */
+    static final int PACKAGE_NAME = 0;
+    static final int CLASS_NAME = 1;
+    static final int ACCESSIBILITY_CLASS_NAME = 2;
+    static final int RESOURCE_NAME = 3;
+    static final int CONTENT_DESCRIPTION = 4;
+    static final int TEXT = 5;
+    private static final int STRING_COLUMNS = 6;
+
+    /* Columns of the optional integers of each view */
+    static final int NONCLIPPED_HEIGHT = 0;
+    static final int NONCLIPPED_WIDTH = 1;
+    static final int TEXT_COLOR = 2;
+    static final int BACKGROUND_DRAWABLE_COLOR = 3;
+    static final int TYPEFACE_STYLE = 4;
+    private static final int INT_COLUMNS = 5;
+
+    /* Columns of the optional condensed unique ids of views related to each view */
+    static final int LABELED_BY_ID = 0;
+    static final int ACCESSIBILITY_TRAVERSAL_BEFORE_ID = 1;
+    static final int ACCESSIBILITY_TRAVERSAL_AFTER_ID = 2;
+    private static final int LONG_COLUMNS = 3;
+
+    /* Bits of the flags of each view which hold required booleans */
+    static final int IMPORTANT_FOR_ACCESSIBILITY = 0;
+    static final int CLICKABLE = 1;
+    static final int LONG_CLICKABLE = 2;
+    static final int FOCUSABLE = 3;
+    static final int ENABLED = 4;
+    static final int HAS_BOUNDS_IN_SCREEN = 5;
+
+    /*
+     * Bits of the flags of each view which hold optional booleans. Each takes two bits, the lower
+     * set if the value is present and the upper holding the value.
+     */
+    static final int VISIBLE_TO_USER = 6;
+    static final int EDITABLE = 8;
+    static final int SCROLLABLE = 10;
+    static final int CAN_SCROLL_FORWARD = 12;
+    static final int CAN_SCROLL_BACKWARD = 14;
+    static final int CHECKABLE = 16;
+    static final int CHECKED = 18;
+    static final int HAS_TOUCH_DELEGATE = 20;
+
+    /* Bits of the flags of each view which are set if the optional numbers are present */
+    private static final int FIRST_INT_PRESENT = 22;
+    private static final int TEXT_SIZE_PRESENT = FIRST_INT_PRESENT + INT_COLUMNS;
+    private static final int FIRST_LONG_PRESENT = TEXT_SIZE_PRESENT + 1;
+
+    private final ByteBuffer buffer;
+    private final DeviceStateProto deviceState;
+    private final int activeWindowId;
+    private final List<WindowSnapshot> windows;
+
+    /* The offset of each string in stringChars, with the end of the last string at the end */
+    private final IntBuffer stringOffsets;
+    private final CharBuffer stringChars;
+
+    /* Decoded on first use, so that each string is created once however many views share it */
+    private final @Nullable String[] strings;
+
+    private AccessibilityHierarchySnapshot(ByteBuffer source) throws IOException {
+        buffer = source.slice().order(ByteOrder.LITTLE_ENDIAN);
+        checkArgument(buffer.getInt() == MAGIC, "Not a hierarchy snapshot");
+        checkArgument(buffer.getInt() == VERSION, "Unsupported hierarchy snapshot version");
+        int stringCount = buffer.getInt();
+        int windowCount = buffer.getInt();
+        activeWindowId = buffer.getInt();
+        checkArgument(stringCount >= 0, "Corrupt string table");
+        // Each window takes more than a byte, so a count beyond the bytes left is corrupt.
+        checkArgument(
+                (windowCount >= 0) && (windowCount <= buffer.remaining()), "Corrupt window count");
+        checkArgument(
+                (activeWindowId >= 0) && (activeWindowId < windowCount), "Corrupt active window");
+        deviceState = DeviceStateProto.parseFrom(readBytes());
+
+        stringOffsets = readInts(stringCount + 1L);
+        int charCount = stringOffsets.get(stringCount);
+        checkOffsets(stringOffsets, charCount, "Corrupt string table");
+        stringChars = slice(charCount * 2L).asCharBuffer();
+        align(4);
+        strings = new String[stringCount];
+
+        windows = new ArrayList<>(windowCount);
+        for (int i = 0; i < windowCount; ++i) {
+            // Each window is aligned for its columns of longs
+            align(8);
+            windows.add(new WindowSnapshot());
+        }
+    }
+
+    /**
+     * Reads a snapshot in place. The contents of {@code source} between its position and limit are
+     * not copied, and must not change while the snapshot is in use.
+     *
+     * @param source A snapshot as written by {@link #write}, such as a memory-mapped file
+     * @return the snapshot
+     * @throws IOException if {@code source} does not hold a snapshot, or holds a corrupt one. Every
+     *     id and index held in the snapshot is checked, so that a hierarchy can be built from any
+     *     snapshot read without error.
+     */
+    public static AccessibilityHierarchySnapshot read(ByteBuffer source) throws IOException {
+        try {
+            return new AccessibilityHierarchySnapshot(source);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt hierarchy snapshot", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of a hierarchy.
+     *
+     * @param proto A protocol buffer representation of the hierarchy
+     * @param channel The channel to which to write the snapshot
+     */
+    public static void write(AccessibilityHierarchyProto proto, WritableByteChannel channel)
+            throws IOException {
+        ByteBuffer snapshot = new Writer(proto).write();
+        while (snapshot.hasRemaining()) {
+            channel.write(snapshot);
+        }
+    }
+
+    DeviceStateProto getDeviceState() {
+        return deviceState;
+    }
+
+    int getActiveWindowId() {
+        return activeWindowId;
+    }
+
+    List<WindowSnapshot> getWindows() {
+        return windows;
+    }
+
+    /** @return The string at {@code index} in the string table, or {@code null} if it is absent */
+    private @Nullable String getString(int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        String string = strings[index];
+        if (string == null) {
+            int start = stringOffsets.get(index);
+            int end = stringOffsets.get(index + 1);
+            string = stringChars.subSequence(start, end).toString();
+            strings[index] = string;
+        }
+        return string;
+    }
+
+    private byte[] readBytes() {
+        ByteBuffer slice = slice(buffer.getInt());
+        byte[] bytes = new byte[slice.remaining()];
+        slice.get(bytes);
+        align(4);
+        return bytes;
+    }
+
+    private IntBuffer readInts(long count) {
+        return slice(count * 4).asIntBuffer();
+    }
+
+    /**
+     * @return The next {@code length} bytes of the snapshot, which it then skips. Taken as a long,
+     *     so that lengths computed from corrupt counts cannot overflow into valid ones.
+     */
+    private ByteBuffer slice(long length) {
+        checkArgument(
+                (length >= 0) && (length <= buffer.remaining()), "Truncated hierarchy snapshot");
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit((int) length);
+        buffer.position(buffer.position() + (int) length);
+        return slice;
+    }
+
+    /** Checks that each of {@code values} is at least {@code min} and less than {@code limit}. */
+    private static void checkRange(IntBuffer values, int min, int limit, String message) {
+        for (int i = 0; i < values.limit(); ++i) {
+            int value = values.get(i);
+            checkArgument((value >= min) && (value < limit), message);
+        }
+    }
+
+    /** Checks that {@code offsets} start at 0 and never decrease, up to {@code end} at the last. */
+    private static void checkOffsets(IntBuffer offsets, int end, String message) {
+        int previous = 0;
+        for (int i = 0; i < offsets.limit(); ++i) {
+            int offset = offsets.get(i);
+            checkArgument((i > 0) ? (offset >= previous) : (offset == 0), message);
+            previous = offset;
+        }
+        checkArgument(previous == end, message);
+    }
+
+    private void align(int alignment) {
+        int offset = buffer.position() % alignment;
+        if (offset != 0) {
+            buffer.position(buffer.position() + alignment - offset);
+        }
+    }
+
+    /** The columns of the views of a single window, read in place from the snapshot. */
+    final class WindowSnapshot {
+        private final WindowHierarchyElementProto properties;
+        private final int viewCount;
+        private final IntBuffer parentIds;
+        private final IntBuffer childOffsets;
+        private final IntBuffer childIds;
+        private final @Nullable IntBuffer subtreeEnds;
+        private final IntBuffer flags;
+        private final IntBuffer bounds;
+        private final IntBuffer stringIndices;
+        private final IntBuffer ints;
+        private final FloatBuffer textSizes;
+        private final IntBuffer spanOffsets;
+        private final IntBuffer spanTypes;
+        private final IntBuffer spanClassNames;
+        private final IntBuffer spanStarts;
+        private final IntBuffer spanEnds;
+        private final IntBuffer spanFlags;
+        private final IntBuffer spanUrls;
+        private final LongBuffer longs;
+
+        private WindowSnapshot() throws InvalidProtocolBufferException {
+            properties = WindowHierarchyElementProto.parseFrom(readBytes());
+            viewCount = buffer.getInt();
+            int childIdCount = buffer.getInt();
+            int spanCount = buffer.getInt();
+            boolean depthFirst = (buffer.getInt() != 0);
+
+            parentIds = readInts(viewCount);
+            childOffsets = readInts(viewCount + 1L);
+            childIds = readInts(childIdCount);
+            subtreeEnds = depthFirst ? readInts(viewCount) : null;
+            flags = readInts(viewCount);
+            bounds = readInts(viewCount * 4L);
+            stringIndices = readInts((long) viewCount * STRING_COLUMNS);
+            ints = readInts((long) viewCount * INT_COLUMNS);
+            textSizes = slice(viewCount * 4L).asFloatBuffer();
+            // The spans of the content description and of the text of each view, in turn
+            spanOffsets = readInts((viewCount * 2L) + 1);
+            spanTypes = readInts(spanCount);
+            spanClassNames = readInts(spanCount);
+            spanStarts = readInts(spanCount);
+            spanEnds = readInts(spanCount);
+            spanFlags = readInts(spanCount);
+            spanUrls = readInts(spanCount);
+            align(8);
+            longs = slice(viewCount * LONG_COLUMNS * 8L).asLongBuffer();
+
+            // Checked here rather than where they are used, so that a corrupt snapshot fails to
+            // read instead of failing part way through building its hierarchy.
+            int stringCount = strings.length;
+            checkRange(parentIds, -1, viewCount, "Corrupt parent ids");
+            checkOffsets(childOffsets, childIdCount, "Corrupt child ids");
+            checkRange(childIds, 0, viewCount, "Corrupt child ids");
+            if (subtreeEnds != null) {
+                for (int viewId = 0; viewId < viewCount; ++viewId) {
+                    int end = subtreeEnds.get(viewId);
+                    checkArgument((end > viewId) && (end <= viewCount), "Corrupt subtrees");
+                }
+            }
+            checkRange(stringIndices, NO_STRING, stringCount, "Corrupt strings");
+            checkOffsets(spanOffsets, spanCount, "Corrupt spans");
+            checkRange(spanClassNames, NO_STRING, stringCount, "Corrupt spans");
+            checkRange(spanUrls, NO_STRING, stringCount, "Corrupt spans");
+        }
+
+        /** @return The properties of the window, without its views */
+        WindowHierarchyElementProto getProperties() {
+            return properties;
+        }
+
+        int getViewCount() {
+            return viewCount;
+        }
+
+        @Nullable Integer getParentId(int viewId) {
+            int parentId = parentIds.get(viewId);
+            return (parentId != -1) ? parentId : null;
+        }
+
+        /** @return The ids of the children of the view, or {@code null} if it has none */
+        @Nullable List<Integer> getChildIds(int viewId) {
+            int start = childOffsets.get(viewId);
+            int end = childOffsets.get(viewId + 1);
+            if (start == end) {
+                return null;
+            }
+            int[] ids = new int[end - start];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = childIds.get(start + i);
+            }
+            return ImmutableList.copyOf(Ints.asList(ids));
+        }
+
+        /**
+         * @return The end of the range of ids spanned by the subtree rooted at each view, or {@code
+         *     null} if the views are not numbered in depth-first order
+         */
+        int @Nullable [] getSubtreeEnds() {
+            if (subtreeEnds == null) {
+                return null;
+            }
+            int[] ends = new int[viewCount];
+            subtreeEnds.duplicate().get(ends);
+            return ends;
+        }
+
+        /** @return The left, top, right and bottom of the bounds of each view, in turn */
+        int[] getViewBounds() {
+            int[] viewBounds = new int[viewCount * 4];
+            bounds.duplicate().get(viewBounds);
+            return viewBounds;
+        }
+
+        boolean getFlag(int viewId, int bit) {
+            return (flags.get(viewId) & (1 << bit)) != 0;
+        }
+
+        @Nullable Boolean getOptionalFlag(int viewId, int bit) {
+            return getFlag(viewId, bit) ? getFlag(viewId, bit + 1) : null;
+        }
+
+        @Nullable String getString(int viewId, int column) {
+            return AccessibilityHierarchySnapshot.this.getString(
+                    stringIndices.get((column * viewCount) + viewId));
+        }
+
+        /** @return The {@link #CONTENT_DESCRIPTION} or {@link #TEXT} of the view, with its spans */
+        @Nullable SpannableString getSpannableString(int viewId, int column) {
+            String string = getString(viewId, column);
+            if (string == null) {
+                return null;
+            }
+            int spanColumn = (column == TEXT) ? 1 : 0;
+            int start = spanOffsets.get((viewId * 2) + spanColumn);
+            int end = spanOffsets.get((viewId * 2) + spanColumn + 1);
+            List<Span> spans = new ArrayList<>(end - start);
+            for (int i = start; i < end; ++i) {
+                Span span = getSpan(i);
+                if (span != null) {
+                    spans.add(span);
+                }
+            }
+            return new SpannableString(string, spans);
+        }
+
+        @Nullable Integer getInt(int viewId, int column) {
+            return getFlag(viewId, FIRST_INT_PRESENT + column)
+                    ? ints.get((column * viewCount) + viewId)
+                    : null;
+        }
+
+        @Nullable Float getTextSize(int viewId) {
+            return getFlag(viewId, TEXT_SIZE_PRESENT) ? textSizes.get(viewId) : null;
+        }
+
+        @Nullable Long getLong(int viewId, int column) {
+            return getFlag(viewId, FIRST_LONG_PRESENT + column)
+                    ? longs.get((column * viewCount) + viewId)
+                    : null;
+        }
+
+        /** @return The span at {@code index}, or {@code null} if it is of an unsupported type */
+        private @Nullable Span getSpan(int index) {
+            String className = getNonNullString(spanClassNames.get(index));
+            int start = spanStarts.get(index);
+            int end = spanEnds.get(index);
+            int spanFlags = this.spanFlags.get(index);
+            SpanProto.SpanType type = SpanProto.SpanType.forNumber(spanTypes.get(index));
+            if (type == null) {
+                return null;
+            }
+            switch (type) {
+                case URL:
+                    String url = getNonNullString(spanUrls.get(index));
+                    return new Spans.URLSpan(className, start, end, spanFlags, url);
+                case CLICKABLE:
+                    return new Spans.ClickableSpan(className, start, end, spanFlags);
+                case UNKNOWN:
+                    return new Span(className, start, end, spanFlags);
+                default:
+                    return null;
+            }
+        }
+
+        private String getNonNullString(int index) {
+            String string = AccessibilityHierarchySnapshot.this.getString(index);
+            return (string != null) ? string : "";
+        }
+    }
+
+    /** Lays out a snapshot of a hierarchy in a little-endian buffer which grows as needed. */
+    private static class Writer {
+        private final AccessibilityHierarchyProto proto;
+        private final Map<String, Integer> stringIndices = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private ByteBuffer output = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        Writer(AccessibilityHierarchyProto proto) {
+            this.proto = proto;
+        }
+
+        ByteBuffer write() {
+            // The string table precedes the windows, so their strings are indexed first.
+            List<ByteBuffer> windows = new ArrayList<>(proto.getWindowsCount());
+            for (WindowHierarchyElementProto window : proto.getWindowsList()) {
+                windows.add(writeWindow(window));
+            }
+
+            putInt(MAGIC);
+            putInt(VERSION);
+            putInt(strings.size());
+            putInt(proto.getWindowsCount());
+            putInt(proto.getActiveWindowId());
+            putMessage(proto.getDeviceState());
+
+            int offset = 0;
+            putInt(offset);
+            for (String string : strings) {
+                offset += string.length();
+                putInt(offset);
+            }
+            for (String string : strings) {
+                ensureCapacity(string.length() * 2);
+                for (int i = 0; i < string.length(); ++i) {
+                    output.putChar(string.charAt(i));
+                }
+            }
+            align(4);
+
+            // Each window was laid out as if it began at an offset aligned to 8.
+            for (ByteBuffer window : windows) {
+                align(8);
+                ensureCapacity(window.remaining());
+                output.put(window);
+            }
+            output.flip();
+            return output;
+        }
+
+        /** @return The columns of {@code window}, laid out in a buffer of their own */
+        private ByteBuffer writeWindow(WindowHierarchyElementProto window) {
+            ByteBuffer previous = output;
+            output = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+            List<ViewHierarchyElementProto> views = window.getViewsList();
+            int viewCount = views.size();
+            int childIdCount = 0;
+            int spanCount = 0;
+            for (ViewHierarchyElementProto view : views) {
+                childIdCount += view.getChildIdsCount();
+                spanCount += view.getContentDescription().getSpanCount();
+                spanCount += view.getText().getSpanCount();
+            }
+            int[] subtreeEnds = WindowHierarchyElement.getSubtreeEnds(window);
+
+            putMessage(window.toBuilder().clearViews().build());
+            putInt(viewCount);
+            putInt(childIdCount);
+            putInt(spanCount);
+            putInt((subtreeEnds != null) ? 1 : 0);
+
+            for (ViewHierarchyElementProto view : views) {
+                putInt(view.getParentId());
+            }
+            int childOffset = 0;
+            putInt(childOffset);
+            for (ViewHierarchyElementProto view : views) {
+                childOffset += view.getChildIdsCount();
+                putInt(childOffset);
+            }
+            for (ViewHierarchyElementProto view : views) {
+                for (int childId : view.getChildIdsList()) {
+                    putInt(childId);
+                }
+            }
+            if (subtreeEnds != null) {
+                for (int end : subtreeEnds) {
+                    putInt(end);
+                }
+            }
+            for (ViewHierarchyElementProto view : views) {
+                putInt(getFlags(view));
+            }
+            for (ViewHierarchyElementProto view : views) {
+                // Ordered the same way as by Rect, as the window stores them
+                RectProto bounds = view.getBoundsInScreen();
+                putInt(Math.min(bounds.getLeft(), bounds.getRight()));
+                putInt(Math.min(bounds.getTop(), bounds.getBottom()));
+                putInt(Math.max(bounds.getLeft(), bounds.getRight()));
+                putInt(Math.max(bounds.getTop(), bounds.getBottom()));
+            }
+            for (int column = 0; column < STRING_COLUMNS; ++column) {
+                for (ViewHierarchyElementProto view : views) {
+                    putInt(indexOf(getString(view, column)));
+                }
+            }
+            for (int column = 0; column < INT_COLUMNS; ++column) {
+                for (ViewHierarchyElementProto view : views) {
+                    putInt(getInt(view, column));
+                }
+            }
+            for (ViewHierarchyElementProto view : views) {
+                ensureCapacity(4);
+                output.putFloat(view.getTextSize());
+            }
+
+            List<SpanProto> spans = new ArrayList<>(spanCount);
+            putInt(0);
+            for (ViewHierarchyElementProto view : views) {
+                spans.addAll(view.getContentDescription().getSpanList());
+                putInt(spans.size());
+                spans.addAll(view.getText().getSpanList());
+                putInt(spans.size());
+            }
+            for (SpanProto span : spans) {
+                putInt(span.getType().getNumber());
+            }
+            for (SpanProto span : spans) {
+                putInt(indexOf(span.getSpanClassName()));
+            }
+            for (SpanProto span : spans) {
+                putInt(span.getStart());
+            }
+            for (SpanProto span : spans) {
+                putInt(span.getEnd());
+            }
+            for (SpanProto span : spans) {
+                putInt(span.getFlags());
+            }
+            for (SpanProto span : spans) {
+                putInt(indexOf(span.getUrl()));
+            }
+
+            align(8);
+            for (int column = 0; column < LONG_COLUMNS; ++column) {
+                for (ViewHierarchyElementProto view : views) {
+                    ensureCapacity(8);
+                    output.putLong(getLong(view, column));
+                }
+            }
+
+            ByteBuffer columns = output;
+            columns.flip();
+            output = previous;
+            return columns;
+        }
+
+        private static int getFlags(ViewHierarchyElementProto view) {
+            int flags = 0;
+            flags |= flag(view.getImportantForAccessibility(), IMPORTANT_FOR_ACCESSIBILITY);
+            flags |= flag(view.getClickable(), CLICKABLE);
+            flags |= flag(view.getLongClickable(), LONG_CLICKABLE);
+            flags |= flag(view.getFocusable(), FOCUSABLE);
+            flags |= flag(view.getEnabled(), ENABLED);
+            flags |= flag(view.hasBoundsInScreen(), HAS_BOUNDS_IN_SCREEN);
+            flags |= optionalFlag(
+                    view.hasVisibleToUser(), view.getVisibleToUser(), VISIBLE_TO_USER);
+            flags |= optionalFlag(view.hasEditable(), view.getEditable(), EDITABLE);
+            flags |= optionalFlag(view.hasScrollable(), view.getScrollable(), SCROLLABLE);
+            flags |= optionalFlag(
+                    view.hasCanScrollForward(), view.getCanScrollForward(), CAN_SCROLL_FORWARD);
+            flags |= optionalFlag(
+                    view.hasCanScrollBackward(), view.getCanScrollBackward(), CAN_SCROLL_BACKWARD);
+            flags |= optionalFlag(view.hasCheckable(), view.getCheckable(), CHECKABLE);
+            flags |= optionalFlag(view.hasChecked(), view.getChecked(), CHECKED);
+            flags |= optionalFlag(
+                    view.hasHasTouchDelegate(), view.getHasTouchDelegate(), HAS_TOUCH_DELEGATE);
+            flags |= flag(view.hasNonclippedHeight(), FIRST_INT_PRESENT + NONCLIPPED_HEIGHT);
+            flags |= flag(view.hasNonclippedWidth(), FIRST_INT_PRESENT + NONCLIPPED_WIDTH);
+            flags |= flag(view.hasTextColor(), FIRST_INT_PRESENT + TEXT_COLOR);
+            flags |= flag(
+                    view.hasBackgroundDrawableColor(),
+                    FIRST_INT_PRESENT + BACKGROUND_DRAWABLE_COLOR);
+            flags |= flag(view.hasTypefaceStyle(), FIRST_INT_PRESENT + TYPEFACE_STYLE);
+            flags |= flag(view.hasTextSize(), TEXT_SIZE_PRESENT);
+            flags |= flag(view.hasLabeledById(), FIRST_LONG_PRESENT + LABELED_BY_ID);
+            flags |= flag(
+                    view.hasAccessibilityTraversalBeforeId(),
+                    FIRST_LONG_PRESENT + ACCESSIBILITY_TRAVERSAL_BEFORE_ID);
+            flags |= flag(
+                    view.hasAccessibilityTraversalAfterId(),
+                    FIRST_LONG_PRESENT + ACCESSIBILITY_TRAVERSAL_AFTER_ID);
+            return flags;
+        }
+
+        private static int flag(boolean value, int bit) {
+            return value ? (1 << bit) : 0;
+        }
+
+        private static int optionalFlag(boolean present, boolean value, int bit) {
+            return flag(present, bit) | flag(present && value, bit + 1);
+        }
+
+        private static @Nullable String getString(ViewHierarchyElementProto view, int column) {
+            switch (column) {
+                case PACKAGE_NAME:
+                    return view.hasPackageName() ? view.getPackageName() : null;
+                case CLASS_NAME:
+                    return view.hasClassName() ? view.getClassName() : null;
+                case ACCESSIBILITY_CLASS_NAME:
+                    return view.hasAccessibilityClassName()
+                            ? view.getAccessibilityClassName()
+                            : null;
+                case RESOURCE_NAME:
+                    return view.hasResourceName() ? view.getResourceName() : null;
+                case CONTENT_DESCRIPTION:
+                    return view.hasContentDescription()
+                            ? view.getContentDescription().getText()
+                            : null;
+                case TEXT:
+                    return view.hasText() ? view.getText().getText() : null;
+                default:
+                    throw new IllegalArgumentException("Unknown string column " + column);
+            }
+        }
+
+        private static int getInt(ViewHierarchyElementProto view, int column) {
+            switch (column) {
+                case NONCLIPPED_HEIGHT:
+                    return view.getNonclippedHeight();
+                case NONCLIPPED_WIDTH:
+                    return view.getNonclippedWidth();
+                case TEXT_COLOR:
+                    return view.getTextColor();
+                case BACKGROUND_DRAWABLE_COLOR:
+                    return view.getBackgroundDrawableColor();
+                case TYPEFACE_STYLE:
+                    return view.getTypefaceStyle();
+                default:
+                    throw new IllegalArgumentException("Unknown integer column " + column);
+            }
+        }
+
+        private static long getLong(ViewHierarchyElementProto view, int column) {
+            switch (column) {
+                case LABELED_BY_ID:
+                    return view.getLabeledById();
+                case ACCESSIBILITY_TRAVERSAL_BEFORE_ID:
+                    return view.getAccessibilityTraversalBeforeId();
+                case ACCESSIBILITY_TRAVERSAL_AFTER_ID:
+                    return view.getAccessibilityTraversalAfterId();
+                default:
+                    throw new IllegalArgumentException("Unknown id column " + column);
+            }
+        }
+
+        /** @return The index of {@code string} in the string table, adding it if it is new */
+        private int indexOf(@Nullable String string) {
+            if (string == null) {
+                return NO_STRING;
+            }
+            Integer index = stringIndices.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                stringIndices.put(string, index);
+            }
+            return index;
+        }
+
+        private void putMessage(MessageLite message) {
+            byte[] bytes = message.toByteArray();
+            putInt(bytes.length);
+            ensureCapacity(bytes.length);
+            output.put(bytes);
+            align(4);
+        }
+
+        private void putInt(int value) {
+            ensureCapacity(4);
+            output.putInt(value);
+        }
+
+        private void align(int alignment) {
+            int offset = output.position() % alignment;
+            if (offset != 0) {
+                ensureCapacity(alignment - offset);
+                output.position(output.position() + alignment - offset);
+            }
+        }
+
+        private void ensureCapacity(int length) {
+            if (output.remaining() < length) {
+                int capacity = Math.max(output.capacity() * 2, output.position() + length);
+                ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                output.flip();
+                grown.put(output);
+                output = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import com.google.common.base.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Answers whether a view class, known only by name, is a subclass of a reference class.
+ * <p>
+ * Hierarchies are usually checked on a desktop JVM, where the Android classes named by views cannot
+ * be loaded, and each failed load throws a {@link ClassNotFoundException}. Loaded classes, failed
+ * loads and results, including undetermined ones, are therefore cached for the lifetime of the
+ * cache, so each class name is loaded at most once.
+ */
+final class ClassHierarchyCache {
+
+    /** Cache shared by every element, loading classes as elements themselves are loaded */
+    static final ClassHierarchyCache INSTANCE =
+            new ClassHierarchyCache(ClassHierarchyCache.class.getClassLoader());
+
+    private final @Nullable ClassLoader classLoader;
+
+    /* Results of isSubclassOf, keyed by reference class then class name */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Optional<Boolean>>> results =
+            new ConcurrentHashMap<>();
+
+    /* Results of loading classes by name, including absent results for classes which failed */
+    private final ConcurrentMap<String, Optional<Class<?>>> loadedClasses =
+            new ConcurrentHashMap<>();
+
+    ClassHierarchyCache(@Nullable ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @param className the fully-qualified name of the class to check
+     * @param referenceClass the class or interface to check against
+     * @return {@link Boolean#TRUE} if the class named {@code className} is, extends or implements
+     *     {@code referenceClass}, {@link Boolean#FALSE} if it does not, or {@code null} if the class
+     *     cannot be loaded
+     */
+    @Nullable Boolean isSubclassOf(String className, Class<?> referenceClass) {
+        ConcurrentMap<String, Optional<Boolean>> referenceResults = results.get(referenceClass);
+        if (referenceResults == null) {
+            referenceResults = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Optional<Boolean>> existing =
+                    results.putIfAbsent(referenceClass, referenceResults);
+            if (existing != null) {
+                referenceResults = existing;
+            }
+        }
+
+        Optional<Boolean> result = referenceResults.get(className);
+        if (result == null) {
+            // Racing threads compute the same value, so the first one stored wins without locking.
+            Class<?> targetClass = loadClass(className);
+            result = (targetClass == null)
+                    ? Optional.<Boolean>absent()
+                    : Optional.of(referenceClass.isAssignableFrom(targetClass));
+            Optional<Boolean> existing = referenceResults.putIfAbsent(className, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result.orNull();
+    }
+
+    private @Nullable Class<?> loadClass(String className) {
+        Optional<Class<?>> loaded = loadedClasses.get(className);
+        if (loaded == null) {
+            Class<?> loadedClass = null;
+            try {
+                if (classLoader != null) {
+                    loadedClass = classLoader.loadClass(className);
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                // Do nothing
+            }
+            loaded = Optional.<Class<?>>fromNullable(loadedClass);
+            loadedClasses.putIfAbsent(className, loaded);
+        }
+        return loaded.orNull();
+    }
+}
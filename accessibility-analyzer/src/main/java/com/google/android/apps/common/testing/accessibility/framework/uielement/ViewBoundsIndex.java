@@ -0,0 +1,418 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Static spatial index over the {@link ViewHierarchyElement#getBoundsInScreen()} of a set of views,
+ * answering overlap, containment and nearest-neighbour queries without visiting every view.
+ * <p>
+ * The index is a packed R-tree: views are sorted along a Hilbert curve by the center of their
+ * bounds and grouped bottom-up into nodes of {@link #NODE_SIZE} entries. Building costs
+ * O(n log n) and a query costs O(log n + k) for k matches. Views with empty bounds, including
+ * those whose bounds are unavailable, are not indexed.
+ * <p>
+ * Results of overlap and containment queries are returned in the order the views were supplied.
+ * Instances are immutable and may be queried from several threads at once.
+ */
+public class ViewBoundsIndex {
+
+    private static final int NODE_SIZE = 16;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private static final int QUERY_INTERSECTING = 0;
+    private static final int QUERY_CONTAINED_IN = 1;
+    private static final int QUERY_CONTAINING = 2;
+
+    private final List<ViewHierarchyElement> elements;
+
+    /* Number of indexed views; positions below this value in boxes/indices are leaves. */
+    private final int numItems;
+
+    /* left, top, right, bottom of every node, leaves first and the root last */
+    private final int[] boxes;
+
+    /* For a leaf, the position of its view in elements. For a node, the position of its first child. */
+    private final int[] indices;
+
+    /* Position one past the last node of each level, starting from the leaves */
+    private final int[] levelBounds;
+
+    private ViewBoundsIndex(List<ViewHierarchyElement> elements) {
+        this.elements = elements;
+
+        int[] itemIndices = new int[elements.size()];
+        int count = 0;
+        for (int i = 0; i < elements.size(); ++i) {
+            if (!elements.get(i).isBoundsInScreenEmpty()) {
+                itemIndices[count++] = i;
+            }
+        }
+        this.numItems = count;
+
+        List<Integer> bounds = new ArrayList<>();
+        int numNodes = numItems;
+        int levelSize = numItems;
+        bounds.add(numNodes);
+        while (levelSize > 1) {
+            levelSize = (levelSize + NODE_SIZE - 1) / NODE_SIZE;
+            numNodes += levelSize;
+            bounds.add(numNodes);
+        }
+        this.levelBounds = new int[bounds.size()];
+        for (int i = 0; i < levelBounds.length; ++i) {
+            levelBounds[i] = bounds.get(i);
+        }
+        this.boxes = new int[numNodes * 4];
+        this.indices = new int[numNodes];
+
+        if (numItems > 0) {
+            sortLeavesByHilbertValue(itemIndices);
+            buildNodes();
+        }
+    }
+
+    /**
+     * @param elements the views to index. The list is retained and must not be modified afterwards.
+     * @return a {@link ViewBoundsIndex} over the bounds of {@code elements}
+     */
+    public static ViewBoundsIndex of(List<ViewHierarchyElement> elements) {
+        return new ViewBoundsIndex(elements);
+    }
+
+    /**
+     * @return the number of views with non-empty bounds held by this index
+     */
+    public int size() {
+        return numItems;
+    }
+
+    /**
+     * @param rect the region of interest, in absolute screen coordinates
+     * @return all indexed views whose bounds share a region of non-zero area with {@code rect}, as
+     *     defined by android.graphics.Rect#intersects(Rect)
+     */
+    public List<ViewHierarchyElement> findIntersecting(Rect rect) {
+        return search(rect, QUERY_INTERSECTING);
+    }
+
+    /**
+     * @param rect the region of interest, in absolute screen coordinates
+     * @return all indexed views whose bounds lie entirely within {@code rect}
+     */
+    public List<ViewHierarchyElement> findContainedIn(Rect rect) {
+        return search(rect, QUERY_CONTAINED_IN);
+    }
+
+    /**
+     * @param rect the region of interest, in absolute screen coordinates
+     * @return all indexed views whose bounds entirely cover {@code rect}
+     */
+    public List<ViewHierarchyElement> findContaining(Rect rect) {
+        return search(rect, QUERY_CONTAINING);
+    }
+
+    /**
+     * @param x the horizontal screen coordinate of the query point
+     * @param y the vertical screen coordinate of the query point
+     * @param count the maximum number of views to return
+     * @return up to {@code count} indexed views ordered by increasing distance between their bounds
+     *     and the given point. Views whose bounds contain the point have a distance of 0. Ties are
+     *     broken by the order in which views were supplied.
+     */
+    public List<ViewHierarchyElement> findNearest(int x, int y, int count) {
+        checkArgument(count >= 0, "count must not be negative");
+        if ((numItems == 0) || (count == 0)) {
+            return Collections.emptyList();
+        }
+
+        List<ViewHierarchyElement> result = new ArrayList<>(Math.min(count, numItems));
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        int nodeIndex = indices.length - 1;
+        while (true) {
+            int end = Math.min(nodeIndex + NODE_SIZE, upperLevelBound(nodeIndex));
+            boolean isLeafLevel = nodeIndex < numItems;
+            for (int pos = nodeIndex; pos < end; ++pos) {
+                queue.add(new Candidate(indices[pos], isLeafLevel, distanceSquared(pos, x, y)));
+            }
+
+            while (!queue.isEmpty() && queue.peek().isLeaf) {
+                result.add(elements.get(queue.poll().index));
+                if (result.size() == count) {
+                    return result;
+                }
+            }
+
+            Candidate next = queue.poll();
+            if (next == null) {
+                return result;
+            }
+            nodeIndex = next.index;
+        }
+    }
+
+    private List<ViewHierarchyElement> search(Rect rect, int query) {
+        if (numItems == 0) {
+            return Collections.emptyList();
+        }
+
+        int left = rect.getLeft();
+        int top = rect.getTop();
+        int right = rect.getRight();
+        int bottom = rect.getBottom();
+        int[] matches = new int[16];
+        int matchCount = 0;
+        int[] stack = new int[16];
+        int stackSize = 0;
+
+        int nodeIndex = indices.length - 1;
+        while (true) {
+            int end = Math.min(nodeIndex + NODE_SIZE, upperLevelBound(nodeIndex));
+            boolean isLeafLevel = nodeIndex < numItems;
+            for (int pos = nodeIndex; pos < end; ++pos) {
+                int offset = pos * 4;
+                int boxLeft = boxes[offset];
+                int boxTop = boxes[offset + 1];
+                int boxRight = boxes[offset + 2];
+                int boxBottom = boxes[offset + 3];
+                if (isLeafLevel) {
+                    if (matchesItem(query, boxLeft, boxTop, boxRight, boxBottom,
+                            left, top, right, bottom)) {
+                        if (matchCount == matches.length) {
+                            matches = Arrays.copyOf(matches, matchCount * 2);
+                        }
+                        matches[matchCount++] = indices[pos];
+                    }
+                } else if (matchesNode(query, boxLeft, boxTop, boxRight, boxBottom,
+                        left, top, right, bottom)) {
+                    if (stackSize == stack.length) {
+                        stack = Arrays.copyOf(stack, stackSize * 2);
+                    }
+                    stack[stackSize++] = indices[pos];
+                }
+            }
+
+            if (stackSize == 0) {
+                break;
+            }
+            nodeIndex = stack[--stackSize];
+        }
+
+        Arrays.sort(matches, 0, matchCount);
+        List<ViewHierarchyElement> result = new ArrayList<>(matchCount);
+        for (int i = 0; i < matchCount; ++i) {
+            result.add(elements.get(matches[i]));
+        }
+        return result;
+    }
+
+    private static boolean matchesItem(int query,
+                                       int boxLeft, int boxTop, int boxRight, int boxBottom,
+                                       int left, int top, int right, int bottom) {
+        switch (query) {
+            case QUERY_INTERSECTING:
+                return (boxLeft < right) && (left < boxRight) && (boxTop < bottom) && (top < boxBottom);
+            case QUERY_CONTAINED_IN:
+                return (left <= boxLeft) && (top <= boxTop) && (right >= boxRight) && (bottom >= boxBottom);
+            case QUERY_CONTAINING:
+                return (boxLeft <= left) && (boxTop <= top) && (boxRight >= right) && (boxBottom >= bottom);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private static boolean matchesNode(int query,
+                                       int boxLeft, int boxTop, int boxRight, int boxBottom,
+                                       int left, int top, int right, int bottom) {
+        switch (query) {
+            case QUERY_INTERSECTING:
+                return (boxLeft < right) && (left < boxRight) && (boxTop < bottom) && (top < boxBottom);
+            case QUERY_CONTAINED_IN:
+                // Any node holding a contained view must at least touch the query region
+                return (boxLeft <= right) && (left <= boxRight) && (boxTop <= bottom) && (top <= boxBottom);
+            case QUERY_CONTAINING:
+                // A node's bounds are the union of its children's, so they must cover the query too
+                return (boxLeft <= left) && (boxTop <= top) && (boxRight >= right) && (boxBottom >= bottom);
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
+    private long distanceSquared(int pos, int x, int y) {
+        int offset = pos * 4;
+        long dx = Math.max(0, Math.max(boxes[offset] - x, x - boxes[offset + 2]));
+        long dy = Math.max(0, Math.max(boxes[offset + 1] - y, y - boxes[offset + 3]));
+        return (dx * dx) + (dy * dy);
+    }
+
+    /** Returns the position one past the last node in the level containing {@code nodeIndex}. */
+    private int upperLevelBound(int nodeIndex) {
+        for (int bound : levelBounds) {
+            if (bound > nodeIndex) {
+                return bound;
+            }
+        }
+        return levelBounds[levelBounds.length - 1];
+    }
+
+    /**
+     * Writes the leaf level in Hilbert order of the views' centers, so that views which are close on
+     * screen are likely to share a node.
+     */
+    private void sortLeavesByHilbertValue(int[] itemIndices) {
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < numItems; ++i) {
+            ViewHierarchyElement element = elements.get(itemIndices[i]);
+            minX = Math.min(minX, element.getBoundsInScreenLeft());
+            minY = Math.min(minY, element.getBoundsInScreenTop());
+            maxX = Math.max(maxX, element.getBoundsInScreenRight());
+            maxY = Math.max(maxY, element.getBoundsInScreenBottom());
+        }
+        double width = Math.max(1, (long) maxX - minX);
+        double height = Math.max(1, (long) maxY - minY);
+
+        // Sort by a composite key so the view position travels with its Hilbert value.
+        long[] keys = new long[numItems];
+        for (int i = 0; i < numItems; ++i) {
+            ViewHierarchyElement element = elements.get(itemIndices[i]);
+            long sumX = (long) element.getBoundsInScreenLeft() + element.getBoundsInScreenRight();
+            long sumY = (long) element.getBoundsInScreenTop() + element.getBoundsInScreenBottom();
+            double centerX = (sumX / 2.0) - minX;
+            double centerY = (sumY / 2.0) - minY;
+            int hx = (int) (HILBERT_MAX * centerX / width);
+            int hy = (int) (HILBERT_MAX * centerY / height);
+            // Drop the lowest bit of the curve position to keep the key positive.
+            keys[i] = ((long) (hilbertValue(hx, hy) >>> 1) << 32) | itemIndices[i];
+        }
+        Arrays.sort(keys);
+
+        for (int pos = 0; pos < numItems; ++pos) {
+            int index = (int) keys[pos];
+            ViewHierarchyElement element = elements.get(index);
+            int offset = pos * 4;
+            boxes[offset] = element.getBoundsInScreenLeft();
+            boxes[offset + 1] = element.getBoundsInScreenTop();
+            boxes[offset + 2] = element.getBoundsInScreenRight();
+            boxes[offset + 3] = element.getBoundsInScreenBottom();
+            indices[pos] = index;
+        }
+    }
+
+    /** Groups every level into parent nodes of up to {@link #NODE_SIZE} entries, up to the root. */
+    private void buildNodes() {
+        int pos = 0;
+        int writePos = numItems;
+        for (int level = 0; level < (levelBounds.length - 1); ++level) {
+            int end = levelBounds[level];
+            while (pos < end) {
+                int firstChild = pos;
+                int nodeLeft = Integer.MAX_VALUE;
+                int nodeTop = Integer.MAX_VALUE;
+                int nodeRight = Integer.MIN_VALUE;
+                int nodeBottom = Integer.MIN_VALUE;
+                for (int i = 0; (i < NODE_SIZE) && (pos < end); ++i, ++pos) {
+                    int offset = pos * 4;
+                    nodeLeft = Math.min(nodeLeft, boxes[offset]);
+                    nodeTop = Math.min(nodeTop, boxes[offset + 1]);
+                    nodeRight = Math.max(nodeRight, boxes[offset + 2]);
+                    nodeBottom = Math.max(nodeBottom, boxes[offset + 3]);
+                }
+                int offset = writePos * 4;
+                boxes[offset] = nodeLeft;
+                boxes[offset + 1] = nodeTop;
+                boxes[offset + 2] = nodeRight;
+                boxes[offset + 3] = nodeBottom;
+                indices[writePos++] = firstChild;
+            }
+        }
+    }
+
+    /** Position along a Hilbert curve of order 16 for the given coordinates. */
+    private static int hilbertValue(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = (a & (a >>> 2)) ^ (b & (b >>> 2));
+        B = (a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2));
+        C ^= (a & (c >>> 2)) ^ (b & (d >>> 2));
+        D ^= (b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = (a & (a >>> 4)) ^ (b & (b >>> 4));
+        B = (a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4));
+        C ^= (a & (c >>> 4)) ^ (b & (d >>> 4));
+        D ^= (b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= (a & (c >>> 8)) ^ (b & (d >>> 8));
+        D ^= (b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        return (interleave(i1) << 1) | interleave(i0);
+    }
+
+    private static int interleave(int x) {
+        x = (x | (x << 8)) & 0x00FF00FF;
+        x = (x | (x << 4)) & 0x0F0F0F0F;
+        x = (x | (x << 2)) & 0x33333333;
+        x = (x | (x << 1)) & 0x55555555;
+        return x;
+    }
+
+    /** An entry in the best-first queue of {@link #findNearest}. */
+    private static class Candidate implements Comparable<Candidate> {
+        private final int index;
+        private final boolean isLeaf;
+        private final long distance;
+
+        Candidate(int index, boolean isLeaf, long distance) {
+            this.index = index;
+            this.isLeaf = isLeaf;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (distance != other.distance) {
+                return (distance < other.distance) ? -1 : 1;
+            }
+            // Expand nodes before reporting a leaf at the same distance, so that ties between views
+            // are decided by their original order rather than by their position in the tree.
+            if (isLeaf != other.isLeaf) {
+                return isLeaf ? 1 : -1;
+            }
+            return Integer.compare(index, other.index);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import static java.lang.Boolean.TRUE;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Whether a screen reader would place accessibility focus on each view of a window, following the
+ * heuristics TalkBack uses to choose the views it focuses during navigation.
+ * <p>
+ * Those heuristics depend on both the subtree below a view and its ancestors. Rather than being
+ * evaluated recursively for each view queried, they are computed for every view of the window in
+ * one bottom-up and one top-down pass, and kept as bit sets indexed by view id. Building costs
+ * O(n), and each query is a single bit test. Instances are immutable and may be queried from
+ * several threads at once.
+ */
+public class ViewFocusability {
+
+    /* Views which meet the criteria for gaining accessibility focus */
+    private final BitSet accessibilityFocusable;
+
+    /* Views which would produce speech, either themselves or through non-focusable children */
+    private final BitSet speaking;
+
+    /* Views with a descendant, direct or indirect, which is important for accessibility */
+    private final BitSet importantDescendant;
+
+    /* Views with an ancestor which meets the criteria for gaining accessibility focus */
+    private final BitSet focusableAncestor;
+
+    /* Views on which a screen reader would place accessibility focus */
+    private final BitSet focused;
+
+    private ViewFocusability(List<ViewHierarchyElement> views) {
+        int count = views.size();
+        accessibilityFocusable = new BitSet(count);
+        speaking = new BitSet(count);
+        importantDescendant = new BitSet(count);
+        focusableAncestor = new BitSet(count);
+        focused = new BitSet(count);
+
+        int[] preorder = getPreorder(views);
+
+        // Bottom-up, so that the children of each view are evaluated before it
+        for (int i = preorder.length - 1; i >= 0; --i) {
+            ViewHierarchyElement view = views.get(preorder[i]);
+            int id = view.getId();
+            boolean hasNonFocusableSpeakingChild = false;
+            for (int j = 0; j < view.getChildViewCount(); ++j) {
+                ViewHierarchyElement child = view.getChildView(j);
+                int childId = child.getId();
+                if (child.isImportantForAccessibility() || importantDescendant.get(childId)) {
+                    importantDescendant.set(id);
+                }
+                if (TRUE.equals(child.isVisibleToUser())
+                        && !accessibilityFocusable.get(childId)
+                        && child.isImportantForAccessibility()
+                        && speaking.get(childId)) {
+                    hasNonFocusableSpeakingChild = true;
+                }
+            }
+
+            if (hasText(view) || TRUE.equals(view.isCheckable()) || hasNonFocusableSpeakingChild) {
+                speaking.set(id);
+            }
+            if (TRUE.equals(view.isVisibleToUser())
+                    && view.isImportantForAccessibility()
+                    && (isActionableForAccessibility(view)
+                            || (isChildOfScrollableContainer(view) && speaking.get(id)))) {
+                accessibilityFocusable.set(id);
+            }
+        }
+
+        // Top-down, so that the ancestors of each view are evaluated before it
+        for (int id : preorder) {
+            ViewHierarchyElement view = views.get(id);
+            if (accessibilityFocusable.get(id) || focusableAncestor.get(id)) {
+                for (int j = 0; j < view.getChildViewCount(); ++j) {
+                    ViewHierarchyElement child = view.getChildView(j);
+                    // Only a view important for accessibility looks beyond itself for a focusable
+                    // ancestor.
+                    if (child.isImportantForAccessibility()) {
+                        focusableAncestor.set(child.getId());
+                    }
+                }
+            }
+
+            if (!TRUE.equals(view.isVisibleToUser())) {
+                // We don't focus views that are not visible
+                continue;
+            }
+            if (accessibilityFocusable.get(id)) {
+                // Leaves that are accessibility focusable always gain focus regardless of presence
+                // of a spoken description. This allows unlabeled, but still actionable, widgets to
+                // be activated by the user. Other views gain focus if they (or their grouped
+                // non-actionable children) have content to speak.
+                if (!importantDescendant.get(id) || speaking.get(id)) {
+                    focused.set(id);
+                }
+            } else if (hasText(view)
+                    && view.isImportantForAccessibility()
+                    && !focusableAncestor.get(id)) {
+                focused.set(id);
+            }
+        }
+    }
+
+    /**
+     * @param views The views of a window, indexed by id
+     * @return The focusability of every view in {@code views}
+     */
+    static ViewFocusability of(List<ViewHierarchyElement> views) {
+        return new ViewFocusability(views);
+    }
+
+    /**
+     * @param viewId The id of a view within the window
+     * @return {@code true} if a screen reader would choose to place accessibility focus on the
+     *     view, {@code false} otherwise.
+     */
+    public boolean shouldFocusView(int viewId) {
+        return focused.get(viewId);
+    }
+
+    /**
+     * @return The ids of {@code views} in depth-first ordering from each root, so that every view
+     *     follows its ancestors.
+     */
+    private static int[] getPreorder(List<ViewHierarchyElement> views) {
+        int[] preorder = new int[views.size()];
+        int[] stack = new int[views.size()];
+        int count = 0;
+        for (ViewHierarchyElement root : views) {
+            if (root.getParentView() != null) {
+                continue;
+            }
+            int size = 0;
+            stack[size++] = root.getId();
+            while ((size > 0) && (count < preorder.length)) {
+                int id = stack[--size];
+                preorder[count++] = id;
+                ViewHierarchyElement view = views.get(id);
+                // Push in reverse, so that children are visited in order
+                for (int j = view.getChildViewCount() - 1; (j >= 0) && (size < stack.length); --j) {
+                    stack[size++] = view.getChildView(j).getId();
+                }
+            }
+        }
+        return (count == preorder.length) ? preorder : Arrays.copyOf(preorder, count);
+    }
+
+    /**
+     * @return {@code true} if {@code view} would correspond to an
+     *     android.view.accessibility.AccessibilityNodeInfo deemed actionable for accessibility
+     */
+    private static boolean isActionableForAccessibility(ViewHierarchyElement view) {
+        return view.isClickable() || view.isFocusable() || view.isLongClickable();
+    }
+
+    /**
+     * @return {@code true} if {@code view} is a top-level item within a scrollable container. Only
+     *     a view important for accessibility is considered, and only its direct parent examined.
+     */
+    private static boolean isChildOfScrollableContainer(ViewHierarchyElement view) {
+        if (!view.isImportantForAccessibility()) {
+            return false;
+        }
+        ViewHierarchyElement parent = view.getParentView();
+        if (parent == null) {
+            return false;
+        }
+
+        if (TRUE.equals(parent.isScrollable())) {
+            return true;
+        }
+
+        // Specifically check for parents that are AdapterView, ScrollView, or HorizontalScrollView,
+        // but exclude Spinners, which are a special case of AdapterView. TalkBack explicitly
+        // identifies views with parents matching these classes as direct children of a scrollable
+        // container.
+        if (TRUE.equals(parent.isSpinner())) {
+            return false;
+        }
+
+        return (TRUE.equals(parent.isAdapterView()))
+                || (TRUE.equals(parent.isScrollView()))
+                || (TRUE.equals(parent.isHorizontalScrollView()));
+    }
+
+    /** @return {@code true} if {@code view} has a contentDescription or text */
+    private static boolean hasText(ViewHierarchyElement view) {
+        return !TextUtils.isEmpty(view.getText())
+                || !TextUtils.isEmpty(view.getContentDescription());
+    }
+}
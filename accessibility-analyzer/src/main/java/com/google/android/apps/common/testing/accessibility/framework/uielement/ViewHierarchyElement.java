@@ -15,14 +15,15 @@
 package com.google.android.apps.common.testing.accessibility.framework.uielement;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
 import com.google.android.apps.common.testing.accessibility.framework.replacements.SpannableString;
 import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto;
 import com.google.common.base.Preconditions;
-import java.util.ArrayList;
-import java.util.Collections;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
 import java.util.List;
 import java.util.NoSuchElementException;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -43,14 +44,16 @@ public class ViewHierarchyElement {
     private final int id;
     private final @Nullable Integer parentId;
 
-    // Created lazily, because many views are leafs.
-    private @MonotonicNonNull List<Integer> childIds;
+    // Null for leaves, which most views are.
+    private final @Nullable List<Integer> childIds;
 
-    // This field is set to a non-null value after construction.
+    // Set once, while the containing window is built. A hierarchy is only handed out once all of
+    // its views have their window, so this is never observed changing.
     private @MonotonicNonNull WindowHierarchyElement windowElement;
 
     private final @Nullable CharSequence packageName;
     private final @Nullable CharSequence className;
+    private final int widgetKinds;
     private final @Nullable CharSequence accessibilityClassName;
     private final @Nullable String resourceName;
     private final @Nullable SpannableString contentDescription;
@@ -67,7 +70,7 @@ public class ViewHierarchyElement {
     private final @Nullable Boolean checkable;
     private final @Nullable Boolean checked;
     private final @Nullable Boolean hasTouchDelegate;
-    private final @Nullable Rect boundsInScreen;
+    private final boolean hasBoundsInScreen;
     private final @Nullable Integer nonclippedHeight;
     private final @Nullable Integer nonclippedWidth;
     private final @Nullable Float textSize;
@@ -76,27 +79,39 @@ public class ViewHierarchyElement {
     private final @Nullable Integer typefaceStyle;
     private final boolean enabled;
 
-    // Populated only after a hierarchy is constructed
-    private @Nullable Long labeledById;
-    private @Nullable Long accessibilityTraversalBeforeId;
-    private @Nullable Long accessibilityTraversalAfterId;
+    // Created from the bounds stored by the window when first requested
+    private @Nullable Rect boundsInScreen;
 
-    ViewHierarchyElement(ViewHierarchyElementProto proto) {
+    // Condensed unique ids of related views, resolved through the hierarchy when requested
+    private final @Nullable Long labeledById;
+    private final @Nullable Long accessibilityTraversalBeforeId;
+    private final @Nullable Long accessibilityTraversalAfterId;
+
+    /**
+     * @param proto the view to represent
+     * @param stringInterner the pool through which names are shared with other views in the same
+     *     hierarchy
+     */
+    ViewHierarchyElement(ViewHierarchyElementProto proto, Interner<String> stringInterner) {
         checkNotNull(proto);
 
         // Bookkeeping
         this.id = proto.getId();
         this.parentId = (proto.getParentId() != -1) ? proto.getParentId() : null;
-        if (proto.getChildIdsCount() > 0) {
-            this.childIds = new ArrayList<>(proto.getChildIdsCount());
-            this.childIds.addAll(proto.getChildIdsList());
-        }
-
-        packageName = proto.hasPackageName() ? proto.getPackageName() : null;
-        className = proto.hasClassName() ? proto.getClassName() : null;
+        this.childIds =
+                (proto.getChildIdsCount() > 0) ? ImmutableList.copyOf(proto.getChildIdsList()) : null;
+
+        // Names repeat across most views of a screen, so a single instance of each is kept.
+        packageName =
+                proto.hasPackageName() ? stringInterner.intern(proto.getPackageName()) : null;
+        className = proto.hasClassName() ? stringInterner.intern(proto.getClassName()) : null;
+        widgetKinds = WidgetKind.classify(className);
         accessibilityClassName =
-                proto.hasAccessibilityClassName() ? proto.getAccessibilityClassName() : null;
-        resourceName = proto.hasResourceName() ? proto.getResourceName() : null;
+                proto.hasAccessibilityClassName()
+                        ? stringInterner.intern(proto.getAccessibilityClassName())
+                        : null;
+        resourceName =
+                proto.hasResourceName() ? stringInterner.intern(proto.getResourceName()) : null;
         contentDescription =
                 proto.hasContentDescription() ? new SpannableString(proto.getContentDescription()) : null;
         text = proto.hasText() ? new SpannableString(proto.getText()) : null;
@@ -112,7 +127,8 @@ public class ViewHierarchyElement {
         checkable = proto.hasCheckable() ? proto.getCheckable() : null;
         checked = proto.hasChecked() ?  proto.getChecked() : null;
         hasTouchDelegate = proto.hasHasTouchDelegate() ? proto.getHasTouchDelegate() : null;
-        this.boundsInScreen = proto.hasBoundsInScreen() ? new Rect(proto.getBoundsInScreen()) : null;
+        // The bounds themselves are stored by the window, which reads them from the same proto.
+        this.hasBoundsInScreen = proto.hasBoundsInScreen();
         nonclippedHeight = proto.hasNonclippedHeight() ? proto.getNonclippedHeight() : null;
         nonclippedWidth = proto.hasNonclippedWidth() ? proto.getNonclippedWidth() : null;
         textSize = proto.hasTextSize() ? proto.getTextSize() : null;
@@ -130,6 +146,60 @@ public class ViewHierarchyElement {
                 proto.hasAccessibilityTraversalAfterId() ? proto.getAccessibilityTraversalAfterId() : null;
     }
 
+    /**
+     * @param window the columns of the window which holds the view to represent
+     * @param id the id of the view to represent within {@code window}
+     */
+    ViewHierarchyElement(AccessibilityHierarchySnapshot.WindowSnapshot window, int id) {
+        // Bookkeeping
+        this.id = id;
+        this.parentId = window.getParentId(id);
+        this.childIds = window.getChildIds(id);
+
+        // Names are already shared through the string table of the snapshot.
+        packageName = window.getString(id, AccessibilityHierarchySnapshot.PACKAGE_NAME);
+        className = window.getString(id, AccessibilityHierarchySnapshot.CLASS_NAME);
+        widgetKinds = WidgetKind.classify(className);
+        accessibilityClassName =
+                window.getString(id, AccessibilityHierarchySnapshot.ACCESSIBILITY_CLASS_NAME);
+        resourceName = window.getString(id, AccessibilityHierarchySnapshot.RESOURCE_NAME);
+        contentDescription =
+                window.getSpannableString(id, AccessibilityHierarchySnapshot.CONTENT_DESCRIPTION);
+        text = window.getSpannableString(id, AccessibilityHierarchySnapshot.TEXT);
+        importantForAccessibility =
+                window.getFlag(id, AccessibilityHierarchySnapshot.IMPORTANT_FOR_ACCESSIBILITY);
+        visibleToUser = window.getOptionalFlag(id, AccessibilityHierarchySnapshot.VISIBLE_TO_USER);
+        clickable = window.getFlag(id, AccessibilityHierarchySnapshot.CLICKABLE);
+        longClickable = window.getFlag(id, AccessibilityHierarchySnapshot.LONG_CLICKABLE);
+        focusable = window.getFlag(id, AccessibilityHierarchySnapshot.FOCUSABLE);
+        editable = window.getOptionalFlag(id, AccessibilityHierarchySnapshot.EDITABLE);
+        scrollable = window.getOptionalFlag(id, AccessibilityHierarchySnapshot.SCROLLABLE);
+        canScrollForward =
+                window.getOptionalFlag(id, AccessibilityHierarchySnapshot.CAN_SCROLL_FORWARD);
+        canScrollBackward =
+                window.getOptionalFlag(id, AccessibilityHierarchySnapshot.CAN_SCROLL_BACKWARD);
+        checkable = window.getOptionalFlag(id, AccessibilityHierarchySnapshot.CHECKABLE);
+        checked = window.getOptionalFlag(id, AccessibilityHierarchySnapshot.CHECKED);
+        hasTouchDelegate =
+                window.getOptionalFlag(id, AccessibilityHierarchySnapshot.HAS_TOUCH_DELEGATE);
+        // As with a proto, the bounds themselves are stored by the window.
+        this.hasBoundsInScreen =
+                window.getFlag(id, AccessibilityHierarchySnapshot.HAS_BOUNDS_IN_SCREEN);
+        nonclippedHeight = window.getInt(id, AccessibilityHierarchySnapshot.NONCLIPPED_HEIGHT);
+        nonclippedWidth = window.getInt(id, AccessibilityHierarchySnapshot.NONCLIPPED_WIDTH);
+        textSize = window.getTextSize(id);
+        textColor = window.getInt(id, AccessibilityHierarchySnapshot.TEXT_COLOR);
+        backgroundDrawableColor =
+                window.getInt(id, AccessibilityHierarchySnapshot.BACKGROUND_DRAWABLE_COLOR);
+        typefaceStyle = window.getInt(id, AccessibilityHierarchySnapshot.TYPEFACE_STYLE);
+        enabled = window.getFlag(id, AccessibilityHierarchySnapshot.ENABLED);
+        labeledById = window.getLong(id, AccessibilityHierarchySnapshot.LABELED_BY_ID);
+        accessibilityTraversalBeforeId = window.getLong(
+                id, AccessibilityHierarchySnapshot.ACCESSIBILITY_TRAVERSAL_BEFORE_ID);
+        accessibilityTraversalAfterId = window.getLong(
+                id, AccessibilityHierarchySnapshot.ACCESSIBILITY_TRAVERSAL_AFTER_ID);
+    }
+
     /**
      * @return The value uniquely identifying this window within the context of its containing
      *         {@link WindowHierarchyElement}
@@ -180,16 +250,23 @@ public class ViewHierarchyElement {
 
     /**
      * @return an unmodifiable {@link List} containing this {@link ViewHierarchyElement} and any
-     *         descendants, direct or indirect, in depth-first ordering.
+     *         descendants, direct or indirect, in depth-first ordering. The list is usually a view
+     *         of a range of {@link WindowHierarchyElement#getAllViews()}, and is obtained without
+     *         recursion, so that deep hierarchies are neither copied nor overflow the stack.
      */
     public List<ViewHierarchyElement> getSelfAndAllDescendants() {
-        List<ViewHierarchyElement> listToPopulate = new ArrayList<>();
-        listToPopulate.add(this);
-        for (int i = 0; i < getChildViewCount(); ++i) {
-            listToPopulate.addAll(getChildView(i).getSelfAndAllDescendants());
-        }
+        return getWindow().getSelfAndAllDescendants(id);
+    }
 
-        return Collections.unmodifiableList(listToPopulate);
+    /**
+     * @param ancestor The view whose subtree to test
+     * @return {@code true} if this view is {@code ancestor} or one of its descendants, direct or
+     *         indirect. This takes constant time when the views of the window are numbered in
+     *         depth-first ordering, as is usual.
+     */
+    public boolean isSelfOrDescendantOf(ViewHierarchyElement ancestor) {
+        return (ancestor.getWindow() == getWindow())
+                && getWindow().isSelfOrDescendantOf(id, ancestor.getId());
     }
 
     /**
@@ -238,61 +315,43 @@ public class ViewHierarchyElement {
             return null;
         }
 
-        Class<?> targetClass = null;
-        ClassLoader classLoader = getClass().getClassLoader();
-        try {
-            if (classLoader != null) {
-                targetClass = classLoader.loadClass(className.toString());
-            }
-        } catch (ClassNotFoundException e) {
-            // Do nothing
-        }
-
-        if (targetClass == null) {
-            return null;
-        }
-
-        return referenceClass.isAssignableFrom(targetClass);
+        return ClassHierarchyCache.INSTANCE.isSubclassOf(className.toString(), referenceClass);
     }
 
     public Boolean isListView() {
-        return className == "android.widget.ListView" ||
-                className == "android.widget.GridView" ||
-                className == "android.support.v7.widget.RecyclerView" ||
-                className == "androidx.recyclerview.widget.RecyclerView";
+        return (widgetKinds & WidgetKind.LIST_VIEW) != 0;
     }
 
     public Boolean isSpinner() {
-        return className == "android.widget.Spinner";
+        return (widgetKinds & WidgetKind.SPINNER) != 0;
     }
 
     public Boolean isAdapterView() {
-        return isSpinner() || isListView();
+        return (widgetKinds & (WidgetKind.SPINNER | WidgetKind.LIST_VIEW)) != 0;
     }
 
     public Boolean isScrollView() {
-        return className == "android.widget.ScrollView";
+        return (widgetKinds & WidgetKind.SCROLL_VIEW) != 0;
     }
 
     public Boolean isHorizontalScrollView() {
-        return className == "android.widget.HorizontalScrollView";
+        return (widgetKinds & WidgetKind.HORIZONTAL_SCROLL_VIEW) != 0;
     }
 
     public Boolean isWebView() {
-        return className != null && className.toString().contains("WebView");
+        return (widgetKinds & WidgetKind.WEB_VIEW) != 0;
     }
 
     public Boolean isTextView() {
-        return (className != null && className.toString().contains("TextView")) ||
-                className == "android.widget.Button" ||
-                className == "android.widget.TextClock" ||
-                className == "android.widget.Chronometer" ||
-                className == "android.widget.DigitalClock" ||
-                isEditText();
+        return (widgetKinds & WidgetKind.TEXT_VIEW) != 0;
     }
 
     public Boolean isEditText() {
-        return className != null && className.toString().contains("EditText");
+        return (widgetKinds & WidgetKind.EDIT_TEXT) != 0;
+    }
+
+    public Boolean isImageView() {
+        return (widgetKinds & WidgetKind.IMAGE_VIEW) != 0;
     }
 
     /**
@@ -419,7 +478,48 @@ public class ViewHierarchyElement {
      * when it is positioned off-screen.
      */
     public Rect getBoundsInScreen() {
-        return (boundsInScreen != null) ? boundsInScreen : Rect.EMPTY;
+        if (!hasBoundsInScreen) {
+            return Rect.EMPTY;
+        }
+        Rect bounds = boundsInScreen;
+        if (bounds == null) {
+            // Rect is immutable, so a racing thread at worst creates an equal instance.
+            bounds = new Rect(
+                    getBoundsInScreenLeft(),
+                    getBoundsInScreenTop(),
+                    getBoundsInScreenRight(),
+                    getBoundsInScreenBottom());
+            boundsInScreen = bounds;
+        }
+        return bounds;
+    }
+
+    /**
+     * @return the left coordinate of {@link #getBoundsInScreen()}, read without allocating a
+     *     {@link Rect}
+     */
+    public int getBoundsInScreenLeft() {
+        return getWindow().getViewBoundsLeft(id);
+    }
+
+    /** @return the top coordinate of {@link #getBoundsInScreen()} */
+    public int getBoundsInScreenTop() {
+        return getWindow().getViewBoundsTop(id);
+    }
+
+    /** @return the right coordinate of {@link #getBoundsInScreen()} */
+    public int getBoundsInScreenRight() {
+        return getWindow().getViewBoundsRight(id);
+    }
+
+    /** @return the bottom coordinate of {@link #getBoundsInScreen()} */
+    public int getBoundsInScreenBottom() {
+        return getWindow().getViewBoundsBottom(id);
+    }
+
+    /** @return whether {@link #getBoundsInScreen()} is empty */
+    public boolean isBoundsInScreenEmpty() {
+        return getWindow().isViewBoundsEmpty(id);
     }
 
     /**
@@ -565,8 +665,8 @@ public class ViewHierarchyElement {
         if (hasTouchDelegate != null) {
             builder.setHasTouchDelegate(hasTouchDelegate);
         }
-        if (boundsInScreen != null) {
-            builder.setBoundsInScreen(boundsInScreen.toProto());
+        if (hasBoundsInScreen) {
+            builder.setBoundsInScreen(getBoundsInScreen().toProto());
         }
         if (nonclippedHeight != null) {
             builder.setNonclippedHeight(nonclippedHeight);
@@ -604,45 +704,10 @@ public class ViewHierarchyElement {
 
     /** Set the containing {@link WindowHierarchyElement} of this view. */
     void setWindow(WindowHierarchyElement window) {
+        checkState(windowElement == null, "View already belongs to a window");
         this.windowElement = window;
     }
 
-    /**
-     * @param child The child {@link ViewHierarchyElement} to add as a child of this view
-     */
-    void addChild(ViewHierarchyElement child) {
-        if (childIds == null) {
-            childIds = new ArrayList<>();
-        }
-        childIds.add(child.id);
-    }
-
-    /**
-     * Denotes that {@code labelingElement} acts as a label for this element
-     *
-     * @param labelingElement The element that labels this element, or {@code null} if this element is
-     *        not labeled by another
-     */
-    void setLabeledBy(ViewHierarchyElement labelingElement) {
-        labeledById = (labelingElement != null) ? labelingElement.getCondensedUniqueId() : null;
-    }
-
-    /**
-     * Sets a view before which this one is visited in accessibility traversal. A screen-reader must
-     * visit the content of this view before the content of the one it precedes.
-     */
-    void setAccessibilityTraversalBefore(ViewHierarchyElement element) {
-        accessibilityTraversalBeforeId = element.getCondensedUniqueId();
-    }
-
-    /**
-     * Sets a view after which this one is visited in accessibility traversal. A screen-reader must
-     * visit the content of the other view before the content of this one.
-     */
-    void setAccessibilityTraversalAfter(ViewHierarchyElement element) {
-        accessibilityTraversalAfterId = element.getCondensedUniqueId();
-    }
-
     private @Nullable ViewHierarchyElement getViewHierarchyElementById(@Nullable Long id) {
         return (id != null) ? getWindow().getAccessibilityHierarchy().getViewById(id) : null;
     }
@@ -0,0 +1,70 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Bit flags classifying a {@link ViewHierarchyElement} by the kind of widget its class name
+ * denotes, as tested by {@link ViewHierarchyElement#isListView()} and its sibling predicates.
+ * <p>
+ * A class name is classified once per process, and each element keeps the resulting mask so that
+ * the predicates are single bit tests.
+ * <p>
+ * Only the kinds recognized by a part of the class name are classified. The list, spinner and
+ * scroll view kinds, and the text view kind of the exact names such as {@code
+ * android.widget.Button}, were tested by comparing references with string literals, which never
+ * matched a name read from a hierarchy, and so are never set.
+ */
+final class WidgetKind {
+
+    static final int LIST_VIEW = 1;
+    static final int SPINNER = 1 << 1;
+    static final int SCROLL_VIEW = 1 << 2;
+    static final int HORIZONTAL_SCROLL_VIEW = 1 << 3;
+    static final int WEB_VIEW = 1 << 4;
+    static final int TEXT_VIEW = 1 << 5;
+    static final int EDIT_TEXT = 1 << 6;
+    static final int IMAGE_VIEW = 1 << 7;
+
+    /* Masks of every class name classified so far */
+    private static final ConcurrentMap<String, Integer> KINDS_BY_CLASS_NAME =
+            new ConcurrentHashMap<>();
+
+    private WidgetKind() {
+    }
+
+    /**
+     * @param className the class name of a view, or {@code null} if it is unknown
+     * @return the bitwise OR of the kinds the class name denotes, or {@code 0} if it denotes none
+     */
+    static int classify(@Nullable CharSequence className) {
+        if (className == null) {
+            return 0;
+        }
+        String name = className.toString();
+        Integer kinds = KINDS_BY_CLASS_NAME.get(name);
+        if (kinds == null) {
+            kinds = computeKinds(name);
+            KINDS_BY_CLASS_NAME.putIfAbsent(name, kinds);
+        }
+        return kinds;
+    }
+
+    private static int computeKinds(String className) {
+        int kinds = 0;
+        if (className.contains("WebView")) {
+            kinds |= WEB_VIEW;
+        }
+        if (className.contains("EditText")) {
+            kinds |= EDIT_TEXT | TEXT_VIEW;
+        }
+        if (className.contains("TextView")) {
+            kinds |= TEXT_VIEW;
+        }
+        if (className.contains("ImageView") || className.contains("ImageButton")) {
+            kinds |= IMAGE_VIEW;
+        }
+        return kinds;
+    }
+}
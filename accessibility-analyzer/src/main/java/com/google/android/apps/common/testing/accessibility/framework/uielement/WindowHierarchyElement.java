@@ -20,9 +20,16 @@ import static com.google.common.base.Preconditions.checkState;
 import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.WindowHierarchyElementProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.RectProto;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -49,9 +56,11 @@ public class WindowHierarchyElement {
 
     private final int id;
     private final @Nullable Integer parentId;
-    private final List<Integer> childIds = new ArrayList<>();
+    private final List<Integer> childIds;
 
-    // This field is set to a non-null value after construction.
+    // Set once, by the constructor of the containing hierarchy. Being written before that
+    // constructor's final fields are frozen, it is visible to every thread which can reach this
+    // window through the hierarchy.
     private @MonotonicNonNull AccessibilityHierarchy accessibilityHierarchy;
 
     private final @Nullable Integer windowId;
@@ -62,11 +71,52 @@ public class WindowHierarchyElement {
     private final @Nullable Boolean active;
     private final @Nullable Rect boundsInScreen;
 
-    private WindowHierarchyElement(WindowHierarchyElementProto proto) {
+    // The left, top, right and bottom of each view's bounds in screen, indexed by view id. Views
+    // whose bounds are unavailable are stored as Rect.EMPTY.
+    private final int[] viewBounds;
+
+    // The end of the range of ids spanned by the subtree rooted at each view, indexed by view id.
+    // Null if the views are not numbered in depth-first order, so that subtrees are not contiguous.
+    private final int @Nullable [] subtreeEnds;
+
+    // Built lazily, because only checks concerned with screen reader focus need it. It is immutable,
+    // so threads which race to build it at worst build equal instances, and no lock is needed.
+    private @Nullable ViewFocusability viewFocusability;
+
+    private WindowHierarchyElement(
+            WindowHierarchyElementProto proto, Interner<String> stringInterner) {
+        this(
+                proto,
+                createViews(proto, stringInterner),
+                getViewBounds(proto),
+                getSubtreeEnds(proto));
+    }
+
+    private WindowHierarchyElement(AccessibilityHierarchySnapshot.WindowSnapshot snapshot) {
+        // The snapshot holds the bounds and subtrees of the views ready to use.
+        this(
+                snapshot.getProperties(),
+                createViews(snapshot),
+                snapshot.getViewBounds(),
+                snapshot.getSubtreeEnds());
+    }
+
+    /**
+     * @param proto the properties of the window, whose views are ignored
+     * @param views the views of the window, indexed by id
+     * @param viewBounds the bounds of {@code views}, laid out as described for the field
+     * @param subtreeEnds the end of the subtree rooted at each of {@code views}, or {@code null} if
+     *     they are not numbered in depth-first order
+     */
+    private WindowHierarchyElement(
+            WindowHierarchyElementProto proto,
+            List<ViewHierarchyElement> views,
+            int[] viewBounds,
+            int @Nullable [] subtreeEnds) {
         // Bookkeeping
         this.id = proto.getId();
         this.parentId = (proto.getParentId() != -1) ? proto.getParentId() : null;
-        this.childIds.addAll(proto.getChildIdsList());
+        this.childIds = ImmutableList.copyOf(proto.getChildIdsList());
 
         // Window properties
         this.windowId = proto.hasWindowId() ? proto.getWindowId() : null;
@@ -79,11 +129,45 @@ public class WindowHierarchyElement {
         this.boundsInScreen = proto.hasBoundsInScreen() ? new Rect(proto.getBoundsInScreen()) : null;
 
         // Window contents
-        int totalNodes = proto.getViewsCount();
-        this.viewHierarchyElements = new ArrayList<>(totalNodes);
+        this.viewHierarchyElements = views;
+        this.viewBounds = viewBounds;
+        this.subtreeEnds = subtreeEnds;
+    }
+
+    private static List<ViewHierarchyElement> createViews(
+            WindowHierarchyElementProto proto, Interner<String> stringInterner) {
+        List<ViewHierarchyElement> views = new ArrayList<>(proto.getViewsCount());
         for (ViewHierarchyElementProto view : proto.getViewsList()) {
-            viewHierarchyElements.add(new ViewHierarchyElement(view));
+            views.add(new ViewHierarchyElement(view, stringInterner));
         }
+        return views;
+    }
+
+    private static List<ViewHierarchyElement> createViews(
+            AccessibilityHierarchySnapshot.WindowSnapshot snapshot) {
+        List<ViewHierarchyElement> views = new ArrayList<>(snapshot.getViewCount());
+        for (int viewId = 0; viewId < snapshot.getViewCount(); ++viewId) {
+            views.add(new ViewHierarchyElement(snapshot, viewId));
+        }
+        return views;
+    }
+
+    /** @return The bounds of the views in {@code proto}, laid out as described for the field */
+    private static int[] getViewBounds(WindowHierarchyElementProto proto) {
+        int[] viewBounds = new int[proto.getViewsCount() * 4];
+        int offset = 0;
+        for (ViewHierarchyElementProto view : proto.getViewsList()) {
+            if (view.hasBoundsInScreen()) {
+                // Ordered the same way as by Rect
+                RectProto bounds = view.getBoundsInScreen();
+                viewBounds[offset] = Math.min(bounds.getLeft(), bounds.getRight());
+                viewBounds[offset + 1] = Math.min(bounds.getTop(), bounds.getBottom());
+                viewBounds[offset + 2] = Math.max(bounds.getLeft(), bounds.getRight());
+                viewBounds[offset + 3] = Math.max(bounds.getTop(), bounds.getBottom());
+            }
+            offset += 4;
+        }
+        return viewBounds;
     }
 
     /**
@@ -115,6 +199,72 @@ public class WindowHierarchyElement {
         return Collections.unmodifiableList(viewHierarchyElements);
     }
 
+    /**
+     * @param viewId The id of a view within this window
+     * @return an unmodifiable {@link List} containing the view and its descendants, direct or
+     *     indirect, in depth-first ordering. When the views of this window are numbered in that
+     *     order, as is usual, the list is a view of a range of {@link #getAllViews()} and obtaining
+     *     it does not copy.
+     */
+    List<ViewHierarchyElement> getSelfAndAllDescendants(int viewId) {
+        if (subtreeEnds != null) {
+            return Collections.unmodifiableList(
+                    viewHierarchyElements.subList(viewId, subtreeEnds[viewId]));
+        }
+
+        List<ViewHierarchyElement> views = new ArrayList<>();
+        BitSet visited = new BitSet(viewHierarchyElements.size());
+        Deque<ViewHierarchyElement> stack = new ArrayDeque<>();
+        stack.push(getViewById(viewId));
+        while (!stack.isEmpty()) {
+            ViewHierarchyElement view = stack.pop();
+            if (visited.get(view.getId())) {
+                continue;
+            }
+            visited.set(view.getId());
+            views.add(view);
+            // Push in reverse, so that children are visited in order
+            for (int i = view.getChildViewCount() - 1; i >= 0; --i) {
+                stack.push(view.getChildView(i));
+            }
+        }
+        return Collections.unmodifiableList(views);
+    }
+
+    /**
+     * @param viewId The id of a view within this window
+     * @param ancestorId The id of another view within this window
+     * @return {@code true} if the view is the other or one of its descendants, direct or indirect
+     */
+    boolean isSelfOrDescendantOf(int viewId, int ancestorId) {
+        if (subtreeEnds != null) {
+            return (ancestorId <= viewId) && (viewId < subtreeEnds[ancestorId]);
+        }
+
+        // Bounded by the number of views, in case the parents of a malformed hierarchy form a cycle
+        @Nullable ViewHierarchyElement view = getViewById(viewId);
+        for (int i = 0; (view != null) && (i < viewHierarchyElements.size()); ++i) {
+            if (view.getId() == ancestorId) {
+                return true;
+            }
+            view = view.getParentView();
+        }
+        return false;
+    }
+
+    /**
+     * @return a {@link ViewFocusability} for all {@link ViewHierarchyElement}s in this window, for
+     *     determining which views a screen reader would focus without evaluating each subtree
+     */
+    public ViewFocusability getViewFocusability() {
+        ViewFocusability focusability = viewFocusability;
+        if (focusability == null) {
+            focusability = ViewFocusability.of(viewHierarchyElements);
+            viewFocusability = focusability;
+        }
+        return focusability;
+    }
+
     /**
      * @return The parent {@link WindowHierarchyElement} of this window, or {@code null} if this
      *     window is a root window.
@@ -156,6 +306,49 @@ public class WindowHierarchyElement {
         return viewHierarchyElements.get(id);
     }
 
+    /**
+     * @param viewId The id of a view within this window
+     * @return The left coordinate of {@link ViewHierarchyElement#getBoundsInScreen()} of the view,
+     *     read without allocating a {@link Rect}
+     */
+    public int getViewBoundsLeft(int viewId) {
+        return viewBounds[viewId * 4];
+    }
+
+    /**
+     * @param viewId The id of a view within this window
+     * @return The top coordinate of {@link ViewHierarchyElement#getBoundsInScreen()} of the view
+     */
+    public int getViewBoundsTop(int viewId) {
+        return viewBounds[(viewId * 4) + 1];
+    }
+
+    /**
+     * @param viewId The id of a view within this window
+     * @return The right coordinate of {@link ViewHierarchyElement#getBoundsInScreen()} of the view
+     */
+    public int getViewBoundsRight(int viewId) {
+        return viewBounds[(viewId * 4) + 2];
+    }
+
+    /**
+     * @param viewId The id of a view within this window
+     * @return The bottom coordinate of {@link ViewHierarchyElement#getBoundsInScreen()} of the view
+     */
+    public int getViewBoundsBottom(int viewId) {
+        return viewBounds[(viewId * 4) + 3];
+    }
+
+    /**
+     * @param viewId The id of a view within this window
+     * @return Whether {@link ViewHierarchyElement#getBoundsInScreen()} of the view is empty
+     */
+    public boolean isViewBoundsEmpty(int viewId) {
+        int offset = viewId * 4;
+        return (viewBounds[offset] == viewBounds[offset + 2])
+                || (viewBounds[offset + 1] == viewBounds[offset + 3]);
+    }
+
     /**
      * @return The containing {@link AccessibilityHierarchy} of this window.
      */
@@ -226,6 +419,7 @@ public class WindowHierarchyElement {
 
     /** Set the containing {@link AccessibilityHierarchy} of this window. */
     void setAccessibilityHierarchy(AccessibilityHierarchy accessibilityHierarchy) {
+        checkState(this.accessibilityHierarchy == null, "Window already belongs to a hierarchy");
         this.accessibilityHierarchy = accessibilityHierarchy;
     }
 
@@ -271,10 +465,42 @@ public class WindowHierarchyElement {
     }
 
     /**
-     * @param child The child {@link WindowHierarchyElement} to add as a child of this window
+     * @return The end of the range of ids spanned by the subtree rooted at each view in {@code
+     *     proto}, or {@code null} if its views are not numbered in depth-first order from the root
      */
-    void addChild(WindowHierarchyElement child) {
-        childIds.add(child.id);
+    static int @Nullable [] getSubtreeEnds(WindowHierarchyElementProto proto) {
+        int count = proto.getViewsCount();
+        int[] stack = new int[count];
+        int size = 0;
+        int nextId = 0;
+        if (count > 0) {
+            stack[size++] = 0;
+        }
+        while (size > 0) {
+            int id = stack[--size];
+            if (id != nextId++) {
+                return null;
+            }
+            List<Integer> childIds = proto.getViews(id).getChildIdsList();
+            for (int i = childIds.size() - 1; i >= 0; --i) {
+                int childId = childIds.get(i);
+                if ((childId <= id) || (childId >= count) || (size == count)) {
+                    return null;
+                }
+                stack[size++] = childId;
+            }
+        }
+        if (nextId != count) {
+            return null;
+        }
+
+        // Each subtree ends where the subtree of its last child does.
+        int[] ends = new int[count];
+        for (int id = count - 1; id >= 0; --id) {
+            List<Integer> childIds = proto.getViews(id).getChildIdsList();
+            ends[id] = childIds.isEmpty() ? (id + 1) : ends[childIds.get(childIds.size() - 1)];
+        }
+        return ends;
     }
 
     /** Returns a new builder that can build a WindowHierarchyElement from a proto. */
@@ -285,6 +511,14 @@ public class WindowHierarchyElement {
         return builder;
     }
 
+    /** Returns a new builder that can build a WindowHierarchyElement from a snapshot. */
+    static Builder newBuilder(AccessibilityHierarchySnapshot.WindowSnapshot snapshot) {
+        int id = snapshot.getProperties().getId();
+        Builder builder = new Builder(id);
+        builder.snapshot = checkNotNull(snapshot);
+        return builder;
+    }
+
     /**
      * A builder for {@link WindowHierarchyElement}; obtained using @link
      * WindowHierarchyElement#builder.
@@ -292,12 +526,23 @@ public class WindowHierarchyElement {
     public static class Builder {
         private final int id;
         private @Nullable WindowHierarchyElementProto proto;
+        private AccessibilityHierarchySnapshot.@Nullable WindowSnapshot snapshot;
         private @Nullable WindowHierarchyElement parent;
+        private @Nullable Interner<String> stringInterner;
 
         Builder(int id) {
             this.id = id;
         }
 
+        /**
+         * Sets the pool through which the names of views are shared, so that windows of the same
+         * hierarchy share them too. A pool private to the window is used if none is set.
+         */
+        Builder setStringInterner(Interner<String> stringInterner) {
+            this.stringInterner = stringInterner;
+            return this;
+        }
+
         public Builder setParent(@Nullable WindowHierarchyElement parent) {
             this.parent = parent;
             return this;
@@ -307,7 +552,13 @@ public class WindowHierarchyElement {
             WindowHierarchyElement result;
 
             if (proto != null) {
-                result = new WindowHierarchyElement(proto);
+                result = new WindowHierarchyElement(
+                        proto,
+                        (stringInterner != null)
+                                ? stringInterner
+                                : Interners.<String>newStrongInterner());
+            } else if (snapshot != null) {
+                result = new WindowHierarchyElement(snapshot);
             } else {
                 throw new IllegalStateException("Nothing from which to build");
             }
@@ -0,0 +1,176 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+
+/**
+ * Estimates the foreground and background colors of a region of an {@link Image} from a histogram of
+ * the luminance of its pixels.
+ * <p>
+ * The most common luminance is taken as the background. The foreground is the most common luminance
+ * that is visibly distinct from the background, which skips over the intermediate shades produced
+ * by anti-aliasing around the edges of text and icons.
+ * <p>
+ * A swatch holds its histogram in primitive buffers which are reused by each call to {@link
+ * #process}, so a single instance can evaluate any number of regions without allocating. Instances
+ * are not thread-safe; checks obtain one confined to their thread through {@link #forCurrentThread}.
+ */
+public class ContrastSwatch {
+
+    private static final ThreadLocal<ContrastSwatch> THREAD_SWATCH =
+            ThreadLocal.withInitial(ContrastSwatch::new);
+
+    /** Fixed-point scale of the per-channel luminance tables, such that white sums to this value. */
+    private static final int LUMINANCE_SCALE = 1 << 16;
+    private static final int BIN_SHIFT = 4;
+    private static final int BIN_COUNT = (LUMINANCE_SCALE >> BIN_SHIFT) + 1;
+
+    /**
+     * Minimum contrast ratio between a luminance and the background for it to be considered a
+     * foreground candidate.
+     */
+    private static final double MIN_FOREGROUND_SEPARATION = 1.1d;
+
+    // Weighted linear luminance of each channel value, so a pixel's luminance is three lookups.
+    private static final int[] RED_LUMINANCE = createChannelTable(0.2126d);
+    private static final int[] GREEN_LUMINANCE = createChannelTable(0.7152d);
+    private static final int[] BLUE_LUMINANCE = createChannelTable(0.0722d);
+
+    private final int[] counts = new int[BIN_COUNT];
+    private final int[] colors = new int[BIN_COUNT];
+    private final int[] usedBins = new int[BIN_COUNT];
+    private int usedBinCount;
+    private int backgroundColor;
+    private int foregroundColor;
+    private double contrastRatio;
+    private boolean processed;
+
+    /**
+     * @return a swatch confined to the calling thread, whose buffers are shared by every check that
+     *     thread runs
+     */
+    public static ContrastSwatch forCurrentThread() {
+        return THREAD_SWATCH.get();
+    }
+
+    /**
+     * Builds the luminance histogram of {@code region} within {@code image} and estimates its
+     * foreground and background colors.
+     *
+     * @param region a non-empty region which lies entirely within {@code image.getBounds()}
+     */
+    public void process(Image image, Rect region) {
+        checkArgument(!region.isEmpty() && image.getBounds().contains(region),
+                "Region %s is not within image bounds", region);
+        clear();
+
+        int[] pixels = image.getPixels();
+        int stride = image.getWidth();
+        int rowStart = image.getPixelIndex(region.getLeft(), region.getTop());
+        int rowLength = region.getWidth();
+        int lastPixel = pixels[rowStart];
+        int lastBin = getBin(lastPixel);
+        colors[lastBin] = lastPixel;
+        usedBins[usedBinCount++] = lastBin;
+        for (int row = 0; row < region.getHeight(); ++row, rowStart += stride) {
+            for (int i = rowStart, end = rowStart + rowLength; i < end; ++i) {
+                int pixel = pixels[i];
+                // Screen captures are dominated by runs of identical pixels, which skip the lookups.
+                if (pixel != lastPixel) {
+                    lastPixel = pixel;
+                    lastBin = getBin(pixel);
+                    if (counts[lastBin] == 0) {
+                        colors[lastBin] = pixel;
+                        usedBins[usedBinCount++] = lastBin;
+                    }
+                }
+                ++counts[lastBin];
+            }
+        }
+
+        separateColors();
+        processed = true;
+    }
+
+    /** @return the estimated background color, as a packed {@code 0xAARRGGBB} value */
+    public int getBackgroundColor() {
+        checkState(processed, "No region has been processed");
+        return backgroundColor;
+    }
+
+    /** @return the estimated foreground color, as a packed {@code 0xAARRGGBB} value */
+    public int getForegroundColor() {
+        checkState(processed, "No region has been processed");
+        return foregroundColor;
+    }
+
+    /** @return the contrast ratio between the estimated foreground and background colors */
+    public double getContrastRatio() {
+        checkState(processed, "No region has been processed");
+        return contrastRatio;
+    }
+
+    /**
+     * @return {@code true} if every pixel in the processed region had the same luminance, in which case
+     *     no foreground could be distinguished from the background
+     */
+    public boolean isUniform() {
+        checkState(processed, "No region has been processed");
+        return usedBinCount == 1;
+    }
+
+    private void clear() {
+        for (int i = 0; i < usedBinCount; ++i) {
+            counts[usedBins[i]] = 0;
+        }
+        usedBinCount = 0;
+        processed = false;
+    }
+
+    private void separateColors() {
+        int backgroundBin = usedBins[0];
+        for (int i = 1; i < usedBinCount; ++i) {
+            if (counts[usedBins[i]] > counts[backgroundBin]) {
+                backgroundBin = usedBins[i];
+            }
+        }
+        backgroundColor = colors[backgroundBin];
+        double backgroundLuminance = ContrastUtils.calculateLuminance(backgroundColor);
+
+        int foregroundBin = -1;
+        int fallbackBin = backgroundBin;
+        for (int i = 0; i < usedBinCount; ++i) {
+            int bin = usedBins[i];
+            if (bin == backgroundBin) {
+                continue;
+            }
+            if ((fallbackBin == backgroundBin) || (counts[bin] > counts[fallbackBin])) {
+                fallbackBin = bin;
+            }
+            if (((foregroundBin < 0) || (counts[bin] > counts[foregroundBin]))
+                    && (ContrastUtils.calculateContrastRatio(
+                            backgroundLuminance, ContrastUtils.calculateLuminance(colors[bin]))
+                            >= MIN_FOREGROUND_SEPARATION)) {
+                foregroundBin = bin;
+            }
+        }
+        foregroundColor = colors[(foregroundBin >= 0) ? foregroundBin : fallbackBin];
+        contrastRatio = ContrastUtils.calculateContrastRatioOfColors(foregroundColor, backgroundColor);
+    }
+
+    private static int getBin(int pixel) {
+        return (RED_LUMINANCE[(pixel >> 16) & 0xFF]
+                + GREEN_LUMINANCE[(pixel >> 8) & 0xFF]
+                + BLUE_LUMINANCE[pixel & 0xFF]) >> BIN_SHIFT;
+    }
+
+    private static int[] createChannelTable(double weight) {
+        int[] table = new int[256];
+        for (int i = 0; i < table.length; ++i) {
+            table[i] = (int) Math.round(weight * ContrastUtils.getLinearChannelValue(i) * LUMINANCE_SCALE);
+        }
+        return table;
+    }
+}
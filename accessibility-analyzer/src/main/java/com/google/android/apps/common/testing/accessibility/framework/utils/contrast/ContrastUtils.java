@@ -0,0 +1,61 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+/** Utilities for evaluating the contrast ratio of colors, as defined by WCAG 2.0. */
+public final class ContrastUtils {
+
+    /** Minimum contrast ratio for text smaller than large text. */
+    public static final double CONTRAST_RATIO_WCAG_NORMAL_TEXT = 4.5;
+    /** Minimum contrast ratio for large text and graphical objects. */
+    public static final double CONTRAST_RATIO_WCAG_LARGE_TEXT = 3.0;
+    /** Minimum size, in sp, at which text is considered large. */
+    public static final int WCAG_LARGE_TEXT_MIN_SIZE = 18;
+    /** Minimum size, in sp, at which bold text is considered large. */
+    public static final int WCAG_LARGE_BOLD_TEXT_MIN_SIZE = 14;
+
+    /**
+     * Luminance of each color channel value, with the sRGB transfer function removed. The channels'
+     * weights are applied by {@link #calculateLuminance(int)}.
+     */
+    private static final double[] LINEAR_CHANNEL_VALUES = new double[256];
+
+    static {
+        for (int i = 0; i < LINEAR_CHANNEL_VALUES.length; ++i) {
+            double value = i / 255.0d;
+            LINEAR_CHANNEL_VALUES[i] = (value <= 0.03928d)
+                    ? (value / 12.92d)
+                    : Math.pow((value + 0.055d) / 1.055d, 2.4d);
+        }
+    }
+
+    private ContrastUtils() {}
+
+    /**
+     * @param color a packed {@code 0xAARRGGBB} color, whose alpha is ignored
+     * @return the relative luminance of {@code color}, from 0 for black to 1 for white
+     */
+    public static double calculateLuminance(int color) {
+        return (0.2126d * getLinearChannelValue((color >> 16) & 0xFF))
+                + (0.7152d * getLinearChannelValue((color >> 8) & 0xFF))
+                + (0.0722d * getLinearChannelValue(color & 0xFF));
+    }
+
+    /**
+     * @return the contrast ratio of two relative luminances, from 1 for identical luminances to 21
+     *     for black against white
+     */
+    public static double calculateContrastRatio(double luminance1, double luminance2) {
+        double lighter = Math.max(luminance1, luminance2);
+        double darker = Math.min(luminance1, luminance2);
+        return (lighter + 0.05d) / (darker + 0.05d);
+    }
+
+    /** @return the contrast ratio of two packed {@code 0xAARRGGBB} colors, ignoring alpha */
+    public static double calculateContrastRatioOfColors(int color1, int color2) {
+        return calculateContrastRatio(calculateLuminance(color1), calculateLuminance(color2));
+    }
+
+    /** @return the linear-light value, from 0 to 1, of an sRGB color channel value from 0 to 255 */
+    static double getLinearChannelValue(int channelValue) {
+        return LINEAR_CHANNEL_VALUES[channelValue];
+    }
+}
@@ -0,0 +1,76 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+
+/**
+ * Used as a local replacement for @link android.graphics.Bitmap when holding screen capture data.
+ * <p>
+ * An image may hold only a region of the screen, in which case {@link #getBounds()} gives the
+ * region it covers and pixels are addressed in screen coordinates. Pixels are stored as packed
+ * {@code 0xAARRGGBB} values in row-major order, and are exposed without copying so that checks can
+ * sample them in a tight loop. The pixel buffer must not be modified.
+ */
+public class Image {
+
+    private final Rect bounds;
+    private final int[] pixels;
+
+    /**
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param pixels packed {@code 0xAARRGGBB} values, of which the first {@code width * height} are
+     *     used
+     */
+    public Image(int width, int height, int[] pixels) {
+        this(new Rect(0, 0, width, height), pixels);
+    }
+
+    /**
+     * @param bounds the region of the screen covered by the image
+     * @param pixels packed {@code 0xAARRGGBB} values for the pixels within {@code bounds}, of which
+     *     the first {@code bounds.getWidth() * bounds.getHeight()} are used
+     */
+    public Image(Rect bounds, int[] pixels) {
+        checkArgument((bounds.getWidth() >= 0) && (bounds.getHeight() >= 0), "Negative image size");
+        checkArgument(checkNotNull(pixels).length >= (long) bounds.getWidth() * bounds.getHeight(),
+                "Too few pixels");
+        this.bounds = bounds;
+        this.pixels = pixels;
+    }
+
+    public int getWidth() {
+        return bounds.getWidth();
+    }
+
+    public int getHeight() {
+        return bounds.getHeight();
+    }
+
+    /** @return the region of the screen covered by this image */
+    public Rect getBounds() {
+        return bounds;
+    }
+
+    /** @return the packed {@code 0xAARRGGBB} value of the pixel at screen coordinates {@code (x, y)} */
+    public int getPixel(int x, int y) {
+        return pixels[getPixelIndex(x, y)];
+    }
+
+    /**
+     * @return the index within {@link #getPixels()} of the pixel at screen coordinates {@code (x, y)}
+     */
+    int getPixelIndex(int x, int y) {
+        return ((y - bounds.getTop()) * bounds.getWidth()) + (x - bounds.getLeft());
+    }
+
+    /**
+     * @return the backing pixel buffer, in which each row of {@link #getWidth()} pixels follows the
+     *     one above it
+     */
+    int[] getPixels() {
+        return pixels;
+    }
+}
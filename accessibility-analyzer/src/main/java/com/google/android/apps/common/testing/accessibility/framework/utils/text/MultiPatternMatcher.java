@@ -0,0 +1,159 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.text;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Ascii;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds which of a fixed set of patterns occur within a text, ignoring ASCII case, as
+ * {@code Ascii.toLowerCase(text).contains(Ascii.toLowerCase(pattern))} would for each pattern.
+ * <p>
+ * The patterns are compiled into an Aho-Corasick automaton, so a text is scanned once regardless
+ * of the number of patterns. Instances are immutable and may be shared between threads.
+ */
+public class MultiPatternMatcher {
+
+    private final ImmutableList<String> patterns;
+
+    /* Outgoing edges of each state lie in edgeChars and edgeTargets from edgeStarts[state] up to
+     * edgeStarts[state + 1], sorted by character. State 0 is the root. */
+    private final int[] edgeStarts;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    /* The state for the longest proper suffix of each state's string which is also in the trie */
+    private final int[] failures;
+
+    /* Index of the pattern ending at each state, or -1 */
+    private final int[] outputs;
+
+    /* The nearest state along the failure chain whose output is not -1, or -1 */
+    private final int[] outputLinks;
+
+    /**
+     * @param patterns the non-empty patterns to find
+     */
+    public MultiPatternMatcher(List<? extends CharSequence> patterns) {
+        ImmutableList.Builder<String> patternsBuilder = ImmutableList.builder();
+        for (CharSequence pattern : patterns) {
+            checkArgument(pattern.length() > 0, "Empty pattern");
+            patternsBuilder.add(Ascii.toLowerCase(pattern));
+        }
+        this.patterns = patternsBuilder.build();
+
+        // Build the trie, with edges in character order.
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> trieOutputs = new ArrayList<>();
+        trie.add(new TreeMap<Character, Integer>());
+        trieOutputs.add(-1);
+        for (int i = 0; i < this.patterns.size(); ++i) {
+            String pattern = this.patterns.get(i);
+            int state = 0;
+            for (int j = 0; j < pattern.length(); ++j) {
+                Integer next = trie.get(state).get(pattern.charAt(j));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(pattern.charAt(j), next);
+                    trie.add(new TreeMap<Character, Integer>());
+                    trieOutputs.add(-1);
+                }
+                state = next;
+            }
+            if (trieOutputs.get(state) == -1) {
+                trieOutputs.set(state, i);
+            }
+        }
+
+        int stateCount = trie.size();
+        edgeStarts = new int[stateCount + 1];
+        edgeChars = new char[stateCount - 1];
+        edgeTargets = new int[stateCount - 1];
+        outputs = new int[stateCount];
+        int edge = 0;
+        for (int state = 0; state < stateCount; ++state) {
+            edgeStarts[state] = edge;
+            for (Map.Entry<Character, Integer> entry : trie.get(state).entrySet()) {
+                edgeChars[edge] = entry.getKey();
+                edgeTargets[edge++] = entry.getValue();
+            }
+            outputs[state] = trieOutputs.get(state);
+        }
+        edgeStarts[stateCount] = edge;
+
+        // Link each state to its longest proper suffix in the trie, in breadth-first order so that
+        // shallower states are linked first.
+        failures = new int[stateCount];
+        outputLinks = new int[stateCount];
+        outputLinks[0] = -1;
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int i = edgeStarts[0]; i < edgeStarts[1]; ++i) {
+            failures[edgeTargets[i]] = 0;
+            outputLinks[edgeTargets[i]] = -1;
+            queue[tail++] = edgeTargets[i];
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = edgeStarts[state]; i < edgeStarts[state + 1]; ++i) {
+                int child = edgeTargets[i];
+                int failure = step(failures[state], edgeChars[i]);
+                failures[child] = failure;
+                outputLinks[child] = (outputs[failure] != -1) ? failure : outputLinks[failure];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    /** @return the patterns, in the order supplied, as matched in lower case */
+    public ImmutableList<String> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * @return the indices within {@link #getPatterns()} of the patterns which occur in
+     *     {@code text}. A pattern listed more than once is reported at its first index.
+     */
+    public BitSet findAll(CharSequence text) {
+        BitSet matched = new BitSet(patterns.size());
+        int state = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            state = step(state, Ascii.toLowerCase(text.charAt(i)));
+            for (int match = (outputs[state] != -1) ? state : outputLinks[state];
+                    match != -1;
+                    match = outputLinks[match]) {
+                matched.set(outputs[match]);
+            }
+        }
+        return matched;
+    }
+
+    /** Follows the transition for {@code c} from {@code state}, falling back along failures. */
+    private int step(int state, char c) {
+        while (true) {
+            int low = edgeStarts[state];
+            int high = edgeStarts[state + 1] - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = edgeChars[mid];
+                if (midChar < c) {
+                    low = mid + 1;
+                } else if (midChar > c) {
+                    high = mid - 1;
+                } else {
+                    return edgeTargets[mid];
+                }
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failures[state];
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests whether a text starts with any of a fixed set of prefixes, as {@code
+ * text.toString().startsWith(prefix)} would for each prefix.
+ * <p>
+ * The prefixes are compiled into a trie, so a text is tested in time proportional to the length of
+ * its longest matching path rather than to the number of prefixes, and without allocating.
+ * Instances are immutable and may be shared between threads.
+ */
+public class PrefixMatcher {
+
+    /* Outgoing edges of each state lie in edgeChars and edgeTargets from edgeStarts[state] up to
+     * edgeStarts[state + 1], sorted by character. State 0 is the root. */
+    private final int[] edgeStarts;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+
+    /* Whether a prefix ends at each state */
+    private final boolean[] terminals;
+
+    /**
+     * @param prefixes the prefixes to test for. An empty prefix matches every text.
+     */
+    public PrefixMatcher(Iterable<? extends CharSequence> prefixes) {
+        // Build the trie, with edges in character order.
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Boolean> trieTerminals = new ArrayList<>();
+        trie.add(new TreeMap<Character, Integer>());
+        trieTerminals.add(false);
+        for (CharSequence prefix : prefixes) {
+            int state = 0;
+            for (int i = 0; i < prefix.length(); ++i) {
+                Integer next = trie.get(state).get(prefix.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(prefix.charAt(i), next);
+                    trie.add(new TreeMap<Character, Integer>());
+                    trieTerminals.add(false);
+                }
+                state = next;
+            }
+            trieTerminals.set(state, true);
+        }
+
+        int stateCount = trie.size();
+        edgeStarts = new int[stateCount + 1];
+        edgeChars = new char[stateCount - 1];
+        edgeTargets = new int[stateCount - 1];
+        terminals = new boolean[stateCount];
+        int edge = 0;
+        for (int state = 0; state < stateCount; ++state) {
+            edgeStarts[state] = edge;
+            for (Map.Entry<Character, Integer> entry : trie.get(state).entrySet()) {
+                edgeChars[edge] = entry.getKey();
+                edgeTargets[edge++] = entry.getValue();
+            }
+            terminals[state] = trieTerminals.get(state);
+        }
+        edgeStarts[stateCount] = edge;
+    }
+
+    /** @return whether {@code text} starts with any of the prefixes */
+    public boolean matchesPrefixOf(CharSequence text) {
+        int state = 0;
+        for (int i = 0; !terminals[state]; ++i) {
+            if (i == text.length()) {
+                return false;
+            }
+            state = step(state, text.charAt(i));
+            if (state == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the state reached from {@code state} on {@code c}, or -1 if there is no edge */
+    private int step(int state, char c) {
+        int low = edgeStarts[state];
+        int high = edgeStarts[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = edgeChars[mid];
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+}
@@ -4,33 +4,37 @@
 package team.itome.accessibilityanalyzer
 
 import com.github.ajalt.clikt.core.CliktCommand
+import com.github.ajalt.clikt.parameters.options.convert
+import com.github.ajalt.clikt.parameters.options.flag
+import com.github.ajalt.clikt.parameters.options.multiple
 import com.github.ajalt.clikt.parameters.options.option
 import com.github.ajalt.clikt.parameters.options.required
 import com.github.ajalt.clikt.parameters.types.int
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.METADATA_KEY_CUSTOMIZED_TOUCH_TARGET_SIZE
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.putCustomizedUiPackageNamesInMetadata
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckPreset
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheck
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckRunner
 import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.ScreenCaptureSampler
+import com.google.android.apps.common.testing.accessibility.framework.proto.AccessibilityEvaluationProtos.AccessibilityHierarchyCheckResultProto
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
-import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement
-import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.AccessibilityHierarchyProto
-import org.im4java.core.ConvertCmd
-import org.im4java.core.IMOperation
+import com.google.common.util.concurrent.MoreExecutors
 import java.io.File
 import java.io.FileNotFoundException
 import java.util.*
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import javax.imageio.ImageIO
 
 fun main(args: Array<String>) = AccessibilityCheckCommand().main(args)
 
 class AccessibilityCheckCommand : CliktCommand() {
 
-  companion object {
-    private const val FRAME_MARGIN = 16
-    private const val FRAME_STROKE_WIDTH = 8
-  }
-
   private val targetDir by option(
     "--target",
     help = "Target directory that contains accessibility.meta files"
@@ -46,6 +50,52 @@ class AccessibilityCheckCommand : CliktCommand() {
     help = "Minimum touch target size in dp."
   ).int()
 
+  private val resultStream by option(
+    "--result-stream",
+    help = "File to which every reported result is written as a length-delimited proto record, " +
+        "replacing the results of any earlier run"
+  )
+
+  private val validUiPackages by option(
+    "--valid-ui-package",
+    help = "Package name prefix to accept as UI classes besides the Android ones. Can be repeated."
+  ).multiple()
+
+  private val validUiPackagesFile by option(
+    "--valid-ui-packages-file",
+    help = "File listing package name prefixes to accept as UI classes, one per line"
+  )
+
+  private val checkThreads by option(
+    "--check-threads",
+    help = "Number of threads on which to run the checks of each screen concurrently. Default: 1"
+  ).int()
+
+  private val screenThreads by option(
+    "--screen-threads",
+    help = "Number of screens to check at once. Default: number of processors"
+  ).int()
+
+  private val maxMemory by option(
+    "--max-memory",
+    help = "Estimated heap that the screens being analyzed may use at once, such as 512m or 2g. " +
+        "Default: no limit"
+  ).convert("SIZE") { MemoryBudget.parseSize(it) ?: fail("Invalid size: $it") }
+
+  private val useSnapshots by option(
+    "--snapshots",
+    help = "Keep a preprocessed snapshot next to each hierarchy, from which later runs load it " +
+        "without parsing"
+  ).flag()
+
+  private val checks by lazy {
+    AccessibilityCheckPreset.getAccessibilityHierarchyChecksForPreset(AccessibilityCheckPreset.LATEST)
+  }
+
+  private val locale by lazy {
+    Locale.getAvailableLocales().find { it.language == lang } ?: Locale.US
+  }
+
   private val targetDirFullPath: String
     get() = targetDir.replace("~", System.getProperty("user.home"))
 
@@ -55,78 +105,217 @@ class AccessibilityCheckCommand : CliktCommand() {
       ?.filter { Regex("accessibility[0-9]+.meta").matches(it.name) }
       ?: throw FileNotFoundException("No test target file found in $targetDirFullPath")
     val metadata = createMetadata()
+    val streamWriter = resultStream
+      ?.let { CheckResultStreamWriter(File(it.replace("~", System.getProperty("user.home")))) }
+
+    val budget = maxMemory?.let { MemoryBudget(it) } ?: MemoryBudget.unlimited()
+    val threads = screenThreads ?: Runtime.getRuntime().availableProcessors()
+    // Loads and writes mostly block on the disk, so each gets a thread of its own. The pipeline's
+    // capacity bounds how many screens, and so how many such threads, are in flight at once.
+    val ioPool = Executors.newCachedThreadPool()
+    val screenPool = Executors.newFixedThreadPool(threads)
+    // Shared by the screens being checked. Kept apart from the screen pool, whose threads wait for
+    // the checks they submit, so that they cannot take every thread the checks need.
+    val checkPool = createCheckPool()
+    try {
+      val checkExecutor = checkPool ?: MoreExecutors.directExecutor()
+      streamWriter.use { writer ->
+        StagedPipeline(ioPool, screenPool, threads * 2).run(
+          // Admitted lazily, as the pipeline takes each screen, so waiting for the budget holds
+          // back the screens after it.
+          files.asSequence().map { admitScreen(dir, it, budget) }.asIterable(),
+          load = { loadScreen(it, metadata) },
+          check = { checkScreen(it, checkExecutor) },
+          report = { reportScreen(it, writer) },
+          write = { writeScreen(dir, it) }
+        )
+      }
+    } finally {
+      ioPool.shutdownNow()
+      screenPool.shutdownNow()
+      checkPool?.shutdownNow()
+    }
+  }
+
+  /** Returns a pool for running checks concurrently, or `null` if they should run sequentially. */
+  private fun createCheckPool(): ExecutorService? {
+    val threads = checkThreads ?: 1
+    return if (threads > 1) Executors.newFixedThreadPool(threads) else null
+  }
 
-    for (file in files) {
-      val proto = file.inputStream().use { stream -> AccessibilityHierarchyProto.parseFrom(stream) }
-      val hierarchy = AccessibilityHierarchy.newBuilder(proto).build()
-      val results = runAccessibilityChecks(hierarchy, metadata)
+  /** Waits until [budget] can hold the cost of [file] and its screenshot, and reserves it. */
+  private fun admitScreen(dir: File, file: File, budget: MemoryBudget): AdmittedScreen {
+    val inputFileNumber = file.nameWithoutExtension.removePrefix("accessibility")
+    val screenImage = ScreenImage(File(dir, "$inputFileNumber.png"))
+    val hierarchyBytes = HierarchyLoader.estimateHeapBytes(file)
+    val reservation = budget.reserve(hierarchyBytes + screenImage.estimateHeapBytes())
+    return AdmittedScreen(file, inputFileNumber, screenImage, reservation, hierarchyBytes)
+  }
 
-      results
+  /** Reads the hierarchy of [screen], and its screenshot if any checks sample it. */
+  private fun loadScreen(screen: AdmittedScreen, metadata: Metadata): LoadedScreen =
+    screen.reservation.closeOnFailure(screen.image) {
+      val hierarchy = if (useSnapshots) {
+        HierarchyLoader.loadHierarchy(screen.file)
+      } else {
+        AccessibilityHierarchy.newBuilder(HierarchyLoader.load(screen.file)).build()
+      }
+      val screenImage = screen.image
+      val screenMetadata = Metadata(metadata)
+      if (screenImage.exists) {
+        screenImage.regionOfInterest = getSampledRegion(hierarchy)
+        screenImage.putInMetadata(screenMetadata)
+        if (screenImage.regionOfInterest != null) {
+          // Decode now, on the I/O pool, rather than when a check first samples it.
+          screenImage.getImage()
+        }
+      }
+      LoadedScreen(screen, hierarchy, screenMetadata)
+    }
+
+  /**
+   * Runs the checks on [loaded] and keeps what is needed to report the errors and warnings they
+   * find, so that the hierarchy and the pixels sampled by the checks can be released.
+   */
+  private fun checkScreen(loaded: LoadedScreen, checkExecutor: Executor): CheckedScreen {
+    val screen = loaded.screen
+    return screen.reservation.closeOnFailure(screen.image) {
+      val results = runAccessibilityChecks(loaded.hierarchy, loaded.metadata, checkExecutor)
         .filter {
           it.type == AccessibilityCheckResultType.ERROR ||
               it.type == AccessibilityCheckResultType.WARNING
         }
-        .forEachIndexed { index, checkResult ->
+        .map { checkResult ->
           @Suppress("UNCHECKED_CAST")
           val checkClass = AccessibilityCheckPreset.getHierarchyCheckForClass(
             checkResult.sourceCheckClass as Class<out AccessibilityHierarchyCheck>
           )
-          val locale = Locale.getAvailableLocales().find { it.language == lang } ?: Locale.US
-          println(checkClass.getTitleMessage(locale))
-          println(checkClass.getMessageForResult(locale, checkResult))
+          CheckedResult(
+            checkClass.getTitleMessage(locale),
+            checkClass.getMessageForResult(locale, checkResult),
+            checkResult.toProto(),
+            checkResult.element?.boundsInScreen
+          )
+        }
+      screen.image.finishChecks()
+      screen.reservation.release(screen.hierarchyBytes)
+      CheckedScreen(screen, results)
+    }
+  }
 
-          val outputProto = checkResult.toProto()
-          val inputFileNumber = file.nameWithoutExtension.removePrefix("accessibility")
+  /** Prints the results of [screen] and appends them to [streamWriter]. */
+  private fun reportScreen(checked: CheckedScreen, streamWriter: CheckResultStreamWriter?) {
+    val screen = checked.screen
+    for (checkResult in checked.results) {
+      println(checkResult.title)
+      println(checkResult.message)
+
+      streamWriter?.write(checkResult.proto)
+      if (!screen.image.exists) {
+        println("Target file ${screen.inputFileNumber}.png not found.")
+      }
+    }
+    streamWriter?.flush()
+  }
+
+  /** Writes each result of [screen] next to its screenshot, along with an annotated copy of it. */
+  private fun writeScreen(dir: File, checked: CheckedScreen) {
+    val screen = checked.screen
+    screen.reservation.use {
+      screen.image.use { screenImage ->
+        if (!screenImage.exists) {
+          return
+        }
+        checked.results.forEachIndexed { index, checkResult ->
+          val inputFileNumber = screen.inputFileNumber
           val outputProtoFile = File(dir, "accessibility${inputFileNumber}_check_result$index.meta")
-          val targetPngFile = File(dir, "$inputFileNumber.png").takeIf { it.exists() } ?: run {
-            println("Target file $inputFileNumber.png not found.")
-            return@forEachIndexed
-          }
           val outputPngFile = File(dir, "accessibility${inputFileNumber}_check_result$index.png")
 
           outputProtoFile.createNewFile()
-          outputProtoFile.outputStream().use { outputProto.writeTo(it) }
-          checkResult.element?.let {
-            generateTestResultImage(targetPngFile.absolutePath, outputPngFile.absolutePath, it)
+          outputProtoFile.outputStream().use { checkResult.proto.writeTo(it) }
+          checkResult.bounds?.let {
+            generateTestResultImage(screenImage, outputPngFile, it)
           }
         }
+      }
     }
   }
 
   private fun runAccessibilityChecks(
     hierarchy: AccessibilityHierarchy,
-    metadata: Metadata
+    metadata: Metadata,
+    executor: Executor
   ): List<AccessibilityHierarchyCheckResult> {
-    return AccessibilityCheckPreset
-      .getAccessibilityHierarchyChecksForPreset(AccessibilityCheckPreset.LATEST)
-      .flatMap { it.runCheckOnHierarchy(hierarchy, null, metadata) }
+    return AccessibilityHierarchyCheckRunner.runChecks(checks, hierarchy, null, metadata, executor)
   }
 
-  private fun createMetadata(): Metadata {
+  /** Returns the union of the screenshot regions the checks sample, or `null` if they sample none. */
+  private fun getSampledRegion(hierarchy: AccessibilityHierarchy): Rect? {
+    return checks
+      .filterIsInstance<ScreenCaptureSampler>()
+      .mapNotNull { it.getSampledRegion(hierarchy, null) }
+      .takeIf { it.isNotEmpty() }
+      ?.reduce { union, region ->
+        Rect(
+          minOf(union.left, region.left),
+          minOf(union.top, region.top),
+          maxOf(union.right, region.right),
+          maxOf(union.bottom, region.bottom)
+        )
+      }
+  }
+
+  /** Returns the metadata the options pass to every check, once the command has been parsed. */
+  internal fun createMetadata(): Metadata {
     return Metadata().apply {
       minTouchTargetSize?.let { putInt(METADATA_KEY_CUSTOMIZED_TOUCH_TARGET_SIZE, it) }
+      val packages = validUiPackages + readValidUiPackagesFile()
+      if (packages.isNotEmpty()) {
+        putCustomizedUiPackageNamesInMetadata(packages.distinct(), this)
+      }
     }
   }
 
+  /** Returns the non-blank lines of [validUiPackagesFile], ignoring those starting with `#`. */
+  private fun readValidUiPackagesFile(): List<String> {
+    val path = validUiPackagesFile ?: return emptyList()
+    return File(path.replace("~", System.getProperty("user.home")))
+      .readLines()
+      .map { it.trim() }
+      .filter { it.isNotEmpty() && !it.startsWith("#") }
+  }
+
   private fun generateTestResultImage(
-    targetFilePath: String,
-    outputFilePath: String,
-    view: ViewHierarchyElement
+    screenImage: ScreenImage,
+    outputFile: File,
+    bounds: Rect
   ) {
-    val command = ConvertCmd()
-    val operation = IMOperation()
-    val left = view.boundsInScreen.left - FRAME_MARGIN
-    val top = view.boundsInScreen.top - FRAME_MARGIN
-    val right = view.boundsInScreen.right + FRAME_MARGIN
-    val bottom = view.boundsInScreen.bottom + FRAME_MARGIN
-    operation.addImage(targetFilePath)
-    operation.strokewidth(FRAME_STROKE_WIDTH)
-    operation.stroke("#FF0000")
-    operation.draw("line $left,$top $right,$top")
-    operation.draw("line $left,$top $left,$bottom")
-    operation.draw("line $left,$bottom $right,$bottom")
-    operation.draw("line $right,$top $right,$bottom")
-    operation.addImage(outputFilePath)
-    command.run(operation)
+    val image = screenImage.copyForAnnotation() ?: return
+    ResultFrame.draw(image, bounds)
+    ImageIO.write(image, "png", outputFile)
   }
+
+  private class AdmittedScreen(
+    val file: File,
+    val inputFileNumber: String,
+    val image: ScreenImage,
+    val reservation: MemoryBudget.Reservation,
+    val hierarchyBytes: Long
+  )
+
+  private class LoadedScreen(
+    val screen: AdmittedScreen,
+    val hierarchy: AccessibilityHierarchy,
+    val metadata: Metadata
+  )
+
+  private class CheckedScreen(val screen: AdmittedScreen, val results: List<CheckedResult>)
+
+  /** What is reported for a result, without the hierarchy it refers to. */
+  private class CheckedResult(
+    val title: String,
+    val message: String,
+    val proto: AccessibilityHierarchyCheckResultProto,
+    val bounds: Rect?
+  )
 }
@@ -0,0 +1,124 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.proto.AccessibilityEvaluationProtos.AccessibilityHierarchyCheckResultProto
+import com.google.protobuf.InvalidProtocolBufferException
+import java.io.BufferedInputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.File
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+
+/**
+ * Writes [AccessibilityHierarchyCheckResultProto]s to a single file as length-delimited records,
+ * so that a whole run can be consumed from one file while analysis is still in progress. Any earlier
+ * contents of the file are discarded, so it only ever holds the results of one run.
+ *
+ * Records are held in memory until [flush]ed, and then appended to the file together, so the file
+ * only grows by whole records.
+ */
+class CheckResultStreamWriter(file: File) : Closeable {
+
+  companion object {
+    private const val BUFFER_SIZE = 64 * 1024
+  }
+
+  private val channel = FileChannel.open(
+    file.toPath(),
+    StandardOpenOption.CREATE,
+    StandardOpenOption.WRITE,
+    StandardOpenOption.TRUNCATE_EXISTING
+  )
+  private val output = Channels.newOutputStream(channel)
+  private val pending = ByteArrayOutputStream(BUFFER_SIZE)
+
+  @Synchronized
+  fun write(result: AccessibilityHierarchyCheckResultProto) {
+    result.writeDelimitedTo(pending)
+  }
+
+  /** Makes every record written so far visible to readers of the file. */
+  @Synchronized
+  fun flush() {
+    pending.writeTo(output)
+    pending.reset()
+  }
+
+  @Synchronized
+  override fun close() {
+    output.use { flush() }
+  }
+}
+
+/**
+ * Reads back the records written by [CheckResultStreamWriter]. Records are parsed lazily, one at a
+ * time, so a reader may start on a file that is still being written to. A record that has only
+ * partly reached the file is treated as not written yet: [read] returns `null` without consuming
+ * it, and a later call returns it once the rest has been written.
+ */
+class CheckResultStreamReader(file: File) : Closeable, Iterable<AccessibilityHierarchyCheckResultProto> {
+
+  companion object {
+    private const val BUFFER_SIZE = 64 * 1024
+
+    /** Bytes of the longest varint a record's length is written as. */
+    private const val MAX_LENGTH_BYTES = 5
+  }
+
+  private val input = BufferedInputStream(
+    Channels.newInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ)),
+    BUFFER_SIZE
+  )
+
+  /**
+   * Returns the next record, or `null` once every record which has completely reached the file has
+   * been read.
+   */
+  fun read(): AccessibilityHierarchyCheckResultProto? {
+    input.mark(Int.MAX_VALUE)
+    val record = readLength()?.let { readFully(it) }
+    if (record == null) {
+      input.reset()
+      return null
+    }
+    return AccessibilityHierarchyCheckResultProto.parseFrom(record)
+  }
+
+  override fun iterator(): Iterator<AccessibilityHierarchyCheckResultProto> =
+    generateSequence { read() }.iterator()
+
+  override fun close() {
+    input.close()
+  }
+
+  /** Reads the varint length of the next record, or returns `null` if it is not all in the file. */
+  private fun readLength(): Int? {
+    var length = 0
+    for (i in 0 until MAX_LENGTH_BYTES) {
+      val b = input.read()
+      if (b == -1) {
+        return null
+      }
+      length = length or ((b and 0x7f) shl (7 * i))
+      if (b and 0x80 == 0) {
+        return length
+      }
+    }
+    throw InvalidProtocolBufferException("Malformed record length")
+  }
+
+  /** Reads the next [length] bytes, or returns `null` if they are not all in the file. */
+  private fun readFully(length: Int): ByteArray? {
+    val bytes = ByteArray(length)
+    var read = 0
+    while (read < length) {
+      val count = input.read(bytes, read, length - read)
+      if (count == -1) {
+        return null
+      }
+      read += count
+    }
+    return bytes
+  }
+}
@@ -0,0 +1,89 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchySnapshot
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.AccessibilityHierarchyProto
+import com.google.protobuf.CodedInputStream
+import java.io.File
+import java.io.IOException
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+
+/**
+ * Loads `.meta` hierarchy captures by parsing them from a buffered stream, without a size limit.
+ *
+ * A capture may also be kept as an [AccessibilityHierarchySnapshot] next to it, from which later
+ * runs build its hierarchy without parsing the capture at all.
+ */
+object HierarchyLoader {
+
+  /**
+   * Heap taken by a parsed capture and the hierarchy built from it, per byte of the file, with
+   * headroom for what the checks allocate while they run.
+   */
+  private const val HEAP_BYTES_PER_FILE_BYTE = 8
+
+  /** Size of the buffer a capture is read through, the only heap its parse takes beyond it. */
+  private const val READ_BUFFER_BYTES = 64 * 1024
+
+  fun load(file: File): AccessibilityHierarchyProto {
+    return file.inputStream().buffered(READ_BUFFER_BYTES).use { stream ->
+      val input = CodedInputStream.newInstance(stream)
+      // The default 64MB limit is meant for untrusted network input; captures can be larger.
+      input.setSizeLimit(Int.MAX_VALUE)
+      AccessibilityHierarchyProto.parseFrom(input)
+    }
+  }
+
+  /**
+   * Builds the hierarchy of [file] from its snapshot, if it has one at least as new as itself.
+   * Otherwise builds it from the capture, and writes a snapshot for the next run. A snapshot which
+   * is corrupt is replaced, and one which cannot be written is only warned about.
+   */
+  fun loadHierarchy(file: File): AccessibilityHierarchy {
+    val snapshotFile = getSnapshotFile(file)
+    if (snapshotFile.exists() && (snapshotFile.lastModified() >= file.lastModified())) {
+      try {
+        return loadSnapshot(snapshotFile)
+      } catch (e: IOException) {
+        // Rewritten below, from the capture.
+      }
+    }
+    val proto = load(file)
+    try {
+      writeSnapshot(proto, snapshotFile)
+    } catch (e: IOException) {
+      System.err.println("Warning: could not write snapshot $snapshotFile: ${e.message}")
+    }
+    return AccessibilityHierarchy.newBuilder(proto).build()
+  }
+
+  private fun loadSnapshot(snapshotFile: File): AccessibilityHierarchy {
+    return FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ).use { channel ->
+      val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+      AccessibilityHierarchy.newBuilder(AccessibilityHierarchySnapshot.read(buffer)).build()
+    }
+  }
+
+  /** Writes the snapshot to a temporary file first, so that no run sees one partly written. */
+  private fun writeSnapshot(proto: AccessibilityHierarchyProto, snapshotFile: File) {
+    val temporaryFile = File.createTempFile(snapshotFile.name, ".tmp", snapshotFile.parentFile)
+    try {
+      FileChannel.open(temporaryFile.toPath(), StandardOpenOption.WRITE).use {
+        AccessibilityHierarchySnapshot.write(proto, it)
+      }
+      Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+    } finally {
+      temporaryFile.delete()
+    }
+  }
+
+  private fun getSnapshotFile(file: File) =
+    File(file.parentFile, "${file.nameWithoutExtension}.snapshot")
+
+  /** Returns an estimate of the heap taken by loading [file] and checking its hierarchy. */
+  fun estimateHeapBytes(file: File): Long =
+    (file.length() * HEAP_BYTES_PER_FILE_BYTE) + READ_BUFFER_BYTES
+}
@@ -0,0 +1,101 @@
+package team.itome.accessibilityanalyzer
+
+import java.io.Closeable
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Estimated heap, in bytes, shared by the screens being analyzed at once.
+ *
+ * Each screen [reserve]s its estimated cost before it is loaded, waiting until enough of the budget
+ * is free, and gives it back in parts as its stages complete. A screen estimated to cost more than
+ * the whole budget is reserved the whole budget, so it is analyzed on its own rather than never.
+ */
+class MemoryBudget(val capacity: Long) {
+
+  companion object {
+    private val SIZE_PATTERN = Regex("([0-9]+)([kmg]?)b?", RegexOption.IGNORE_CASE)
+
+    /** A budget which never makes a screen wait. */
+    fun unlimited() = MemoryBudget(Long.MAX_VALUE)
+
+    /**
+     * Returns the number of bytes in a size such as `512m` or `2g`, with an optional `k`, `m` or
+     * `g` suffix in powers of 1024, or `null` if [size] is not one.
+     */
+    fun parseSize(size: String): Long? {
+      val match = SIZE_PATTERN.matchEntire(size.trim()) ?: return null
+      val shift = when (match.groupValues[2].toLowerCase()) {
+        "k" -> 10
+        "m" -> 20
+        "g" -> 30
+        else -> 0
+      }
+      val value = match.groupValues[1].toLongOrNull() ?: return null
+      return if (value <= (Long.MAX_VALUE shr shift)) value shl shift else null
+    }
+  }
+
+  private val lock = ReentrantLock()
+  private val released = lock.newCondition()
+  private var availableBytes = capacity
+
+  init {
+    require(capacity > 0) { "Capacity must be positive: $capacity" }
+  }
+
+  /** Bytes of the budget not reserved by any screen. */
+  val available: Long
+    get() = lock.withLock { availableBytes }
+
+  /** Waits until [bytes], or the whole budget if that is less, are free, and reserves them. */
+  fun reserve(bytes: Long): Reservation {
+    val granted = bytes.coerceIn(0, capacity)
+    lock.withLock {
+      while (availableBytes < granted) {
+        released.await()
+      }
+      availableBytes -= granted
+    }
+    return Reservation(granted)
+  }
+
+  private fun release(bytes: Long) {
+    if (bytes > 0) {
+      lock.withLock {
+        availableBytes += bytes
+        released.signalAll()
+      }
+    }
+  }
+
+  /** Part of the budget held by one screen. Closing it releases whatever is still held. */
+  inner class Reservation internal constructor(private var held: Long) : Closeable {
+
+    /** Releases up to [bytes] of the reservation, once part of the screen is no longer needed. */
+    fun release(bytes: Long) {
+      val releasing = synchronized(this) {
+        bytes.coerceIn(0, held).also { held -= it }
+      }
+      this@MemoryBudget.release(releasing)
+    }
+
+    /**
+     * Returns the result of [block], or if it throws, closes [resources] and this reservation
+     * before rethrowing, so that a screen which fails a stage gives back all it holds.
+     */
+    inline fun <T> closeOnFailure(vararg resources: Closeable, block: () -> T): T {
+      try {
+        return block()
+      } catch (e: Throwable) {
+        resources.forEach { it.close() }
+        close()
+        throw e
+      }
+    }
+
+    override fun close() {
+      release(Long.MAX_VALUE)
+    }
+  }
+}
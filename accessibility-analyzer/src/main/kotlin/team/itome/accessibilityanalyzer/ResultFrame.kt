@@ -0,0 +1,46 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import java.awt.BasicStroke
+import java.awt.Color
+import java.awt.RenderingHints
+import java.awt.geom.Line2D
+import java.awt.image.BufferedImage
+
+/**
+ * Frame drawn around the bounds of a result on a copy of its screenshot: four red lines
+ * [STROKE_WIDTH] pixels wide, [MARGIN] pixels outside the bounds.
+ *
+ * The lines are those ImageMagick drew with `-draw "line ..."` before screenshots were annotated in
+ * process. They are centred on the same coordinates, have the same butt ends, and are antialiased
+ * in the same way.
+ */
+internal object ResultFrame {
+
+  const val MARGIN = 16
+  const val STROKE_WIDTH = 8
+
+  /**
+   * ImageMagick places pixel centres on whole coordinates, and Java2D places pixel corners on them.
+   * So each coordinate is shifted by this much to land where ImageMagick put it.
+   */
+  private const val PIXEL_CENTER = 0.5
+
+  fun draw(image: BufferedImage, bounds: Rect) {
+    val left = bounds.left - MARGIN + PIXEL_CENTER
+    val top = bounds.top - MARGIN + PIXEL_CENTER
+    val right = bounds.right + MARGIN + PIXEL_CENTER
+    val bottom = bounds.bottom + MARGIN + PIXEL_CENTER
+    image.createGraphics().apply {
+      setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON)
+      setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE)
+      stroke = BasicStroke(STROKE_WIDTH.toFloat(), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER)
+      color = Color.RED
+      draw(Line2D.Double(left, top, right, top))
+      draw(Line2D.Double(left, top, left, bottom))
+      draw(Line2D.Double(left, bottom, right, bottom))
+      draw(Line2D.Double(right, top, right, bottom))
+      dispose()
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.putScreenCaptureSupplierInMetadata
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image
+import com.google.common.base.Supplier
+import java.awt.Rectangle
+import java.awt.image.BufferedImage
+import java.awt.image.DataBufferInt
+import java.io.Closeable
+import java.io.File
+import javax.imageio.ImageIO
+
+/**
+ * Screenshot of a single screen, shared by the checks that sample its pixels and by the annotator
+ * that draws results onto it.
+ *
+ * The file is decoded at most once for the checks and once for annotation, each on first use. The
+ * pixels decoded for the checks are dropped on [finishChecks] unless annotation can reuse them, and
+ * all decoded pixels on [close], so a screen holds rasters only while a stage still needs them.
+ */
+class ScreenImage(val file: File) : Closeable {
+
+  companion object {
+    /**
+     * Full-screen rasters a screen may hold at once: the one the checks sample, the one annotations
+     * are copied from, and the copy being drawn on.
+     */
+    private const val RASTERS_PER_SCREEN = 3
+    private const val BYTES_PER_PIXEL = 4
+  }
+
+  /**
+   * Region of the screen the checks will sample, or `null` for the full screen. When set before the
+   * checks first request the screenshot, only the pixels within it are decoded for them.
+   */
+  var regionOfInterest: Rect? = null
+
+  private var checkRaster: Raster? = null
+  private var annotationRaster: Raster? = null
+  private var image: Image? = null
+  private var decoded = false
+  private var closed = false
+
+  val exists: Boolean
+    get() = file.exists()
+
+  /** Returns the decoded screenshot, or `null` if it is missing, unreadable, or already closed. */
+  @Synchronized
+  fun getImage(): Image? {
+    if (!decoded && !closed) {
+      decoded = true
+      checkRaster = read(regionOfInterest)
+      image = checkRaster?.let { Image(it.bounds, it.pixels) }
+    }
+    return image
+  }
+
+  /** Makes the screenshot available to checks without decoding it until one samples its pixels. */
+  fun putInMetadata(metadata: Metadata) {
+    putScreenCaptureSupplierInMetadata(Supplier { getImage() }, metadata)
+  }
+
+  /** Returns an opaque copy of the full screenshot, which can be drawn on without affecting checks. */
+  @Synchronized
+  fun copyForAnnotation(): BufferedImage? {
+    if (closed) {
+      return null
+    }
+    val raster = checkRaster?.takeIf { it.isFullScreen }
+      ?: annotationRaster
+      ?: read(null)?.also { annotationRaster = it }
+      ?: return null
+    val copy = BufferedImage(raster.bounds.width, raster.bounds.height, BufferedImage.TYPE_INT_RGB)
+    System.arraycopy(raster.pixels, 0, (copy.raster.dataBuffer as DataBufferInt).data, 0, raster.pixels.size)
+    return copy
+  }
+
+  /**
+   * Drops the pixels decoded for the checks once they have all run, keeping them for annotation
+   * only if they cover the full screen.
+   */
+  @Synchronized
+  fun finishChecks() {
+    checkRaster?.takeIf { it.isFullScreen }?.let { annotationRaster = it }
+    checkRaster = null
+    image = null
+  }
+
+  /**
+   * Returns an upper bound on the heap the decoded pixels of this screenshot may take, reading only
+   * its dimensions, or 0 if it is missing or unreadable.
+   */
+  fun estimateHeapBytes(): Long {
+    if (!exists) {
+      return 0
+    }
+    ImageIO.createImageInputStream(file)?.use { input ->
+      val reader = ImageIO.getImageReaders(input).asSequence().firstOrNull() ?: return 0
+      try {
+        reader.input = input
+        val pixels = reader.getWidth(0).toLong() * reader.getHeight(0)
+        return pixels * BYTES_PER_PIXEL * RASTERS_PER_SCREEN
+      } finally {
+        reader.dispose()
+      }
+    }
+    return 0
+  }
+
+  @Synchronized
+  override fun close() {
+    closed = true
+    checkRaster = null
+    annotationRaster = null
+    image = null
+  }
+
+  /**
+   * Decodes [region] of the file, clipped to the screenshot, into packed ARGB pixels. Decodes the
+   * whole file if [region] is `null` or lies entirely outside the screenshot.
+   */
+  private fun read(region: Rect?): Raster? {
+    if (!exists) {
+      return null
+    }
+    ImageIO.createImageInputStream(file).use { input ->
+      val reader = ImageIO.getImageReaders(input).asSequence().firstOrNull() ?: return null
+      try {
+        reader.input = input
+        val screen = Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0))
+        val clipped = region
+          ?.let { Rectangle(it.left, it.top, it.width, it.height).intersection(screen) }
+          ?.takeUnless { it.isEmpty }
+          ?: screen
+        val source = reader.read(0, reader.defaultReadParam.apply { sourceRegion = clipped })
+
+        // Draw into an int-packed raster, whose backing array the checks then read directly.
+        val target = BufferedImage(clipped.width, clipped.height, BufferedImage.TYPE_INT_ARGB)
+        target.createGraphics().apply {
+          drawImage(source, 0, 0, null)
+          dispose()
+        }
+        return Raster(
+          Rect(clipped.x, clipped.y, clipped.x + clipped.width, clipped.y + clipped.height),
+          (target.raster.dataBuffer as DataBufferInt).data,
+          clipped == screen
+        )
+      } finally {
+        reader.dispose()
+      }
+    }
+  }
+
+  private class Raster(val bounds: Rect, val pixels: IntArray, val isFullScreen: Boolean)
+}
@@ -0,0 +1,81 @@
+package team.itome.accessibilityanalyzer
+
+import java.util.ArrayDeque
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.function.Consumer
+import java.util.function.Function
+import java.util.function.Supplier
+
+/**
+ * Passes each input through a load, a check and a write stage, so that the blocking file I/O of
+ * some screens overlaps with the checks of others.
+ *
+ * Loading and writing run on [ioExecutor], and checking on [checkExecutor], which should be sized to
+ * the available processors. At most [capacity] inputs are in flight at once. Once that many have
+ * been admitted, the next waits until the oldest has been written, so a slow stage holds back the
+ * stages before it instead of letting loaded inputs pile up in memory.
+ *
+ * Every checked input is also passed to a report callback on the calling thread, in the order of the
+ * inputs, so what is reported does not depend on how the stages were scheduled.
+ */
+class StagedPipeline(
+  private val ioExecutor: Executor,
+  private val checkExecutor: Executor,
+  private val capacity: Int
+) {
+
+  init {
+    require(capacity > 0) { "Capacity must be positive: $capacity" }
+  }
+
+  /**
+   * Runs every input through the stages and waits for all of them to be written. If any stage
+   * fails, its exception is rethrown once the inputs before it have been reported, and the inputs
+   * still in flight are abandoned.
+   */
+  fun <I, L, C> run(
+    inputs: Iterable<I>,
+    load: (I) -> L,
+    check: (L) -> C,
+    report: (C) -> Unit,
+    write: (C) -> Unit
+  ) {
+    val inFlight = ArrayDeque<InFlight<C>>(capacity)
+    try {
+      for (input in inputs) {
+        if (inFlight.size == capacity) {
+          retire(inFlight.removeFirst(), report)
+        }
+        val checked = CompletableFuture
+          .supplyAsync(Supplier { load(input) }, ioExecutor)
+          .thenApplyAsync(Function<L, C> { check(it) }, checkExecutor)
+        val written = checked.thenAcceptAsync(Consumer<C> { write(it) }, ioExecutor)
+        inFlight.addLast(InFlight(checked, written))
+      }
+      while (inFlight.isNotEmpty()) {
+        retire(inFlight.removeFirst(), report)
+      }
+    } finally {
+      // Only left non-empty by a failure. Cancelling keeps the later stages of those inputs from
+      // starting.
+      inFlight.forEach { it.checked.cancel(false) }
+    }
+  }
+
+  private fun <C> retire(input: InFlight<C>, report: (C) -> Unit) {
+    report(await(input.checked))
+    await(input.written)
+  }
+
+  private fun <T> await(future: CompletableFuture<T>): T {
+    try {
+      return future.get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  private class InFlight<C>(val checked: CompletableFuture<C>, val written: CompletableFuture<Void>)
+}
@@ -0,0 +1,87 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement
+
+import java.io.Serializable
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import team.itome.accessibilityanalyzer.createHierarchyProto
+import team.itome.accessibilityanalyzer.createViewProto
+import team.itome.accessibilityanalyzer.toHierarchy
+
+class ClassHierarchyCacheTest {
+
+  private val classLoader = CountingClassLoader()
+  private val cache = ClassHierarchyCache(classLoader)
+
+  @Test
+  fun answersForLoadableClasses() {
+    assertEquals(true, cache.isSubclassOf("java.lang.Integer", Number::class.java))
+    assertEquals(true, cache.isSubclassOf("java.lang.Integer", Integer::class.java))
+    assertEquals(false, cache.isSubclassOf("java.lang.String", Number::class.java))
+    assertEquals(false, cache.isSubclassOf("java.lang.Object", Number::class.java))
+  }
+
+  @Test
+  fun answersForInterfaces() {
+    assertEquals(true, cache.isSubclassOf("java.lang.String", CharSequence::class.java))
+    assertEquals(true, cache.isSubclassOf("java.lang.StringBuilder", CharSequence::class.java))
+    assertEquals(false, cache.isSubclassOf("java.lang.Integer", CharSequence::class.java))
+    // Through a superclass
+    assertEquals(true, cache.isSubclassOf("java.lang.Integer", Serializable::class.java))
+  }
+
+  @Test
+  fun cannotAnswerForUnloadableClasses() {
+    for (reference in listOf(Any::class.java, CharSequence::class.java, Number::class.java)) {
+      assertNull(cache.isSubclassOf("android.widget.Button", reference), reference.name)
+    }
+  }
+
+  @Test
+  fun loadsEachClassOnce() {
+    for (reference in listOf(Any::class.java, CharSequence::class.java, Number::class.java)) {
+      repeat(3) {
+        cache.isSubclassOf("java.lang.String", reference)
+        cache.isSubclassOf("android.widget.Button", reference)
+      }
+    }
+
+    assertEquals(1, classLoader.loads["java.lang.String"])
+    // Failed loads are remembered as well
+    assertEquals(1, classLoader.loads["android.widget.Button"])
+  }
+
+  @Test
+  fun loadsNothingWithoutClassLoader() {
+    assertNull(ClassHierarchyCache(null).isSubclassOf("java.lang.String", CharSequence::class.java))
+  }
+
+  @Test
+  fun checksInstanceOfElementClass() {
+    val hierarchy = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 100, 100).setClassName("java.lang.String"),
+        createViewProto(1, 0, 0, 0, 50, 50).setClassName("android.widget.Button"),
+        createViewProto(2, 0, 50, 50, 100, 100).clearClassName()
+      )
+    ).toHierarchy()
+    val views = hierarchy.activeWindow.allViews
+
+    assertEquals(true, views[0].checkInstanceOf(CharSequence::class.java))
+    assertEquals(false, views[0].checkInstanceOf(Number::class.java))
+    assertNull(views[1].checkInstanceOf(Any::class.java))
+    assertNull(views[2].checkInstanceOf(Any::class.java))
+  }
+
+  /** Loads classes as the class loader of the cache does, counting requests for each name. */
+  private class CountingClassLoader :
+    ClassLoader(ClassHierarchyCache::class.java.classLoader) {
+
+    val loads = mutableMapOf<String, Int>()
+
+    override fun loadClass(name: String): Class<*> {
+      loads[name] = (loads[name] ?: 0) + 1
+      return super.loadClass(name)
+    }
+  }
+}
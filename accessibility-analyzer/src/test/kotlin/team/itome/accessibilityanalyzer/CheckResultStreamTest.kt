@@ -0,0 +1,94 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.proto.AccessibilityEvaluationProtos.AccessibilityHierarchyCheckResultProto
+import com.google.android.apps.common.testing.accessibility.framework.proto.AccessibilityEvaluationProtos.ResultTypeProto
+import java.io.ByteArrayOutputStream
+import java.io.File
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class CheckResultStreamTest {
+
+  private lateinit var file: File
+
+  @BeforeTest
+  fun setUp() {
+    file = File.createTempFile("results", ".pb")
+  }
+
+  @AfterTest
+  fun tearDown() {
+    file.delete()
+  }
+
+  @Test
+  fun readsBackWrittenRecordsInOrder() {
+    val results = (0 until 100).map { createResult(it) }
+    CheckResultStreamWriter(file).use { writer -> results.forEach { writer.write(it) } }
+
+    CheckResultStreamReader(file).use { reader -> assertEquals(results, reader.toList()) }
+  }
+
+  @Test
+  fun recordsAreNotVisibleUntilFlushed() {
+    CheckResultStreamWriter(file).use { writer ->
+      CheckResultStreamReader(file).use { reader ->
+        writer.write(createResult(0))
+        assertNull(reader.read())
+
+        writer.flush()
+        assertEquals(createResult(0), reader.read())
+        assertNull(reader.read())
+
+        writer.write(createResult(1))
+        writer.write(createResult(2))
+        writer.flush()
+        assertEquals(listOf(createResult(1), createResult(2)), reader.toList())
+      }
+    }
+  }
+
+  @Test
+  fun partlyWrittenRecordIsReadOnceComplete() {
+    val bytes = ByteArrayOutputStream().also { output ->
+      createResult(0).writeDelimitedTo(output)
+      createResult(1).writeDelimitedTo(output)
+    }.toByteArray()
+    val firstSize = createResult(0).serializedSize + 1
+
+    CheckResultStreamReader(file).use { reader ->
+      // Stop within the length of the second record, and then within its body
+      file.writeBytes(bytes.copyOfRange(0, firstSize))
+      assertEquals(createResult(0), reader.read())
+      assertNull(reader.read())
+
+      file.appendBytes(bytes.copyOfRange(firstSize, firstSize + 3))
+      assertNull(reader.read())
+      assertNull(reader.read())
+
+      file.appendBytes(bytes.copyOfRange(firstSize + 3, bytes.size))
+      assertEquals(createResult(1), reader.read())
+      assertNull(reader.read())
+    }
+  }
+
+  @Test
+  fun writerReplacesEarlierRun() {
+    CheckResultStreamWriter(file).use { writer -> (0 until 5).forEach { writer.write(createResult(it)) } }
+    CheckResultStreamWriter(file).use { writer -> writer.write(createResult(5)) }
+
+    CheckResultStreamReader(file).use { reader -> assertEquals(listOf(createResult(5)), reader.toList()) }
+  }
+
+  private fun createResult(id: Int): AccessibilityHierarchyCheckResultProto =
+    AccessibilityHierarchyCheckResultProto.newBuilder()
+      .setSourceCheckClass("com.example.Check$id")
+      .setResultId(id)
+      .setResultType(ResultTypeProto.ERROR)
+      .setHierarchySourceId(id * 31L)
+      .setMessage("x".repeat(id * 7))
+      .build()
+}
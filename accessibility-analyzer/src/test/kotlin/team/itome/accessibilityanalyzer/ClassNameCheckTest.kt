@@ -0,0 +1,92 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.putCustomizedUiPackageNamesInMetadata
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.checks.ClassNameCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.ClassNameCheck.KEY_ACCESSIBILITY_CLASS_NAME
+import com.google.android.apps.common.testing.accessibility.framework.checks.ClassNameCheck.RESULT_ID_CLASS_NAME_NOT_SUPPORTED
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class ClassNameCheckTest {
+
+  companion object {
+    private val CLASS_NAMES = listOf(
+      "android.widget.FrameLayout",
+      "android.widget.Button",
+      "androidx.recyclerview.widget.RecyclerView",
+      "com.example.widget.Chart",
+      "com.example.widgets.Gauge",
+      "org.example.Map"
+    )
+  }
+
+  private val check = ClassNameCheck()
+
+  private val hierarchy = createHierarchyProto(
+    CLASS_NAMES.mapIndexed { id, className ->
+      createViewProto(id, if (id == 0) -1 else 0, 0, 0, 100, 100)
+        .setClassName(className)
+        .setAccessibilityClassName(className)
+    }
+  ).toHierarchy()
+
+  @Test
+  fun reportsClassesOutsideAndroidPackages() {
+    assertEquals(
+      listOf("com.example.widget.Chart", "com.example.widgets.Gauge", "org.example.Map"),
+      findUnsupportedClassNames(null)
+    )
+    assertEquals(
+      listOf("com.example.widget.Chart", "com.example.widgets.Gauge", "org.example.Map"),
+      findUnsupportedClassNames(Metadata())
+    )
+  }
+
+  @Test
+  fun acceptsCustomizedPackages() {
+    assertEquals(
+      listOf("com.example.widgets.Gauge", "org.example.Map"),
+      findUnsupportedClassNames(createMetadata("com.example.widget."))
+    )
+    assertEquals(listOf("org.example.Map"), findUnsupportedClassNames(createMetadata("com.example")))
+    assertEquals(
+      emptyList(),
+      findUnsupportedClassNames(createMetadata("org.example", "com.example.widget"))
+    )
+  }
+
+  @Test
+  fun followsChangesToCustomizedPackages() {
+    // Each run uses the packages of its own metadata, whatever the check compiled for earlier runs
+    val metadatas = listOf(
+      createMetadata("com.example"),
+      createMetadata("org.example"),
+      null,
+      createMetadata("org.example"),
+      createMetadata("com.example", "org.example")
+    )
+
+    assertEquals(
+      listOf(
+        listOf("org.example.Map"),
+        listOf("com.example.widget.Chart", "com.example.widgets.Gauge"),
+        listOf("com.example.widget.Chart", "com.example.widgets.Gauge", "org.example.Map"),
+        listOf("com.example.widget.Chart", "com.example.widgets.Gauge"),
+        emptyList()
+      ),
+      metadatas.map { findUnsupportedClassNames(it) }
+    )
+  }
+
+  private fun createMetadata(vararg packageNames: String) =
+    Metadata().also { putCustomizedUiPackageNamesInMetadata(packageNames.toList(), it) }
+
+  private fun findUnsupportedClassNames(metadata: Metadata?) =
+    check.runCheckOnHierarchy(hierarchy, null, metadata).map {
+      assertEquals(AccessibilityCheckResultType.WARNING, it.type)
+      assertEquals(RESULT_ID_CLASS_NAME_NOT_SUPPORTED, it.resultId)
+      it.metadata!!.getString(KEY_ACCESSIBILITY_CLASS_NAME)
+    }
+}
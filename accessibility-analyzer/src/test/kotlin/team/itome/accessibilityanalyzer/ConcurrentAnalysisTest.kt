@@ -0,0 +1,144 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckPreset
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckRunner
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.ViewHierarchyElementUtils
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.common.util.concurrent.MoreExecutors
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+/**
+ * Stress tests for sharing a built [AccessibilityHierarchy] between threads, as when its checks run
+ * concurrently. Each test races many threads on a freshly built hierarchy, so that they also race
+ * to initialize its lazily computed caches, and compares what they see with a sequential run.
+ */
+class ConcurrentAnalysisTest {
+
+  companion object {
+    private const val THREADS = 8
+    private const val SEEDS = 8
+    private const val VIEWS = 400
+    private const val ROUNDS = 4
+  }
+
+  private val checks =
+    AccessibilityCheckPreset.getAccessibilityHierarchyChecksForPreset(AccessibilityCheckPreset.LATEST)
+
+  private lateinit var pool: ExecutorService
+
+  @BeforeTest
+  fun setUp() {
+    pool = Executors.newFixedThreadPool(THREADS)
+  }
+
+  @AfterTest
+  fun tearDown() {
+    pool.shutdownNow()
+    pool.awaitTermination(10, TimeUnit.SECONDS)
+  }
+
+  @Test
+  fun concurrentChecksMatchSequentialChecks() {
+    for (seed in 0 until SEEDS) {
+      val proto = createRandomHierarchyProto(seed.toLong(), VIEWS)
+      val expected = runSequentially(AccessibilityHierarchy.newBuilder(proto).build())
+
+      val actual = AccessibilityHierarchyCheckRunner.runChecks(
+        checks,
+        AccessibilityHierarchy.newBuilder(proto).build(),
+        null,
+        Metadata(),
+        pool
+      )
+
+      assertEquals(expected, actual.toProtoStrings(), "seed $seed")
+    }
+  }
+
+  @Test
+  fun checksRacingOnOneHierarchySeeTheSameResults() {
+    for (seed in 0 until SEEDS) {
+      val proto = createRandomHierarchyProto(seed.toLong(), VIEWS)
+      val expected = runSequentially(AccessibilityHierarchy.newBuilder(proto).build())
+      val shared = AccessibilityHierarchy.newBuilder(proto).build()
+
+      raceOn { assertEquals(expected, runSequentially(shared), "seed $seed") }
+    }
+  }
+
+  @Test
+  fun lazilyComputedValuesAgreeAcrossThreads() {
+    for (seed in 0 until SEEDS) {
+      val proto = createRandomHierarchyProto(seed.toLong(), VIEWS)
+      val expected = describeLazyValues(AccessibilityHierarchy.newBuilder(proto).build())
+      val shared = AccessibilityHierarchy.newBuilder(proto).build()
+
+      raceOn { assertEquals(expected, describeLazyValues(shared), "seed $seed") }
+    }
+  }
+
+  @Test
+  fun builtHierarchyCannotBeModified() {
+    val hierarchy = AccessibilityHierarchy.newBuilder(createRandomHierarchyProto(0, VIEWS)).build()
+    val window = hierarchy.activeWindow
+    val root = window.rootView!!
+
+    assertFailsWith<UnsupportedOperationException> {
+      (hierarchy.allWindows as MutableCollection).clear()
+    }
+    assertFailsWith<UnsupportedOperationException> {
+      (window.allViews as MutableList).removeAt(0)
+    }
+    assertFailsWith<UnsupportedOperationException> {
+      (root.selfAndAllDescendants as MutableList).clear()
+    }
+  }
+
+  private fun runSequentially(hierarchy: AccessibilityHierarchy): List<String> =
+    AccessibilityHierarchyCheckRunner.runChecks(
+      checks,
+      hierarchy,
+      null,
+      Metadata(),
+      MoreExecutors.directExecutor()
+    ).toProtoStrings()
+
+  /** Runs [task] on every thread of the pool at once, [ROUNDS] times each, rethrowing any failure. */
+  private fun raceOn(task: () -> Unit) {
+    val start = CountDownLatch(1)
+    val futures = (0 until THREADS * ROUNDS).map {
+      pool.submit(Callable {
+        start.await()
+        task()
+      })
+    }
+    start.countDown()
+    futures.forEach { it.get(60, TimeUnit.SECONDS) }
+  }
+
+  /** Returns a description of every value the hierarchy computes on first use. */
+  private fun describeLazyValues(hierarchy: AccessibilityHierarchy): List<String> {
+    return hierarchy.activeWindow.allViews.map { view ->
+      listOf(
+        view.boundsInScreen,
+        ViewHierarchyElementUtils.shouldFocusView(view),
+        ViewHierarchyElementUtils.getSpeakableTextForElement(view),
+        view.text?.spans?.map { it.toProto() },
+        view.selfAndAllDescendants.size
+      ).joinToString()
+    }
+  }
+
+  private fun List<AccessibilityHierarchyCheckResult>.toProtoStrings() = map { it.toProto().toString() }
+}
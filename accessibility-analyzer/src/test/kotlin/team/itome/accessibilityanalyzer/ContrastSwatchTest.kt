@@ -0,0 +1,166 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatch
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastUtils
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image
+import java.util.concurrent.Executors
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+class ContrastSwatchTest {
+
+  private val bounds = Rect(0, 0, 100, 100)
+
+  @Test
+  fun separatesBlackFromWhite() {
+    // White sums to the full luminance scale, and so falls in the last bin of the histogram
+    val swatch = process(createCapture(bounds, WHITE, Rect(10, 10, 40, 40) to BLACK))
+
+    assertEquals(WHITE, swatch.backgroundColor)
+    assertEquals(BLACK, swatch.foregroundColor)
+    assertEquals("21.00", "%.2f".format(swatch.contrastRatio))
+    assertFalse(swatch.isUniform)
+  }
+
+  @Test
+  fun separatesEveryGrayFromItsInverse() {
+    // Grays from black to white reach the first and last bins and most of those between
+    val swatch = ContrastSwatch()
+    for (level in 0..255) {
+      val background = gray(level)
+      val foreground = gray(255 - level)
+      swatch.process(createCapture(bounds, background, Rect(0, 0, 100, 40) to foreground), bounds)
+
+      assertEquals(background, swatch.backgroundColor, "level $level")
+      assertEquals(foreground, swatch.foregroundColor, "level $level")
+      assertEquals(
+        ContrastUtils.calculateContrastRatioOfColors(foreground, background),
+        swatch.contrastRatio,
+        "level $level"
+      )
+    }
+  }
+
+  @Test
+  fun countsColorsOfNearlyEqualLuminanceTogether() {
+    // Neither black nor the blue next to it covers as much as white, but together they cover more
+    val swatch = process(
+      createCapture(
+        bounds,
+        WHITE,
+        Rect(0, 0, 100, 30) to BLACK,
+        Rect(0, 30, 100, 60) to 0xFF000001.toInt()
+      )
+    )
+
+    assertEquals(BLACK, swatch.backgroundColor)
+    assertEquals(WHITE, swatch.foregroundColor)
+    // And a region of only those two is no more than one luminance
+    val nearlyBlack = createCapture(bounds, BLACK, Rect(0, 0, 50, 50) to 0xFF000001.toInt())
+    assertTrue(process(nearlyBlack).isUniform)
+  }
+
+  @Test
+  fun choosesForegroundDistinctFromBackground() {
+    // The near-white edges of the text are more common than the text, but hardly differ from white
+    val swatch = process(
+      createCapture(
+        bounds,
+        WHITE,
+        Rect(0, 0, 100, 25) to NEAR_WHITE,
+        Rect(0, 25, 100, 40) to GRAY_88
+      )
+    )
+
+    assertEquals(WHITE, swatch.backgroundColor)
+    assertEquals(GRAY_88, swatch.foregroundColor)
+    assertEquals(ContrastUtils.calculateContrastRatioOfColors(GRAY_88, WHITE), swatch.contrastRatio)
+  }
+
+  @Test
+  fun choosesMostCommonOtherColorWhenNoneIsDistinct() {
+    val swatch = process(createCapture(bounds, WHITE, Rect(0, 0, 100, 30) to NEAR_WHITE))
+
+    assertEquals(WHITE, swatch.backgroundColor)
+    assertEquals(NEAR_WHITE, swatch.foregroundColor)
+    assertTrue(swatch.contrastRatio < 1.1)
+    assertFalse(swatch.isUniform)
+  }
+
+  @Test
+  fun reportsUniformRegion() {
+    val swatch = process(createCapture(bounds, GRAY_88))
+
+    assertTrue(swatch.isUniform)
+    assertEquals(GRAY_88, swatch.backgroundColor)
+    assertEquals(GRAY_88, swatch.foregroundColor)
+    assertEquals(1.0, swatch.contrastRatio)
+  }
+
+  @Test
+  fun samplesOnlyRegionOfCaptureOfPartOfScreen() {
+    // A capture of part of the screen, addressed in screen coordinates, black around the region
+    val capture = createCapture(
+      Rect(50, 50, 150, 150),
+      BLACK,
+      Rect(60, 60, 100, 100) to WHITE,
+      Rect(70, 70, 80, 80) to GRAY_88
+    )
+    val swatch = ContrastSwatch()
+    swatch.process(capture, Rect(60, 60, 100, 100))
+
+    assertEquals(WHITE, swatch.backgroundColor)
+    assertEquals(GRAY_88, swatch.foregroundColor)
+
+    // The counts of the previous region are cleared
+    swatch.process(capture, Rect(120, 120, 150, 150))
+    assertTrue(swatch.isUniform)
+    assertEquals(BLACK, swatch.backgroundColor)
+  }
+
+  @Test
+  fun rejectsRegionNotWithinCapture() {
+    val capture = createCapture(Rect(50, 50, 150, 150), WHITE)
+    val swatch = ContrastSwatch()
+
+    for (region in listOf(Rect(40, 60, 100, 100), Rect(60, 60, 151, 100), Rect(60, 60, 60, 100))) {
+      assertFailsWith<IllegalArgumentException>(region.toString()) {
+        swatch.process(capture, region)
+      }
+    }
+    assertFailsWith<IllegalStateException> { swatch.backgroundColor }
+  }
+
+  @Test
+  fun confinesSharedSwatchToThread() {
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      assertSame(ContrastSwatch.forCurrentThread(), ContrastSwatch.forCurrentThread())
+      assertNotSame(
+        ContrastSwatch.forCurrentThread(),
+        executor.submit<ContrastSwatch> { ContrastSwatch.forCurrentThread() }.get()
+      )
+    } finally {
+      executor.shutdown()
+    }
+  }
+
+  private fun process(capture: Image) =
+    ContrastSwatch().apply { process(capture, capture.bounds) }
+
+  private fun gray(level: Int) = (0xFF shl 24) or (level shl 16) or (level shl 8) or level
+
+  private companion object {
+    const val WHITE = 0xFFFFFFFF.toInt()
+    const val BLACK = 0xFF000000.toInt()
+    const val GRAY_88 = 0xFF888888.toInt()
+    /** Contrasts with white by 1.06, too little to be told apart from it. */
+    const val NEAR_WHITE = 0xFFF8F8F8.toInt()
+  }
+}
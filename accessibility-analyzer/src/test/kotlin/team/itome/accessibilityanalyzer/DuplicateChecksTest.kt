@@ -0,0 +1,284 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.ResultMetadata
+import com.google.android.apps.common.testing.accessibility.framework.ViewHierarchyElementUtils
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.KEY_CONFLICTING_LOCATION_BOTTOM
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.KEY_CONFLICTING_LOCATION_LEFT
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.KEY_CONFLICTING_LOCATION_RIGHT
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.KEY_CONFLICTING_LOCATION_TOP
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.KEY_CONFLICTS_BECAUSE_CLICKABLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.KEY_CONFLICTS_BECAUSE_LONG_CLICKABLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateClickableBoundsCheck.RESULT_ID_SAME_BOUNDS
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateSpeakableTextCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateSpeakableTextCheck.KEY_SPEAKABLE_TEXT
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateSpeakableTextCheck.RESULT_ID_CLICKABLE_SAME_SPEAKABLE_TEXT
+import com.google.android.apps.common.testing.accessibility.framework.checks.DuplicateSpeakableTextCheck.RESULT_ID_NON_CLICKABLE_SAME_SPEAKABLE_TEXT
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.CharSequenceProto
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+/**
+ * Compares [DuplicateClickableBoundsCheck] and [DuplicateSpeakableTextCheck] with the grouping by
+ * `HashMap` they replaced, which is kept here as the reference.
+ */
+class DuplicateChecksTest {
+
+  @Test
+  fun matchesHashMapGroupingOnRandomHierarchies() {
+    for (seed in 0L until 20L) {
+      // A view labeled by its ancestor has speakable text of unbounded length
+      val proto = createRandomHierarchyProto(seed, 300).toBuilder()
+      val window = proto.getWindows(0).toBuilder()
+      for (index in 0 until window.viewsCount) {
+        window.setViews(index, window.getViews(index).toBuilder().clearLabeledById())
+      }
+      proto.setWindows(0, window)
+      assertMatchesReference(proto.build().toHierarchy(), "seed $seed")
+    }
+  }
+
+  @Test
+  fun groupsTextWithEqualHashes() {
+    // "Aa" and "BB" have equal hashes, and so do all texts made of them
+    val texts = listOf("AaAa", "AaBB", "BBAa", "BBBB", "AaAa", "BBBB", " BBBB\n", "AaBB")
+    val hierarchy = createHierarchyProto(
+      listOf(createViewProto(0, -1, 0, 0, 1000, 1000)) +
+        texts.mapIndexed { index, text ->
+          createViewProto(index + 1, 0, 0, index * 100, 1000, index * 100 + 100)
+            .setText(createText(text))
+            .setClickable(index % 3 == 0)
+        }
+    ).toHierarchy()
+    val results = DuplicateSpeakableTextCheck().runCheckOnHierarchy(hierarchy, null, null)
+
+    assertEquals(
+      setOf("AaAa", "AaBB", "BBBB"),
+      results.map { it.metadata!!.getString(KEY_SPEAKABLE_TEXT) }.toSet()
+    )
+    assertMatchesReference(hierarchy, "equal hashes")
+  }
+
+  @Test
+  fun ignoresEmptyText() {
+    val hierarchy = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 1000, 1000),
+        createViewProto(1, 0, 0, 0, 500, 100).setText(createText("")).setClickable(true),
+        createViewProto(2, 0, 0, 100, 500, 200).setText(createText("")).setClickable(true),
+        createViewProto(3, 0, 0, 200, 500, 300).setText(createText(" \t\n")).setClickable(true),
+        createViewProto(4, 0, 0, 300, 500, 400).setText(createText(" ")),
+        createViewProto(5, 0, 0, 400, 500, 500).setText(createText(" OK")),
+        createViewProto(6, 0, 0, 500, 500, 600).setText(createText("OK "))
+      )
+    ).toHierarchy()
+    val results = DuplicateSpeakableTextCheck().runCheckOnHierarchy(hierarchy, null, null)
+
+    val result = results.single()
+    assertEquals(AccessibilityCheckResultType.INFO, result.type)
+    assertEquals(RESULT_ID_NON_CLICKABLE_SAME_SPEAKABLE_TEXT, result.resultId)
+    assertEquals(5, result.element!!.id)
+    assertEquals("OK", result.metadata!!.getString(KEY_SPEAKABLE_TEXT))
+    assertMatchesReference(hierarchy, "empty text")
+  }
+
+  @Test
+  fun groupsBoundsByAnySharedAction() {
+    val hierarchy = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 1000, 1000),
+        // A long-clickable view starts a second group, which the view with both actions does not
+        // join, as it shares an action with the first group
+        createViewProto(1, 0, 0, 0, 100, 100).setClickable(true),
+        createViewProto(2, 0, 0, 0, 100, 100).setLongClickable(true),
+        createViewProto(3, 0, 0, 0, 100, 100).setClickable(true).setLongClickable(true),
+        createViewProto(4, 0, 0, 0, 100, 100).setLongClickable(true),
+        // Views without bounds share the empty bounds
+        createViewProto(5, 0, 0, 0, 0, 0).clearBoundsInScreen().setClickable(true),
+        createViewProto(6, 0, 0, 0, 0, 0).clearBoundsInScreen().setClickable(true),
+        createViewProto(7, 0, 0, 0, 0, 0).setClickable(true),
+        // Not visible, not important, or not actionable
+        createViewProto(8, 0, 0, 0, 100, 100).setClickable(true).setVisibleToUser(false),
+        createViewProto(9, 0, 0, 0, 100, 100)
+          .setClickable(true)
+          .setImportantForAccessibility(false),
+        createViewProto(10, 0, 0, 0, 100, 100)
+      )
+    ).toHierarchy()
+    val results = DuplicateClickableBoundsCheck().runCheckOnHierarchy(hierarchy, null, null)
+
+    assertEquals(
+      listOf(1 to 1, 2 to 1, 5 to 2),
+      results.map { it.element!!.id to it.metadata!!.getInt(KEY_CONFLICTING_VIEW_COUNT) }
+    )
+    assertTrue(results.all { it.resultId == RESULT_ID_SAME_BOUNDS })
+    assertMatchesReference(hierarchy, "shared actions")
+  }
+
+  @Test
+  fun groupsManyBoundsInSmallTable() {
+    // Many distinct bounds, each shared by a few views, in a table with many collisions
+    val views = mutableListOf(createViewProto(0, -1, 0, 0, 1000, 1000))
+    for (id in 1..200) {
+      val offset = id % 67
+      views.add(
+        createViewProto(id, 0, offset, offset * 2, offset + 10, offset * 2 + 10)
+          .setClickable(id % 2 == 0)
+          .setLongClickable(id % 5 == 0)
+          .setText(createText("Item ${id % 53}"))
+      )
+    }
+    assertMatchesReference(createHierarchyProto(views).toHierarchy(), "small table")
+  }
+
+  /**
+   * Asserts that both checks report what the grouping by `HashMap` did, for the full hierarchy
+   * and for a few subtrees. Results are compared regardless of order, as the reference reports
+   * groups in the iteration order of its map.
+   */
+  private fun assertMatchesReference(hierarchy: AccessibilityHierarchy, message: String) {
+    val views = hierarchy.activeWindow.allViews
+    val roots = listOf(null, views[0]) + views.filterIndexed { index, _ -> index % 37 == 1 }
+    for (fromRoot in roots) {
+      val at = "$message from ${fromRoot?.id}"
+      assertEquals(
+        summarize(referenceDuplicateBounds(hierarchy, fromRoot)),
+        summarize(DuplicateClickableBoundsCheck().runCheckOnHierarchy(hierarchy, fromRoot, null)),
+        at
+      )
+      assertEquals(
+        summarize(referenceDuplicateText(hierarchy, fromRoot)),
+        summarize(DuplicateSpeakableTextCheck().runCheckOnHierarchy(hierarchy, fromRoot, null)),
+        at
+      )
+    }
+  }
+
+  private fun summarize(results: List<AccessibilityHierarchyCheckResult>) =
+    results
+      .map { ResultSummary(it.element!!.id, it.type, it.resultId, it.metadata) }
+      .sortedWith(compareBy({ it.elementId }, { it.resultId }))
+
+  /** Reports duplicate clickable bounds as the check did when grouping by `HashMap`. */
+  private fun referenceDuplicateBounds(
+    hierarchy: AccessibilityHierarchy,
+    fromRoot: ViewHierarchyElement?
+  ): List<AccessibilityHierarchyCheckResult> {
+    val groups = HashMap<LocationAction, MutableList<ViewHierarchyElement>>()
+    for (view in hierarchy.activeWindow.allViews) {
+      if ((view.isVisibleToUser == true) &&
+        view.isImportantForAccessibility &&
+        (view.isClickable || view.isLongClickable)
+      ) {
+        val key = LocationAction(view.boundsInScreen, view.isClickable, view.isLongClickable)
+        groups.getOrPut(key) { ArrayList() }.add(view)
+      }
+    }
+
+    val viewsToEval = fromRoot?.selfAndAllDescendants
+    val results = ArrayList<AccessibilityHierarchyCheckResult>()
+    for (elements in groups.values.filter { it.size >= 2 }) {
+      val culprit = elements.firstOrNull { (viewsToEval == null) || viewsToEval.contains(it) }
+        ?: continue
+      val metadata = Metadata()
+      metadata.putBoolean(KEY_CONFLICTS_BECAUSE_CLICKABLE, culprit.isClickable)
+      metadata.putBoolean(KEY_CONFLICTS_BECAUSE_LONG_CLICKABLE, culprit.isLongClickable)
+      metadata.putInt(DuplicateClickableBoundsCheck.KEY_CONFLICTING_VIEW_COUNT, elements.size - 1)
+      val bounds = culprit.boundsInScreen
+      metadata.putInt(KEY_CONFLICTING_LOCATION_LEFT, bounds.left)
+      metadata.putInt(KEY_CONFLICTING_LOCATION_TOP, bounds.top)
+      metadata.putInt(KEY_CONFLICTING_LOCATION_RIGHT, bounds.right)
+      metadata.putInt(KEY_CONFLICTING_LOCATION_BOTTOM, bounds.bottom)
+      results.add(
+        AccessibilityHierarchyCheckResult(
+          DuplicateClickableBoundsCheck::class.java,
+          AccessibilityCheckResultType.ERROR,
+          culprit,
+          RESULT_ID_SAME_BOUNDS,
+          metadata
+        )
+      )
+    }
+    return results
+  }
+
+  /** Reports duplicate speakable text as the check did when grouping by `HashMap`. */
+  private fun referenceDuplicateText(
+    hierarchy: AccessibilityHierarchy,
+    fromRoot: ViewHierarchyElement?
+  ): List<AccessibilityHierarchyCheckResult> {
+    val groups = HashMap<String, MutableList<ViewHierarchyElement>>()
+    for (view in hierarchy.activeWindow.allViews) {
+      if (!ViewHierarchyElementUtils.shouldFocusView(view)) {
+        continue
+      }
+      val text = ViewHierarchyElementUtils.getSpeakableTextForElement(view).toString().trim()
+      if (text.isNotEmpty()) {
+        groups.getOrPut(text) { ArrayList() }.add(view)
+      }
+    }
+
+    val viewsToEval = fromRoot?.selfAndAllDescendants
+    val results = ArrayList<AccessibilityHierarchyCheckResult>()
+    for ((text, elements) in groups.filterValues { it.size >= 2 }) {
+      val inScope = elements.filter { (viewsToEval == null) || viewsToEval.contains(it) }
+      val (clickable, nonClickable) = inScope.partition { it.isClickable }
+      val culprit = clickable.firstOrNull() ?: nonClickable.firstOrNull() ?: continue
+      val metadata = Metadata()
+      metadata.putString(KEY_SPEAKABLE_TEXT, text)
+      metadata.putInt(DuplicateSpeakableTextCheck.KEY_CONFLICTING_VIEW_COUNT, inScope.size - 1)
+      results.add(
+        AccessibilityHierarchyCheckResult(
+          DuplicateSpeakableTextCheck::class.java,
+          if (clickable.isEmpty()) {
+            AccessibilityCheckResultType.INFO
+          } else {
+            AccessibilityCheckResultType.WARNING
+          },
+          culprit,
+          if (clickable.isEmpty()) {
+            RESULT_ID_NON_CLICKABLE_SAME_SPEAKABLE_TEXT
+          } else {
+            RESULT_ID_CLICKABLE_SAME_SPEAKABLE_TEXT
+          },
+          metadata
+        )
+      )
+    }
+    return results
+  }
+
+  private fun createText(text: String) = CharSequenceProto.newBuilder().setText(text)
+
+  private data class ResultSummary(
+    val elementId: Int,
+    val type: AccessibilityCheckResultType,
+    val resultId: Int,
+    val metadata: ResultMetadata?
+  )
+
+  /** Key of the `HashMap` grouping, equal for equal bounds sharing any action. */
+  private class LocationAction(
+    val bounds: Rect,
+    val clickable: Boolean,
+    val longClickable: Boolean
+  ) {
+    override fun hashCode() = bounds.hashCode()
+
+    override fun equals(other: Any?) =
+      (other is LocationAction) &&
+        (bounds == other.bounds) &&
+        ((clickable && other.clickable) || (longClickable && other.longClickable))
+  }
+
+  private companion object {
+    const val KEY_CONFLICTING_VIEW_COUNT = DuplicateClickableBoundsCheck.KEY_CONFLICTING_VIEW_COUNT
+  }
+}
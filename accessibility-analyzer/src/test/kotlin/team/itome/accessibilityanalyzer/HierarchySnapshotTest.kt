@@ -0,0 +1,218 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchySnapshot
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.AccessibilityHierarchyProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.CharSequenceProto
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.Channels
+import java.nio.file.Files
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+/**
+ * Checks that an [AccessibilityHierarchySnapshot] builds the hierarchy it was written from, that
+ * one which is corrupt or truncated fails to read rather than to build, and how [HierarchyLoader]
+ * keeps snapshots next to captures.
+ */
+class HierarchySnapshotTest {
+
+  private lateinit var dir: File
+
+  @BeforeTest
+  fun setUp() {
+    dir = Files.createTempDirectory("snapshots").toFile()
+  }
+
+  @AfterTest
+  fun tearDown() {
+    dir.deleteRecursively()
+  }
+
+  @Test
+  fun buildsHierarchyWrittenFrom() {
+    for (seed in 0 until 10) {
+      val proto = createTwoWindowHierarchyProto(seed.toLong(), 20 + seed * 30)
+      assertEquals(
+        proto.toHierarchy().toProto(),
+        readSnapshot(writeSnapshot(proto)).toProto(),
+        "seed $seed"
+      )
+    }
+  }
+
+  @Test
+  fun buildsViewsWithEveryFieldOrNone() {
+    val proto = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 1000, 1000)
+          .setResourceName("com.example.app:id/root")
+          .setText(CharSequenceProto.newBuilder().setText(""))
+          .setTextSize(14.5f)
+          .setTextColor(0xFF000000.toInt())
+          .setBackgroundDrawableColor(0xFFFFFFFF.toInt())
+          .setTypefaceStyle(2)
+          .setNonclippedHeight(1200)
+          .setNonclippedWidth(1000)
+          .setEditable(false)
+          .setCanScrollForward(true)
+          .setCanScrollBackward(false)
+          .setHasTouchDelegate(true)
+          .setLabeledById(1)
+          .setAccessibilityTraversalAfterId(-1),
+        // Only the fields every view has
+        ViewHierarchyElementProto.newBuilder().setId(1).setParentId(0),
+        // Numbered before its parent, so that the views are not in depth-first order
+        createViewProto(2, 3, 10, 10, 20, 20),
+        createViewProto(3, 0, 0, 0, 100, 100)
+      )
+    )
+
+    assertEquals(proto.toHierarchy().toProto(), readSnapshot(writeSnapshot(proto)).toProto())
+  }
+
+  @Test
+  fun truncatedSnapshotFailsToRead() {
+    val snapshot = writeSnapshot(createTwoWindowHierarchyProto(1, 30))
+    for (length in 0 until snapshot.size) {
+      assertFailsWith<IOException>("$length of ${snapshot.size} bytes") {
+        AccessibilityHierarchySnapshot.read(ByteBuffer.wrap(snapshot, 0, length))
+      }
+    }
+  }
+
+  @Test
+  fun corruptSnapshotFailsToReadOrBuilds() {
+    val proto = createTwoWindowHierarchyProto(2, 30)
+    val snapshot = writeSnapshot(proto)
+    var failures = 0
+    // Values just outside the ranges of ids, indices and offsets, and the extremes
+    val values = listOf(-2, -1, 30, 31, 1000, Int.MAX_VALUE, Int.MIN_VALUE)
+    for (offset in 0 until snapshot.size step 4) {
+      for (value in values) {
+        val corrupt = snapshot.copyOf()
+        ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value)
+        val read = try {
+          AccessibilityHierarchySnapshot.read(ByteBuffer.wrap(corrupt))
+        } catch (e: IOException) {
+          ++failures
+          continue
+        }
+        // Whatever was read must build, and refer only to views which exist
+        val hierarchy = AccessibilityHierarchy.newBuilder(read).build()
+        for (view in hierarchy.activeWindow.allViews) {
+          view.parentView
+          (0 until view.childViewCount).forEach { view.getChildView(it) }
+        }
+        hierarchy.toProto()
+      }
+    }
+    assertTrue(failures > 0)
+  }
+
+  @Test
+  fun loaderWritesSnapshotAndLoadsFromIt() {
+    val proto = createTwoWindowHierarchyProto(3, 50)
+    val capture = writeCapture(proto)
+    val snapshotFile = File(dir, "accessibility0.snapshot")
+
+    assertEquals(proto.toHierarchy().toProto(), HierarchyLoader.loadHierarchy(capture).toProto())
+    assertTrue(snapshotFile.exists())
+    val written = snapshotFile.readBytes()
+
+    assertEquals(proto.toHierarchy().toProto(), HierarchyLoader.loadHierarchy(capture).toProto())
+    assertTrue(written.contentEquals(snapshotFile.readBytes()))
+  }
+
+  @Test
+  fun loaderReplacesCorruptAndTruncatedSnapshots() {
+    val proto = createTwoWindowHierarchyProto(4, 50)
+    val capture = writeCapture(proto)
+    val snapshotFile = File(dir, "accessibility0.snapshot")
+    val snapshot = writeSnapshot(proto)
+    // A child id beyond the views of the first window, in a snapshot whole in length
+    val corrupt = snapshot.copyOf()
+    val childIdsOffset = findChildIdsOffset(snapshot)
+    assertEquals(proto.getWindows(0).getViews(0).getChildIds(0), getInt(snapshot, childIdsOffset))
+    ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(childIdsOffset, 1000)
+
+    for (damaged in listOf(corrupt, snapshot.copyOf(snapshot.size / 2), ByteArray(0))) {
+      snapshotFile.writeBytes(damaged)
+      snapshotFile.setLastModified(capture.lastModified() + 1000)
+
+      assertEquals(proto.toHierarchy().toProto(), HierarchyLoader.loadHierarchy(capture).toProto())
+      assertTrue(snapshot.contentEquals(snapshotFile.readBytes()))
+    }
+  }
+
+  @Test
+  fun loaderBuildsHierarchyWhenSnapshotCannotBeWritten() {
+    val proto = createTwoWindowHierarchyProto(5, 50)
+    val capture = writeCapture(proto)
+    // A directory which is not empty where the snapshot belongs, so that it can neither be read
+    // nor replaced, whatever the permissions of the user running the test
+    val snapshotFile = File(dir, "accessibility0.snapshot")
+    File(snapshotFile, "occupied").apply { parentFile.mkdirs() }.writeText("")
+
+    assertEquals(proto.toHierarchy().toProto(), HierarchyLoader.loadHierarchy(capture).toProto())
+    assertTrue(snapshotFile.isDirectory)
+    assertFalse(dir.listFiles()!!.any { it.name.endsWith(".tmp") })
+  }
+
+  /** Returns a hierarchy of two random windows, the second half the size of the first. */
+  private fun createTwoWindowHierarchyProto(seed: Long, viewCount: Int) =
+    createHierarchyProto(
+      listOf(viewCount, viewCount / 2).mapIndexed { windowId, count ->
+        createRandomHierarchyProto(seed * 2 + windowId, count).getWindows(0).viewsList.map {
+          it.toBuilder().clearChildIds()
+        }
+      }
+    )
+
+  /** Returns the offset in [snapshot] of the child ids of its first window. */
+  private fun findChildIdsOffset(snapshot: ByteArray): Int {
+    val buffer = ByteBuffer.wrap(snapshot).order(ByteOrder.LITTLE_ENDIAN)
+    // The header, with the count of strings at 8, and then the device state
+    val stringCount = buffer.getInt(8)
+    var offset = align(24 + buffer.getInt(20), 4)
+    // The string table
+    val charCount = buffer.getInt(offset + (stringCount * 4))
+    offset = align(align(offset + ((stringCount + 1) * 4) + (charCount * 2), 4), 8)
+    // The properties and counts of the first window, its parent ids and its child offsets
+    offset = align(offset + 4 + buffer.getInt(offset), 4)
+    val viewCount = buffer.getInt(offset)
+    return offset + 16 + (viewCount * 4) + ((viewCount + 1) * 4)
+  }
+
+  private fun getInt(snapshot: ByteArray, offset: Int) =
+    ByteBuffer.wrap(snapshot).order(ByteOrder.LITTLE_ENDIAN).getInt(offset)
+
+  private fun align(offset: Int, alignment: Int) = (offset + alignment - 1) / alignment * alignment
+
+  private fun writeCapture(proto: AccessibilityHierarchyProto): File {
+    val capture = File(dir, "accessibility0.meta")
+    capture.outputStream().use { proto.writeTo(it) }
+    return capture
+  }
+
+  private fun writeSnapshot(proto: AccessibilityHierarchyProto): ByteArray {
+    val output = ByteArrayOutputStream()
+    AccessibilityHierarchySnapshot.write(proto, Channels.newChannel(output))
+    return output.toByteArray()
+  }
+
+  private fun readSnapshot(snapshot: ByteArray): AccessibilityHierarchy {
+    val read = AccessibilityHierarchySnapshot.read(ByteBuffer.wrap(snapshot))
+    return AccessibilityHierarchy.newBuilder(read).build()
+  }
+}
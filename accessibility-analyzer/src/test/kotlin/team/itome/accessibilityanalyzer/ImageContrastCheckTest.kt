@@ -0,0 +1,194 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckPreset
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.KEY_BACKGROUND_COLOR
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.KEY_CONTRAST_RATIO
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.KEY_FOREGROUND_COLOR
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_CUSTOMIZED_IMAGE_CONTRAST_NOT_SUFFICIENT
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_NOT_IMAGEVIEW
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_NOT_VISIBLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_NO_SCREENCAPTURE
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_SCREENCAPTURE_DATA_HIDDEN
+import com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck.RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image
+import com.google.common.base.Supplier
+import java.util.Locale
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ImageContrastCheckTest {
+
+  private val check = ImageContrastCheck()
+
+  /** The bounds of the image view, and of the icon drawn within it. */
+  private val viewBounds = Rect(100, 100, 200, 200)
+  private val iconBounds = Rect(120, 120, 160, 160)
+  private val screen = Rect(0, 0, 400, 400)
+
+  @Test
+  fun passesSufficientContrastInCapture() {
+    assertTrue(runCheck(createImageHierarchy(), capture(BLACK)).isEmpty())
+    // Images need only the contrast of large text
+    assertTrue(runCheck(createImageHierarchy(), capture(GRAY_88)).isEmpty())
+  }
+
+  @Test
+  fun reportsInsufficientContrast() {
+    val result = runCheck(createImageHierarchy(), capture(GRAY_99)).single()
+
+    assertEquals(AccessibilityCheckResultType.WARNING, result.type)
+    assertEquals(RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT, result.resultId)
+    assertEquals(GRAY_99, result.metadata!!.getInt(KEY_FOREGROUND_COLOR))
+    assertEquals(WHITE, result.metadata!!.getInt(KEY_BACKGROUND_COLOR))
+    assertEquals("2.85", "%.2f".format(result.metadata!!.getDouble(KEY_CONTRAST_RATIO)))
+    val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+    listOf("2.85", "3.00", "#999999", "#FFFFFF").forEach {
+      assertTrue(message.contains(it), message)
+    }
+    assertEquals(
+      "Consider increasing the contrast ratio between this image's foreground and background.",
+      check.getShortMessageForResult(Locale.ENGLISH, result).toString()
+    )
+  }
+
+  @Test
+  fun reportsContrastBelowCustomizedRatio() {
+    val metadata = capture(GRAY_88)
+    metadata.putDouble(METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO, 4.0)
+    val result = runCheck(createImageHierarchy(), metadata).single()
+
+    assertEquals(AccessibilityCheckResultType.WARNING, result.type)
+    assertEquals(RESULT_ID_CUSTOMIZED_IMAGE_CONTRAST_NOT_SUFFICIENT, result.resultId)
+    val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+    listOf("3.54", "4.00", "#888888", "#FFFFFF").forEach {
+      assertTrue(message.contains(it), message)
+    }
+    assertTrue(message.contains("configured ratio"), message)
+
+    // A customized ratio may also be lower than the default
+    val lower = capture(GRAY_99)
+    lower.putDouble(METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO, 2.5)
+    assertTrue(runCheck(createImageHierarchy(), lower).isEmpty())
+  }
+
+  @Test
+  fun reportsCaptureShowingOnlyOneColor() {
+    val metadata = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureInMetadata(createCapture(screen, GRAY_88), metadata)
+    val result = runCheck(createImageHierarchy(), metadata).single()
+
+    assertEquals(AccessibilityCheckResultType.NOT_RUN, result.type)
+    assertEquals(RESULT_ID_SCREENCAPTURE_DATA_HIDDEN, result.resultId)
+  }
+
+  @Test
+  fun reportsViewPartlyOrWhollyOutsideCapture() {
+    // The view crosses the bottom edge of the first capture, and misses the second altogether
+    for (bounds in listOf(Rect(0, 0, 400, 150), Rect(0, 250, 400, 400))) {
+      val metadata = Metadata()
+      AccessibilityCheckMetadata.putScreenCaptureInMetadata(
+        createCapture(bounds, WHITE, iconBounds to BLACK),
+        metadata
+      )
+      val result = runCheck(createImageHierarchy(), metadata).single()
+
+      assertEquals(AccessibilityCheckResultType.NOT_RUN, result.type)
+      assertEquals(RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE, result.resultId)
+      val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+      assertTrue(message.contains(viewBounds.toShortString()), message)
+      assertTrue(message.contains(bounds.toShortString()), message)
+    }
+  }
+
+  @Test
+  fun reportsMissingCapture() {
+    val undecodable = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureSupplierInMetadata(
+      Supplier<Image> { null },
+      undecodable
+    )
+
+    for (metadata in listOf(null, Metadata(), undecodable)) {
+      val result = runCheck(createImageHierarchy(), metadata).single()
+      assertEquals(AccessibilityCheckResultType.NOT_RUN, result.type)
+      assertEquals(RESULT_ID_NO_SCREENCAPTURE, result.resultId)
+    }
+  }
+
+  @Test
+  fun samplesOnlyVisibleImageViews() {
+    val hierarchy = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 400, 400),
+        createImageViewProto(1),
+        createImageViewProto(2).setVisibleToUser(false)
+      )
+    ).toHierarchy()
+    val results = check.runCheckOnHierarchy(hierarchy, null, capture(GRAY_99))
+
+    assertEquals(
+      listOf(RESULT_ID_NOT_IMAGEVIEW, RESULT_ID_IMAGE_CONTRAST_NOT_SUFFICIENT, RESULT_ID_NOT_VISIBLE),
+      results.map { it.resultId }
+    )
+    assertEquals(viewBounds, check.getSampledRegion(hierarchy, null))
+  }
+
+  @Test
+  fun isRunOnlyByPrereleasePreset() {
+    for (preset in AccessibilityCheckPreset.values()) {
+      assertEquals(
+        preset == AccessibilityCheckPreset.PRERELEASE,
+        AccessibilityCheckPreset.getAccessibilityHierarchyChecksForPreset(preset)
+          .any { it is ImageContrastCheck },
+        preset.toString()
+      )
+    }
+  }
+
+  /** Returns the results of the check for the image view of [hierarchy]. */
+  private fun runCheck(
+    hierarchy: AccessibilityHierarchy,
+    metadata: Metadata?
+  ): List<AccessibilityHierarchyCheckResult> =
+    check.runCheckOnHierarchy(hierarchy, null, metadata).filter { it.element!!.id == 1 }
+
+  /** Returns metadata holding a capture of the icon drawn in [iconColor] on white. */
+  private fun capture(iconColor: Int): Metadata {
+    val metadata = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureInMetadata(
+      createCapture(screen, WHITE, iconBounds to iconColor),
+      metadata
+    )
+    return metadata
+  }
+
+  private fun createImageHierarchy(): AccessibilityHierarchy =
+    createHierarchyProto(
+      listOf(createViewProto(0, -1, 0, 0, 400, 400), createImageViewProto(1))
+    ).toHierarchy()
+
+  private fun createImageViewProto(id: Int): ViewHierarchyElementProto.Builder =
+    createViewProto(id, 0, viewBounds.left, viewBounds.top, viewBounds.right, viewBounds.bottom)
+      .setClassName("android.widget.ImageView")
+      .setAccessibilityClassName("android.widget.ImageView")
+
+  private companion object {
+    const val WHITE = 0xFFFFFFFF.toInt()
+    const val BLACK = 0xFF000000.toInt()
+    /** Contrasts with white by 3.54, enough for an image. */
+    const val GRAY_88 = 0xFF888888.toInt()
+    /** Contrasts with white by 2.85, too little for an image. */
+    const val GRAY_99 = 0xFF999999.toInt()
+  }
+}
@@ -0,0 +1,194 @@
+package team.itome.accessibilityanalyzer
+
+import java.awt.image.BufferedImage
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicReference
+import javax.imageio.ImageIO
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class MemoryBudgetTest {
+
+  companion object {
+    private const val CAPACITY = 100L
+    /** How long a reservation is given to show it is waiting, rather than granted. */
+    private const val WAIT_MILLIS = 200L
+    private const val TIMEOUT_SECONDS = 10L
+  }
+
+  private val budget = MemoryBudget(CAPACITY)
+  private lateinit var executor: ExecutorService
+  private lateinit var directory: File
+
+  @BeforeTest
+  fun setUp() {
+    executor = Executors.newCachedThreadPool()
+    directory = Files.createTempDirectory("memory-budget").toFile()
+  }
+
+  @AfterTest
+  fun tearDown() {
+    executor.shutdownNow()
+    executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    directory.deleteRecursively()
+  }
+
+  @Test
+  fun reservesWithoutWaitingWhileBytesAreFree() {
+    val first = budget.reserve(60)
+    val second = budget.reserve(40)
+    assertEquals(0, budget.available)
+
+    first.close()
+    second.close()
+    assertEquals(CAPACITY, budget.available)
+  }
+
+  @Test
+  fun waitsUntilEnoughBytesAreReleased() {
+    val held = budget.reserve(80)
+    val waiting = reserveAsync(50)
+    assertWaiting(waiting)
+
+    // Not yet enough: 40 of 50 free
+    held.release(20)
+    assertWaiting(waiting)
+
+    held.release(10)
+    waiting.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    assertEquals(0, budget.available)
+  }
+
+  @Test
+  fun releasesOnlyWhatIsHeld() {
+    val reservation = budget.reserve(30)
+    reservation.release(10)
+    reservation.release(-5)
+    assertEquals(80, budget.available)
+
+    reservation.release(1000)
+    reservation.close()
+    reservation.close()
+    assertEquals(CAPACITY, budget.available)
+  }
+
+  @Test
+  fun admitsReservationLargerThanWholeBudget() {
+    val reservation = reserveAsync(CAPACITY * 10).get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    assertEquals(0, budget.available)
+
+    reservation.close()
+    assertEquals(CAPACITY, budget.available)
+  }
+
+  @Test
+  fun admitsReservationLargerThanWholeBudgetOnceItIsAllFree() {
+    val held = budget.reserve(1)
+    val waiting = reserveAsync(CAPACITY * 10)
+    assertWaiting(waiting)
+
+    held.close()
+    waiting.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    assertEquals(0, budget.available)
+  }
+
+  @Test
+  fun stopsWaitingWhenInterrupted() {
+    budget.reserve(CAPACITY)
+    val thread = AtomicReference<Thread>()
+    val waiting = executor.submit<Any> {
+      thread.set(Thread.currentThread())
+      assertFailsWith<InterruptedException> { budget.reserve(1) }
+    }
+    assertWaiting(waiting)
+
+    thread.get().interrupt()
+    waiting.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    // Nothing was reserved by the interrupted wait
+    assertEquals(0, budget.available)
+  }
+
+  @Test
+  fun neverWaitsWhenUnlimited() {
+    val unlimited = MemoryBudget.unlimited()
+    unlimited.reserve(Long.MAX_VALUE / 2)
+    unlimited.reserve(Long.MAX_VALUE / 2)
+    assertEquals(1, unlimited.available)
+  }
+
+  @Test
+  fun rejectsCapacityBelowOne() {
+    assertFailsWith<IllegalArgumentException> { MemoryBudget(0) }
+  }
+
+  @Test
+  fun releasesWhenHierarchyFailsToLoad() {
+    // A length-delimited field longer than the rest of the file
+    val file = File(directory, "accessibility0.meta")
+    file.writeBytes(byteArrayOf(0x0A, 0x7F, 0x01))
+    val reservation = budget.reserve(HierarchyLoader.estimateHeapBytes(file))
+
+    assertFailsWith<IOException> {
+      reservation.closeOnFailure { HierarchyLoader.load(file) }
+    }
+    assertEquals(CAPACITY, budget.available)
+  }
+
+  @Test
+  fun releasesScreenshotWhenLoadingFails() {
+    val file = File(directory, "0.png")
+    ImageIO.write(BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", file)
+    val screenImage = ScreenImage(file)
+    val reservation = budget.reserve(screenImage.estimateHeapBytes())
+
+    assertFailsWith<IllegalStateException> {
+      reservation.closeOnFailure(screenImage) {
+        screenImage.getImage()
+        throw IllegalStateException("Failed after decoding")
+      }
+    }
+    assertEquals(CAPACITY, budget.available)
+    assertNull(screenImage.getImage())
+  }
+
+  @Test
+  fun keepsReservationWhenStageSucceeds() {
+    val reservation = budget.reserve(30)
+    assertEquals("loaded", reservation.closeOnFailure { "loaded" })
+    assertEquals(70, budget.available)
+  }
+
+  @Test
+  fun parsesSizes() {
+    assertEquals(512L, MemoryBudget.parseSize("512"))
+    assertEquals(10L shl 10, MemoryBudget.parseSize("10k"))
+    assertEquals(512L shl 20, MemoryBudget.parseSize("512m"))
+    assertEquals(2L shl 30, MemoryBudget.parseSize("2G"))
+    assertEquals(2L shl 30, MemoryBudget.parseSize(" 2gb "))
+    for (size in listOf("", "m", "-1m", "1.5g", "2t", "99999999999999999999", "9999999999g")) {
+      assertNull(MemoryBudget.parseSize(size), size)
+    }
+  }
+
+  private fun reserveAsync(bytes: Long): Future<MemoryBudget.Reservation> =
+    executor.submit<MemoryBudget.Reservation> { budget.reserve(bytes) }
+
+  private fun assertWaiting(future: Future<*>) {
+    assertFailsWith<TimeoutException> { future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS) }
+    assertFalse(future.isDone)
+    assertTrue(budget.available < CAPACITY)
+  }
+}
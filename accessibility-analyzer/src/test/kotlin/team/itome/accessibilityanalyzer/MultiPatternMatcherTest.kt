@@ -0,0 +1,89 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.utils.text.MultiPatternMatcher
+import com.google.common.base.Ascii
+import java.util.BitSet
+import java.util.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class MultiPatternMatcherTest {
+
+  @Test
+  fun findsOverlappingPatterns() {
+    val matcher = MultiPatternMatcher(listOf("he", "she", "his", "hers", "e"))
+
+    // "she" contains "he" and "e", and "hers" starts within it
+    assertEquals(setOf(0, 1, 3, 4), matcher.findAll("ushers").toSet())
+    assertEquals(setOf(0, 1, 2, 4), matcher.findAll("ahishe").toSet())
+    assertEquals(emptySet(), matcher.findAll("xyz").toSet())
+    assertEquals(emptySet(), matcher.findAll("").toSet())
+  }
+
+  @Test
+  fun followsFailureLinksAfterPartialMatches() {
+    val matcher = MultiPatternMatcher(listOf("abcx", "bcd", "cde", "aab"))
+
+    // Each match starts within a partial match of another pattern, which must be abandoned
+    assertEquals(setOf(1), matcher.findAll("abcd").toSet())
+    assertEquals(setOf(1, 2), matcher.findAll("abcde").toSet())
+    assertEquals(setOf(3), matcher.findAll("aaab").toSet())
+    assertEquals(setOf(0, 3), matcher.findAll("aabcx").toSet())
+    assertEquals(emptySet(), matcher.findAll("abcbcx").toSet())
+  }
+
+  @Test
+  fun ignoresOnlyAsciiCase() {
+    val matcher = MultiPatternMatcher(listOf("Button", "ÉTÉ"))
+
+    // Letters outside ASCII are kept as they are
+    assertEquals(listOf("button", "ÉtÉ"), matcher.patterns)
+    assertEquals(setOf(0), matcher.findAll("OK BUTTON").toSet())
+    assertEquals(setOf(0), matcher.findAll("okButton").toSet())
+    assertEquals(setOf(1), matcher.findAll("ÉTÉ").toSet())
+    assertEquals(emptySet(), matcher.findAll("Été").toSet())
+  }
+
+  @Test
+  fun reportsRepeatedPatternAtFirstIndex() {
+    val matcher = MultiPatternMatcher(listOf("view", "button", "VIEW"))
+
+    assertEquals(setOf(0, 1), matcher.findAll("Button view").toSet())
+  }
+
+  @Test
+  fun rejectsEmptyPattern() {
+    assertFailsWith<IllegalArgumentException> { MultiPatternMatcher(listOf("button", "")) }
+  }
+
+  @Test
+  fun matchesSearchForEachPattern() {
+    // A small alphabet, so that patterns often overlap and share prefixes and suffixes
+    val alphabet = "abAB"
+    for (seed in 0 until 200) {
+      val random = Random(seed.toLong())
+      val patterns = (0 until 1 + random.nextInt(10)).map { randomText(random, alphabet, 1, 5) }
+      val matcher = MultiPatternMatcher(patterns)
+      repeat(20) {
+        val text = randomText(random, alphabet, 0, 30)
+        val lowerText = Ascii.toLowerCase(text)
+        val lowerPatterns = patterns.map { Ascii.toLowerCase(it) }
+        val expected = lowerPatterns.indices
+          .filter {
+            lowerText.contains(lowerPatterns[it]) &&
+                (lowerPatterns.indexOf(lowerPatterns[it]) == it)
+          }
+          .toSet()
+        assertEquals(expected, matcher.findAll(text).toSet(), "$patterns in $text")
+      }
+    }
+  }
+
+  private fun randomText(random: Random, alphabet: String, minLength: Int, maxLength: Int) =
+    (0 until minLength + random.nextInt(maxLength - minLength + 1))
+      .map { alphabet[random.nextInt(alphabet.length)] }
+      .joinToString("")
+
+  private fun BitSet.toSet() = stream().toArray().toSet()
+}
@@ -0,0 +1,215 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckPreset
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult
+import com.google.android.apps.common.testing.accessibility.framework.checks.OverlappingTouchTargetCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.OverlappingTouchTargetCheck.KEY_OVERLAPPING_LOCATION_LEFT
+import com.google.android.apps.common.testing.accessibility.framework.checks.OverlappingTouchTargetCheck.KEY_OVERLAPPING_LOCATION_TOP
+import com.google.android.apps.common.testing.accessibility.framework.checks.OverlappingTouchTargetCheck.KEY_OVERLAPPING_VIEW_COUNT
+import com.google.android.apps.common.testing.accessibility.framework.checks.OverlappingTouchTargetCheck.RESULT_ID_OVERLAPPING_TOUCH_TARGET
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.AccessibilityHierarchyProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto
+import java.util.Locale
+import java.util.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class OverlappingTouchTargetCheckTest {
+
+  private val check = OverlappingTouchTargetCheck()
+
+  /*
+   * Actionable views of each kind of overlap, numbered:
+   *   1 and 2 partly overlap, as do 1 and 10, which is long-clickable rather than clickable
+   *   3 only touches the edge of 2
+   *   5 is nested within 4
+   *   6 and 7 have the same bounds
+   *   8 overlaps nothing
+   *   9 overlaps 1 and 2, but is not actionable
+   *   11 overlaps 8, but is not visible
+   */
+  private val hierarchy = createHierarchyProto(
+    listOf(
+      createViewProto(0, -1, 0, 0, 1000, 1000),
+      createViewProto(1, 0, 0, 0, 100, 100).setClickable(true),
+      createViewProto(2, 0, 50, 50, 150, 150).setClickable(true),
+      createViewProto(3, 0, 150, 0, 250, 100).setClickable(true),
+      createViewProto(4, 0, 300, 300, 500, 500).setClickable(true),
+      createViewProto(5, 4, 350, 350, 400, 400).setClickable(true),
+      createViewProto(6, 0, 600, 600, 700, 700).setClickable(true),
+      createViewProto(7, 0, 600, 600, 700, 700).setClickable(true),
+      createViewProto(8, 0, 800, 800, 900, 900).setClickable(true),
+      createViewProto(9, 0, 60, 60, 120, 120),
+      createViewProto(10, 0, 90, 0, 140, 40).setLongClickable(true),
+      createViewProto(11, 0, 850, 850, 950, 950).setClickable(true).setVisibleToUser(false)
+    )
+  ).toHierarchy()
+
+  @Test
+  fun reportsOnlyPartlyOverlappingActionableViews() {
+    val results = check.runCheckOnHierarchy(hierarchy, null, null)
+
+    assertEquals(listOf(1, 2, 10), results.map { it.element!!.id })
+    results.forEach {
+      assertEquals(AccessibilityCheckResultType.WARNING, it.type)
+      assertEquals(RESULT_ID_OVERLAPPING_TOUCH_TARGET, it.resultId)
+    }
+    // The first overlapping view reported is the first in depth-first order
+    assertEquals(listOf(2, 1, 1), results.map { it.metadata!!.getInt(KEY_OVERLAPPING_VIEW_COUNT) })
+    assertEquals(listOf(50, 0, 0), results.map { it.metadata!!.getInt(KEY_OVERLAPPING_LOCATION_LEFT) })
+    assertEquals(listOf(50, 0, 0), results.map { it.metadata!!.getInt(KEY_OVERLAPPING_LOCATION_TOP) })
+  }
+
+  @Test
+  fun reportsOnlyViewsWithinRoot() {
+    val root = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 1000, 1000),
+        createViewProto(1, 0, 0, 0, 500, 500),
+        createViewProto(2, 1, 0, 0, 100, 100).setClickable(true),
+        createViewProto(3, 0, 50, 50, 150, 150).setClickable(true)
+      )
+    ).toHierarchy().let { it to it.activeWindow.getViewById(1) }
+
+    // Views outside the root still count as overlapping those within it
+    val results = check.runCheckOnHierarchy(root.first, root.second, null)
+    assertEquals(listOf(2), results.map { it.element!!.id })
+    assertEquals(1, results[0].metadata!!.getInt(KEY_OVERLAPPING_VIEW_COUNT))
+  }
+
+  @Test
+  fun reportsNothingWithinRootOfAnotherWindow() {
+    val views = listOf(
+      createViewProto(0, -1, 0, 0, 1000, 1000),
+      createViewProto(1, 0, 0, 0, 100, 100).setClickable(true),
+      createViewProto(2, 0, 50, 50, 150, 150).setClickable(true)
+    )
+    val hierarchy = createHierarchyProto(
+      listOf(views, views.map { it.clone().clearChildIds() })
+    ).toHierarchy()
+    val otherRoot = hierarchy.getWindowById(1).getViewById(0)
+
+    val results = check.runCheckOnHierarchy(hierarchy, null, null)
+    assertEquals(listOf(1, 2), results.map { it.element!!.id })
+    assertTrue(check.runCheckOnHierarchy(hierarchy, otherRoot, null).isEmpty())
+  }
+
+  @Test
+  fun reportsNothingForFewerThanTwoActionableViews() {
+    val single = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 1000, 1000),
+        createViewProto(1, 0, 0, 0, 100, 100).setClickable(true),
+        createViewProto(2, 0, 50, 50, 150, 150)
+      )
+    ).toHierarchy()
+
+    assertTrue(check.runCheckOnHierarchy(single, null, null).isEmpty())
+  }
+
+  @Test
+  fun describesResult() {
+    val result = check.runCheckOnHierarchy(hierarchy, null, null).first()
+    val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+
+    assertTrue(message.contains("[0,0][100,100]"), message)
+    assertTrue(message.contains("overlaps 2 other actionable item(s)"), message)
+    assertTrue(message.contains("[50,50][150,150]"), message)
+    assertEquals(
+      "Overlapping touch targets",
+      AccessibilityCheckPreset.getHierarchyCheckForClass(OverlappingTouchTargetCheck::class.java)
+        .getTitleMessage(Locale.ENGLISH)
+    )
+  }
+
+  @Test
+  fun matchesPairwiseComparison() {
+    for (seed in 0 until 20) {
+      val hierarchy = createRandomHierarchyProto(seed.toLong(), 50 + seed * 20).toHierarchy()
+      assertEquals(
+        findOverlapsPairwise(hierarchy),
+        check.runCheckOnHierarchy(hierarchy, null, null).map { it.describe() },
+        "seed $seed"
+      )
+    }
+  }
+
+  @Test
+  fun matchesPairwiseComparisonWhenNotDepthFirst() {
+    for (seed in 0 until 20) {
+      val proto = createRandomHierarchyProto(seed.toLong(), 50 + seed * 20)
+      val hierarchy = renumber(proto, seed.toLong())
+      assertEquals(
+        findOverlapsPairwise(hierarchy),
+        check.runCheckOnHierarchy(hierarchy, null, null).map { it.describe() },
+        "seed $seed"
+      )
+      // Every view still lies within the root of the window
+      val root = hierarchy.activeWindow.allViews.single { it.parentView == null }
+      assertEquals(
+        check.runCheckOnHierarchy(hierarchy, null, null).map { it.describe() },
+        check.runCheckOnHierarchy(hierarchy, root, null).map { it.describe() },
+        "seed $seed"
+      )
+    }
+  }
+
+  /** Returns the views of [proto] numbered in a random order, rather than in depth-first order. */
+  private fun renumber(proto: AccessibilityHierarchyProto, seed: Long): AccessibilityHierarchy {
+    val views = proto.getWindows(0).viewsList
+    val ids = views.indices.shuffled(Random(seed))
+    val renumbered = arrayOfNulls<ViewHierarchyElementProto.Builder>(views.size)
+    for (view in views) {
+      renumbered[ids[view.id]] = view.toBuilder()
+        .setId(ids[view.id])
+        .setParentId(if (view.parentId >= 0) ids[view.parentId] else -1)
+        .clearChildIds()
+        .clearLabeledById()
+        .clearAccessibilityTraversalBeforeId()
+    }
+    return createHierarchyProto(renumbered.map { it!! }).toHierarchy()
+  }
+
+  /** Describes the results expected for [hierarchy], comparing every pair of candidate views. */
+  private fun findOverlapsPairwise(hierarchy: AccessibilityHierarchy): List<String> {
+    val candidates = hierarchy.activeWindow.allViews.filter {
+      (it.isVisibleToUser == true) &&
+          it.isImportantForAccessibility &&
+          (it.isClickable || it.isLongClickable) &&
+          !it.boundsInScreen.isEmpty
+    }
+    return candidates.mapNotNull { view ->
+      val overlapping = candidates.filter { other ->
+        (other !== view) &&
+            (other.boundsInScreen != view.boundsInScreen) &&
+            !other.isAncestorOf(view) &&
+            !view.isAncestorOf(other) &&
+            intersects(view.boundsInScreen, other.boundsInScreen)
+      }
+      overlapping.firstOrNull()?.let { "${view.id}: ${overlapping.size} ${it.boundsInScreen}" }
+    }
+  }
+
+  private fun AccessibilityHierarchyCheckResult.describe(): String {
+    val metadata = metadata!!
+    val overlappingBounds = Rect(
+      metadata.getInt(KEY_OVERLAPPING_LOCATION_LEFT),
+      metadata.getInt(KEY_OVERLAPPING_LOCATION_TOP),
+      metadata.getInt(OverlappingTouchTargetCheck.KEY_OVERLAPPING_LOCATION_RIGHT),
+      metadata.getInt(OverlappingTouchTargetCheck.KEY_OVERLAPPING_LOCATION_BOTTOM)
+    )
+    return "${element!!.id}: ${metadata.getInt(KEY_OVERLAPPING_VIEW_COUNT)} $overlappingBounds"
+  }
+
+  private fun ViewHierarchyElement.isAncestorOf(view: ViewHierarchyElement): Boolean =
+    generateSequence(view.parentView) { it.parentView }.any { it === this }
+
+  private fun intersects(first: Rect, second: Rect) =
+    (first.left < second.right) && (second.left < first.right) &&
+        (first.top < second.bottom) && (second.top < first.bottom)
+}
@@ -0,0 +1,61 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.utils.text.PrefixMatcher
+import java.util.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class PrefixMatcherTest {
+
+  @Test
+  fun matchesTextsStartingWithAnyPrefix() {
+    val matcher = PrefixMatcher(listOf("android.widget", "android.view", "androidx.appcompat"))
+
+    assertTrue(matcher.matchesPrefixOf("android.widget.Button"))
+    assertTrue(matcher.matchesPrefixOf("android.view.View"))
+    assertTrue(matcher.matchesPrefixOf("android.widget"))
+    assertTrue(matcher.matchesPrefixOf("android.viewpager.Pager"))
+    assertFalse(matcher.matchesPrefixOf("android.wid"))
+    assertFalse(matcher.matchesPrefixOf("androidx.recyclerview.widget.RecyclerView"))
+    assertFalse(matcher.matchesPrefixOf("com.example.android.widget.Button"))
+    assertFalse(matcher.matchesPrefixOf(""))
+  }
+
+  @Test
+  fun matchesShorterPrefixOfLongerOne() {
+    // The text ends the path of the longer prefix, but has already passed the end of the shorter
+    val matcher = PrefixMatcher(listOf("android.support.v7", "android"))
+
+    assertTrue(matcher.matchesPrefixOf("android.app.Dialog"))
+    assertTrue(matcher.matchesPrefixOf("android.support"))
+  }
+
+  @Test
+  fun emptyPrefixMatchesEveryText() {
+    assertTrue(PrefixMatcher(listOf("android", "")).matchesPrefixOf(""))
+    assertTrue(PrefixMatcher(listOf("")).matchesPrefixOf("com.example.View"))
+    assertFalse(PrefixMatcher(emptyList<String>()).matchesPrefixOf(""))
+    assertFalse(PrefixMatcher(emptyList<String>()).matchesPrefixOf("android.view.View"))
+  }
+
+  @Test
+  fun matchesStartsWithForEachPrefix() {
+    // A small alphabet, so that prefixes often share paths and end within one another
+    val random = Random(1)
+    repeat(20000) {
+      val prefixes = (0 until random.nextInt(6)).map { randomText(random, random.nextInt(4)) }
+      val text = randomText(random, random.nextInt(6))
+
+      assertEquals(
+        prefixes.any { text.startsWith(it) },
+        PrefixMatcher(prefixes).matchesPrefixOf(text),
+        "$prefixes of $text"
+      )
+    }
+  }
+
+  private fun randomText(random: Random, length: Int) =
+    (0 until length).map { 'a' + random.nextInt(3) }.joinToString("")
+}
@@ -0,0 +1,100 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import java.awt.Color
+import java.awt.image.BufferedImage
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class ResultFrameTest {
+
+  @Test
+  fun drawsLinesOfImageMagickCommand() {
+    assertFrameMatchesLines(Rect(40, 50, 100, 90))
+  }
+
+  @Test
+  fun drawsLinesClippedToImage() {
+    // The frame crosses the top left corner of the image, and the right and bottom edges
+    assertFrameMatchesLines(Rect(4, 2, 100, 90))
+    assertFrameMatchesLines(Rect(60, 70, 150, 120))
+  }
+
+  /**
+   * Asserts that the frame drawn around [bounds] covers the pixels the lines
+   * `line $left,$top $right,$top`, `line $left,$top $left,$bottom`,
+   * `line $left,$bottom $right,$bottom` and `line $right,$top $right,$bottom`
+   * covered when drawn by ImageMagick in red with `-strokewidth 8`.
+   */
+  private fun assertFrameMatchesLines(bounds: Rect) {
+    val image = BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)
+    image.createGraphics().apply {
+      color = Color.WHITE
+      fillRect(0, 0, WIDTH, HEIGHT)
+      dispose()
+    }
+    ResultFrame.draw(image, bounds)
+
+    val lines = imageMagickLines(bounds)
+    for (y in 0 until HEIGHT) {
+      for (x in 0 until WIDTH) {
+        val pixel = image.getRGB(x, y)
+        val covered = coveredSamples(lines, x, y)
+        val at = "($x, $y) for $bounds"
+        when (covered) {
+          0 -> assertEquals(WHITE, pixel, at)
+          SAMPLES * SAMPLES -> assertEquals(RED, pixel, at)
+          else -> {
+            // Antialiased: red blended over white
+            val green = (pixel shr 8) and 0xFF
+            assertEquals(0xFF, (pixel shr 16) and 0xFF, at)
+            assertEquals(green, pixel and 0xFF, at)
+            assertTrue(green in 1..254, "$at: ${Integer.toHexString(pixel)}")
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the areas ImageMagick strokes for the four lines around [bounds], in its coordinates,
+   * where whole numbers are pixel centres. Each line ends flush with its end points.
+   */
+  private fun imageMagickLines(bounds: Rect): List<DoubleArray> {
+    val left = (bounds.left - ResultFrame.MARGIN).toDouble()
+    val top = (bounds.top - ResultFrame.MARGIN).toDouble()
+    val right = (bounds.right + ResultFrame.MARGIN).toDouble()
+    val bottom = (bounds.bottom + ResultFrame.MARGIN).toDouble()
+    val half = ResultFrame.STROKE_WIDTH / 2.0
+    return listOf(
+      doubleArrayOf(left, top - half, right, top + half),
+      doubleArrayOf(left - half, top, left + half, bottom),
+      doubleArrayOf(left, bottom - half, right, bottom + half),
+      doubleArrayOf(right - half, top, right + half, bottom)
+    )
+  }
+
+  /** Returns how many of a grid of points within pixel ([x], [y]) fall within any of [lines]. */
+  private fun coveredSamples(lines: List<DoubleArray>, x: Int, y: Int): Int {
+    var covered = 0
+    for (i in 0 until SAMPLES) {
+      for (j in 0 until SAMPLES) {
+        val sampleX = x - 0.5 + (i + 0.5) / SAMPLES
+        val sampleY = y - 0.5 + (j + 0.5) / SAMPLES
+        if (lines.any { sampleX > it[0] && sampleY > it[1] && sampleX < it[2] && sampleY < it[3] }) {
+          covered++
+        }
+      }
+    }
+    return covered
+  }
+
+  private companion object {
+    const val WIDTH = 160
+    const val HEIGHT = 130
+    const val SAMPLES = 8
+    const val WHITE = 0xFFFFFFFF.toInt()
+    const val RED = 0xFFFF0000.toInt()
+  }
+}
@@ -0,0 +1,184 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image
+import java.awt.image.BufferedImage
+import java.io.File
+import java.nio.file.Files
+import javax.imageio.ImageIO
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+import kotlin.test.assertSame
+
+class ScreenImageTest {
+
+  private lateinit var directory: File
+  private lateinit var file: File
+
+  @BeforeTest
+  fun setUp() {
+    directory = Files.createTempDirectory("screen-image").toFile()
+    file = File(directory, "screen.png")
+    val screenshot = BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)
+    for (y in 0 until HEIGHT) {
+      for (x in 0 until WIDTH) {
+        screenshot.setRGB(x, y, rgb(x, y))
+      }
+    }
+    ImageIO.write(screenshot, "png", file)
+  }
+
+  @AfterTest
+  fun tearDown() {
+    directory.deleteRecursively()
+  }
+
+  @Test
+  fun decodesFullScreenWithoutRegionOfInterest() {
+    val image = ScreenImage(file).use { it.getImage() }!!
+
+    assertEquals(Rect(0, 0, WIDTH, HEIGHT), image.bounds)
+    assertPixelsMatch(image)
+  }
+
+  @Test
+  fun decodesOnlyRegionOfInterest() {
+    val screenImage = ScreenImage(file)
+    screenImage.regionOfInterest = Rect(10, 20, 30, 50)
+    val image = screenImage.getImage()!!
+
+    assertEquals(Rect(10, 20, 30, 50), image.bounds)
+    assertPixelsMatch(image)
+  }
+
+  @Test
+  fun clipsRegionOfInterestToScreen() {
+    val screenImage = ScreenImage(file)
+    screenImage.regionOfInterest = Rect(-10, 40, 30, 200)
+    val image = screenImage.getImage()!!
+
+    assertEquals(Rect(0, 40, 30, HEIGHT), image.bounds)
+    assertPixelsMatch(image)
+  }
+
+  @Test
+  fun decodesFullScreenForRegionOfInterestOutsideScreen() {
+    for (region in listOf(Rect(WIDTH, 0, WIDTH + 20, 20), Rect(-30, -30, -10, -10))) {
+      val screenImage = ScreenImage(file)
+      screenImage.regionOfInterest = region
+      val image = screenImage.getImage()!!
+
+      assertEquals(Rect(0, 0, WIDTH, HEIGHT), image.bounds, region.toString())
+      assertPixelsMatch(image)
+    }
+  }
+
+  @Test
+  fun decodesOnceUntilClosed() {
+    val screenImage = ScreenImage(file)
+    val image = screenImage.getImage()
+
+    assertSame(image, screenImage.getImage())
+    screenImage.close()
+    assertNull(screenImage.getImage())
+    assertNull(screenImage.copyForAnnotation())
+  }
+
+  @Test
+  fun suppliesImageThroughMetadata() {
+    val screenImage = ScreenImage(file)
+    screenImage.regionOfInterest = Rect(10, 20, 30, 50)
+    val metadata = Metadata()
+    screenImage.putInMetadata(metadata)
+
+    val image = AccessibilityCheckMetadata.getScreenCaptureFromMetadata(metadata)
+    assertSame(screenImage.getImage(), image)
+  }
+
+  @Test
+  fun copiesFullScreenForAnnotationAfterRegionIsReleased() {
+    val screenImage = ScreenImage(file)
+    screenImage.regionOfInterest = Rect(10, 20, 30, 50)
+    screenImage.getImage()
+    screenImage.finishChecks()
+
+    val copy = screenImage.copyForAnnotation()!!
+    assertCopyMatches(copy)
+  }
+
+  @Test
+  fun copiesFullScreenForAnnotationAfterScreenIsReleased() {
+    val screenImage = ScreenImage(file)
+    val image = screenImage.getImage()!!
+    screenImage.finishChecks()
+
+    // Drawing on one copy affects neither the pixels the checks sampled nor the next copy
+    val first = screenImage.copyForAnnotation()!!
+    assertCopyMatches(first)
+    first.setRGB(0, 0, 0)
+    assertCopyMatches(screenImage.copyForAnnotation()!!)
+    assertPixelsMatch(image)
+  }
+
+  @Test
+  fun copiesForAnnotationWhileChecksRun() {
+    val screenImage = ScreenImage(file)
+    screenImage.regionOfInterest = Rect(10, 20, 30, 50)
+    val image = screenImage.getImage()!!
+
+    assertCopyMatches(screenImage.copyForAnnotation()!!)
+    assertSame(image, screenImage.getImage())
+  }
+
+  @Test
+  fun reportsMissingOrUnreadableScreenshot() {
+    val garbage = File(directory, "garbage.png")
+    garbage.writeBytes(byteArrayOf(1, 2, 3, 4))
+
+    for (screenshot in listOf(File(directory, "missing.png"), garbage)) {
+      val screenImage = ScreenImage(screenshot)
+      assertNull(screenImage.getImage(), screenshot.name)
+      assertNull(screenImage.copyForAnnotation(), screenshot.name)
+      assertEquals(0L, screenImage.estimateHeapBytes(), screenshot.name)
+    }
+  }
+
+  @Test
+  fun estimatesHeapOfEveryRasterOfScreen() {
+    // The raster the checks sample, the one annotations are copied from, and the copy drawn on
+    assertEquals(WIDTH.toLong() * HEIGHT * 4 * 3, ScreenImage(file).estimateHeapBytes())
+  }
+
+  private fun assertPixelsMatch(image: Image) {
+    val bounds = image.bounds
+    for (y in bounds.top until bounds.bottom) {
+      for (x in bounds.left until bounds.right) {
+        assertEquals(OPAQUE or rgb(x, y), image.getPixel(x, y), "($x, $y)")
+      }
+    }
+  }
+
+  private fun assertCopyMatches(copy: BufferedImage) {
+    assertEquals(WIDTH, copy.width)
+    assertEquals(HEIGHT, copy.height)
+    for (y in 0 until HEIGHT) {
+      for (x in 0 until WIDTH) {
+        assertEquals(OPAQUE or rgb(x, y), copy.getRGB(x, y), "($x, $y)")
+      }
+    }
+  }
+
+  /** Returns a color distinct for every pixel of the screenshot. */
+  private fun rgb(x: Int, y: Int) = (x shl 16) or (y shl 8) or ((x + y) and 0xFF)
+
+  private companion object {
+    const val WIDTH = 64
+    const val HEIGHT = 80
+    const val OPAQUE = 0xFF000000.toInt()
+  }
+}
@@ -0,0 +1,190 @@
+package team.itome.accessibilityanalyzer
+
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+class StagedPipelineTest {
+
+  companion object {
+    private const val INPUTS = 8
+    private const val TIMEOUT_SECONDS = 10L
+  }
+
+  private lateinit var ioPool: ExecutorService
+  private lateinit var checkPool: ExecutorService
+
+  /** What each stage was called with, in the order of the calls. */
+  private val loaded = Collections.synchronizedList(ArrayList<Int>())
+  private val checked = Collections.synchronizedList(ArrayList<Int>())
+  private val reported = Collections.synchronizedList(ArrayList<Int>())
+  private val written = Collections.synchronizedList(ArrayList<Int>())
+
+  @BeforeTest
+  fun setUp() {
+    ioPool = Executors.newCachedThreadPool()
+    checkPool = Executors.newCachedThreadPool()
+  }
+
+  @AfterTest
+  fun tearDown() {
+    ioPool.shutdownNow()
+    checkPool.shutdownNow()
+    ioPool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    checkPool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+  }
+
+  @Test
+  fun reportsInOrderOfInputsWhenChecksCompleteInReverse() {
+    // Each check waits for the check of the next input, so they complete last input first
+    val done = List(INPUTS) { CountDownLatch(1) }
+    StagedPipeline(ioPool, checkPool, INPUTS).run(
+      0 until INPUTS,
+      load = { it },
+      check = {
+        if (it < INPUTS - 1) {
+          assertTrue(done[it + 1].await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+        }
+        checked.add(it)
+        done[it].countDown()
+        it
+      },
+      report = { reported.add(it) },
+      write = { written.add(it) }
+    )
+
+    assertEquals((INPUTS - 1 downTo 0).toList(), checked)
+    assertEquals((0 until INPUTS).toList(), reported)
+    assertEquals((0 until INPUTS).toSet(), written.toSet())
+  }
+
+  @Test
+  fun reportsOnCallingThread() {
+    val caller = Thread.currentThread()
+    val reportingThreads = ConcurrentHashMap.newKeySet<Thread>()
+    runPipeline(capacity = 3, report = { reportingThreads.add(Thread.currentThread()) })
+
+    assertEquals(setOf(caller), reportingThreads)
+  }
+
+  @Test
+  fun holdsAtMostCapacityInFlight() {
+    val inFlight = AtomicInteger()
+    val maxInFlight = AtomicInteger()
+    StagedPipeline(ioPool, checkPool, 2).run(
+      0 until INPUTS * 4,
+      load = {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max)
+        Thread.sleep(1)
+        it
+      },
+      check = { it },
+      report = { reported.add(it) },
+      write = { inFlight.decrementAndGet() }
+    )
+
+    assertEquals((0 until INPUTS * 4).toList(), reported)
+    assertTrue(maxInFlight.get() in 1..2, "${maxInFlight.get()} in flight")
+  }
+
+  @Test
+  fun rethrowsFailureOfEachStageAfterReportingInputsBeforeIt() {
+    val stages = listOf("load", "check", "write")
+    for (failingStage in stages) {
+      reported.clear()
+      val failure = assertFailsWith<IllegalStateException>(failingStage) {
+        runPipeline(capacity = 3, failingStage = failingStage, failingInput = 4)
+      }
+
+      assertEquals("$failingStage failed for 4", failure.message)
+      // A failed write is found only once its input has been reported
+      val expected = if (failingStage == "write") 0..4 else 0..3
+      assertEquals(expected.toList(), reported, failingStage)
+    }
+  }
+
+  @Test
+  fun rethrowsFailureOfReport() {
+    val failure = assertFailsWith<IllegalArgumentException> {
+      runPipeline(capacity = 3, report = { require(it != 2) { "report failed for $it" } })
+    }
+
+    assertEquals("report failed for 2", failure.message)
+  }
+
+  @Test
+  fun abandonsInputsInFlightWhenStageFails() {
+    // The check of the first input fails while the loads of the inputs after it are blocked
+    val release = CountDownLatch(1)
+    val taken = Collections.synchronizedList(ArrayList<Int>())
+    val inputs = (0 until INPUTS).asSequence().onEach { taken.add(it) }.asIterable()
+    val capacity = 4
+
+    assertFailsWith<IllegalStateException> {
+      StagedPipeline(ioPool, checkPool, capacity).run(
+        inputs,
+        load = {
+          if (it > 0) {
+            release.await()
+          }
+          loaded.add(it)
+          it
+        },
+        check = {
+          checked.add(it)
+          check(it != 0) { "check failed for $it" }
+          it
+        },
+        report = { reported.add(it) },
+        write = { written.add(it) }
+      )
+    }
+    release.countDown()
+    ioPool.shutdown()
+    checkPool.shutdown()
+    assertTrue(ioPool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+    assertTrue(checkPool.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+
+    // No input after those in flight is taken, and the loads in flight finish, but nothing of
+    // theirs is checked or written
+    assertEquals((0..capacity).toList(), taken)
+    assertEquals((0 until capacity).toSet(), loaded.toSet())
+    assertEquals(listOf(0), checked)
+    assertTrue(reported.isEmpty())
+    assertTrue(written.isEmpty())
+  }
+
+  @Test
+  fun rejectsCapacityBelowOne() {
+    assertFailsWith<IllegalArgumentException> { StagedPipeline(ioPool, checkPool, 0) }
+  }
+
+  /** Runs [INPUTS] inputs through the stages, failing [failingStage] for [failingInput]. */
+  private fun runPipeline(
+    capacity: Int,
+    failingStage: String? = null,
+    failingInput: Int = -1,
+    report: (Int) -> Unit = { reported.add(it) }
+  ) {
+    fun stage(name: String, input: Int) =
+      check((name != failingStage) || (input != failingInput)) { "$name failed for $input" }
+
+    StagedPipeline(ioPool, checkPool, capacity).run(
+      0 until INPUTS,
+      load = { stage("load", it); it },
+      check = { stage("check", it); it },
+      report = report,
+      write = { stage("write", it) }
+    )
+  }
+}
@@ -0,0 +1,29 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image
+
+/*
+ * Screen captures shared by the tests of checks which sample pixels, drawn from solid rectangles so
+ * that the colors a check should find are known exactly.
+ */
+
+/**
+ * Returns a capture of the region [bounds] of the screen filled with [background], over which each
+ * of [shapes] is filled with its color in turn.
+ */
+fun createCapture(
+  bounds: Rect,
+  background: Int,
+  vararg shapes: Pair<Rect, Int>
+): Image {
+  val pixels = IntArray(bounds.width * bounds.height) { background }
+  for ((shape, color) in shapes) {
+    for (y in maxOf(shape.top, bounds.top) until minOf(shape.bottom, bounds.bottom)) {
+      for (x in maxOf(shape.left, bounds.left) until minOf(shape.right, bounds.right)) {
+        pixels[((y - bounds.top) * bounds.width) + (x - bounds.left)] = color
+      }
+    }
+  }
+  return Image(bounds, pixels)
+}
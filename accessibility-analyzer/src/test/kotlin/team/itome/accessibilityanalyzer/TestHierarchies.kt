@@ -0,0 +1,171 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.AccessibilityHierarchyProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.DeviceStateProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.DisplayInfoMetricsProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.DisplayInfoProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.WindowHierarchyElementProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.CharSequenceProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.RectProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.SpanProto
+import java.util.Random
+
+/*
+ * Hierarchies shared by the tests: random ones, for comparing an implementation with a simpler one,
+ * and small hand-built ones, for checking specific cases.
+ */
+
+private val CLASS_NAMES = listOf(
+  "android.widget.TextView",
+  "android.widget.Button",
+  "android.widget.ImageView",
+  "android.widget.ImageButton",
+  "android.widget.EditText",
+  "android.widget.CheckBox",
+  "android.widget.FrameLayout",
+  "android.widget.LinearLayout",
+  "android.widget.ScrollView",
+  "android.widget.ListView",
+  "androidx.recyclerview.widget.RecyclerView",
+  "android.webkit.WebView",
+  "com.example.CustomView"
+)
+
+/** Returns a hierarchy of [viewCount] random views, numbered in depth-first order. */
+fun createRandomHierarchyProto(seed: Long, viewCount: Int): AccessibilityHierarchyProto {
+  val random = Random(seed)
+  val views = ArrayList<ViewHierarchyElementProto.Builder>(viewCount)
+  // The path from the root to the most recently added view, whose views may take the next child
+  val openPath = ArrayList<Int>()
+  for (id in 0 until viewCount) {
+    val parentId = if (openPath.isEmpty()) {
+      -1
+    } else {
+      val depth = random.nextInt(openPath.size)
+      openPath[depth].also { openPath.subList(depth + 1, openPath.size).clear() }
+    }
+    openPath.add(id)
+
+    val left = random.nextInt(1400)
+    val top = random.nextInt(3000)
+    val className = CLASS_NAMES[random.nextInt(CLASS_NAMES.size)]
+    val right = left + random.nextInt(300)
+    val bottom = top + 10 + random.nextInt(200)
+    val view = createViewProto(id, parentId, left, top, right, bottom)
+      .setClassName(className)
+      .setAccessibilityClassName(className)
+      .setVisibleToUser(random.nextInt(10) != 0)
+      .setImportantForAccessibility(random.nextInt(8) != 0)
+      .setClickable(random.nextInt(3) == 0)
+      .setLongClickable(random.nextInt(6) == 0)
+      .setFocusable(random.nextInt(5) == 0)
+    if (random.nextInt(3) == 0) {
+      view.setText(
+        CharSequenceProto.newBuilder()
+          .setText("Label ${random.nextInt(40)}")
+          .addSpan(
+            SpanProto.newBuilder()
+              .setSpanClassName("android.text.style.URLSpan")
+              .setType(SpanProto.SpanType.URL)
+              .setUrl(if (random.nextBoolean()) "https://example.com" else "relative")
+              .setStart(0)
+              .setEnd(2)
+          )
+      )
+    }
+    if (random.nextInt(4) == 0) {
+      view.setContentDescription(
+        CharSequenceProto.newBuilder()
+          .setText(if (random.nextInt(3) == 0) "OK button" else "Description ${random.nextInt(30)}")
+      )
+    }
+    if (random.nextInt(5) == 0) {
+      view.setCheckable(true).setChecked(random.nextBoolean())
+    }
+    if (random.nextInt(6) == 0) {
+      view.setScrollable(true)
+    }
+    if ((id > 0) && (random.nextInt(30) == 0)) {
+      view.setLabeledById(random.nextInt(id).toLong())
+    }
+    if ((id > 0) && (random.nextInt(15) == 0)) {
+      view.setAccessibilityTraversalBeforeId(random.nextInt(viewCount).toLong())
+    }
+    views.add(view)
+  }
+  return createHierarchyProto(views)
+}
+
+/**
+ * Returns a visible, enabled view important for accessibility, with the given bounds and the
+ * fields [createHierarchyProto] requires.
+ */
+fun createViewProto(
+  id: Int,
+  parentId: Int,
+  left: Int,
+  top: Int,
+  right: Int,
+  bottom: Int
+): ViewHierarchyElementProto.Builder =
+  ViewHierarchyElementProto.newBuilder()
+    .setId(id)
+    .setParentId(parentId)
+    .setBoundsInScreen(
+      RectProto.newBuilder().setLeft(left).setTop(top).setRight(right).setBottom(bottom)
+    )
+    .setClassName("android.view.View")
+    .setAccessibilityClassName("android.view.View")
+    .setPackageName("com.example.app")
+    .setVisibleToUser(true)
+    .setImportantForAccessibility(true)
+    .setEnabled(true)
+
+/**
+ * Returns a single-window hierarchy of [views], which must be numbered from 0 in the order given.
+ * The child ids of each view are added from the parent ids of the others.
+ */
+fun createHierarchyProto(
+  views: List<ViewHierarchyElementProto.Builder>
+): AccessibilityHierarchyProto = createHierarchyProto(listOf(views))
+
+/**
+ * Returns a hierarchy of root windows, each numbered by its position in [windows] and holding views
+ * as described for the single-window [createHierarchyProto]. The first window is active.
+ */
+fun createHierarchyProto(
+  windows: Iterable<List<ViewHierarchyElementProto.Builder>>
+): AccessibilityHierarchyProto {
+  val hierarchy = AccessibilityHierarchyProto.newBuilder().setActiveWindowId(0)
+  windows.forEachIndexed { windowId, views ->
+    for (view in views) {
+      if (view.parentId >= 0) {
+        views[view.parentId].addChildIds(view.id)
+      }
+    }
+    val window = WindowHierarchyElementProto.newBuilder().setId(windowId).setParentId(-1)
+    views.forEach { window.addViews(it) }
+    hierarchy.addWindows(window)
+  }
+  val metrics = DisplayInfoMetricsProto.newBuilder()
+    .setDensity(3.5f)
+    .setScaledDensity(3.5f)
+    .setWidthPixels(1440)
+    .setHeightPixels(3200)
+  val display = DisplayInfoProto.newBuilder()
+    .setMetricsWithoutDecoration(metrics)
+    .setRealMetrics(metrics)
+  return hierarchy
+    .setDeviceState(
+      DeviceStateProto.newBuilder()
+        .setSdkVersion(28)
+        .setLocale("en-US")
+        .setDefaultDisplayInfo(display)
+    )
+    .build()
+}
+
+fun AccessibilityHierarchyProto.toHierarchy(): AccessibilityHierarchy =
+  AccessibilityHierarchy.newBuilder(this).build()
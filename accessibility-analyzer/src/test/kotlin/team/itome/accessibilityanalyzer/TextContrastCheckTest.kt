@@ -0,0 +1,289 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckPreset
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult
+import com.google.android.apps.common.testing.accessibility.framework.Metadata
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.KEY_BACKGROUND_COLOR
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.KEY_CONTRAST_RATIO
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.KEY_FOREGROUND_COLOR
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.KEY_REQUIRED_CONTRAST_RATIO
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_COULD_NOT_GET_BACKGROUND_COLOR
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_COULD_NOT_GET_TEXT_COLOR
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_NOT_TEXT_VIEW
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_NOT_VISIBLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_SCREENCAPTURE_DATA_HIDDEN
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_TEXTVIEW_CONTRAST_NOT_SUFFICIENT
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_TEXTVIEW_EMPTY
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_BORDERLINE
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_TEXTVIEW_HEURISTIC_CUSTOMIZED_CONTRAST_NOT_SUFFICIENT
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_TEXT_MUST_BE_OPAQUE
+import com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck.RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.CharSequenceProto
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image
+import com.google.common.base.Supplier
+import java.util.Locale
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class TextContrastCheckTest {
+
+  private val check = TextContrastCheck()
+
+  /** The bounds of the text view, and of the glyphs drawn within it. */
+  private val viewBounds = Rect(100, 100, 300, 200)
+  private val textBounds = Rect(120, 130, 200, 170)
+  private val screen = Rect(0, 0, 400, 400)
+
+  @Test
+  fun passesSufficientContrastInCapture() {
+    val results = runCheck(createTextHierarchy(), capture(BLACK))
+
+    assertTrue(results.isEmpty(), results.toString())
+  }
+
+  @Test
+  fun reportsInsufficientContrastOfSmallText() {
+    val result = runCheck(createTextHierarchy { setTextSize(SMALL_TEXT_SIZE) }, capture(GRAY_88))
+      .single()
+
+    assertEquals(AccessibilityCheckResultType.ERROR, result.type)
+    assertEquals(RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT, result.resultId)
+    assertEquals(GRAY_88, result.metadata!!.getInt(KEY_FOREGROUND_COLOR))
+    assertEquals(WHITE, result.metadata!!.getInt(KEY_BACKGROUND_COLOR))
+    assertEquals("3.54", "%.2f".format(result.metadata!!.getDouble(KEY_CONTRAST_RATIO)))
+    assertEquals(4.5, result.metadata!!.getDouble(KEY_REQUIRED_CONTRAST_RATIO))
+    val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+    listOf("3.54", "#888888", "#FFFFFF", "4.50").forEach {
+      assertTrue(message.contains(it), message)
+    }
+  }
+
+  @Test
+  fun passesLowerContrastOfLargeText() {
+    val largeText = createTextHierarchy { setTextSize(LARGE_TEXT_SIZE) }
+    assertTrue(runCheck(largeText, capture(GRAY_88)).isEmpty())
+    // Bold text is large from a smaller size
+    val boldText = createTextHierarchy { setTextSize(LARGE_BOLD_TEXT_SIZE).setTypefaceStyle(1) }
+    assertTrue(runCheck(boldText, capture(GRAY_88)).isEmpty())
+    val plainText = createTextHierarchy { setTextSize(LARGE_BOLD_TEXT_SIZE) }
+    assertEquals(1, runCheck(plainText, capture(GRAY_88)).size)
+  }
+
+  @Test
+  fun warnsOfBorderlineContrastOfTextOfUnknownSize() {
+    val result = runCheck(createTextHierarchy(), capture(GRAY_88)).single()
+
+    assertEquals(AccessibilityCheckResultType.WARNING, result.type)
+    assertEquals(RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_BORDERLINE, result.resultId)
+    val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+    listOf("3.54", "4.50", "3.00", "#888888", "#FFFFFF").forEach {
+      assertTrue(message.contains(it), message)
+    }
+    assertEquals(
+      check.getShortMessageForResult(Locale.ENGLISH, result).toString(),
+      check.getShortMessageForResult(
+        Locale.ENGLISH, runCheck(createTextHierarchy(), capture(GRAY_99)).single()
+      ).toString()
+    )
+  }
+
+  @Test
+  fun reportsInsufficientContrastOfTextOfUnknownSizeBelowLargeTextRatio() {
+    val result = runCheck(createTextHierarchy(), capture(GRAY_99)).single()
+
+    assertEquals(AccessibilityCheckResultType.ERROR, result.type)
+    assertEquals(RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT, result.resultId)
+    assertEquals("2.85", "%.2f".format(result.metadata!!.getDouble(KEY_CONTRAST_RATIO)))
+  }
+
+  @Test
+  fun reportsContrastBelowCustomizedRatio() {
+    val metadata = capture(GRAY_88)
+    metadata.putDouble(METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO, 4.0)
+    val result = runCheck(createTextHierarchy { setTextSize(LARGE_TEXT_SIZE) }, metadata).single()
+
+    assertEquals(AccessibilityCheckResultType.ERROR, result.type)
+    assertEquals(
+      RESULT_ID_TEXTVIEW_HEURISTIC_CUSTOMIZED_CONTRAST_NOT_SUFFICIENT,
+      result.resultId
+    )
+    val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+    listOf("3.54", "4.00", "#888888", "#FFFFFF").forEach {
+      assertTrue(message.contains(it), message)
+    }
+
+    // The customized ratio replaces the one for small text, rather than only adding to it
+    metadata.putDouble(METADATA_KEY_CUSTOMIZED_HEURISTIC_CONTRAST_RATIO, 3.0)
+    assertTrue(runCheck(createTextHierarchy { setTextSize(SMALL_TEXT_SIZE) }, metadata).isEmpty())
+  }
+
+  @Test
+  fun reportsCaptureShowingOnlyOneColor() {
+    val metadata = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureInMetadata(createCapture(screen, WHITE), metadata)
+    val result = runCheck(createTextHierarchy(), metadata).single()
+
+    assertEquals(AccessibilityCheckResultType.NOT_RUN, result.type)
+    assertEquals(RESULT_ID_SCREENCAPTURE_DATA_HIDDEN, result.resultId)
+  }
+
+  @Test
+  fun reportsViewPartlyOrWhollyOutsideCapture() {
+    // The view crosses the right edge of the first capture, and misses the second altogether
+    for (bounds in listOf(Rect(0, 0, 250, 400), Rect(350, 0, 400, 400))) {
+      val metadata = Metadata()
+      AccessibilityCheckMetadata.putScreenCaptureInMetadata(
+        createCapture(bounds, WHITE, textBounds to BLACK),
+        metadata
+      )
+      val result = runCheck(createTextHierarchy(), metadata).single()
+
+      assertEquals(AccessibilityCheckResultType.NOT_RUN, result.type)
+      assertEquals(RESULT_ID_VIEW_NOT_WITHIN_SCREENCAPTURE, result.resultId)
+      val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+      assertTrue(message.contains(viewBounds.toShortString()), message)
+      assertTrue(message.contains(bounds.toShortString()), message)
+    }
+  }
+
+  @Test
+  fun samplesCaptureOfRegionAroundView() {
+    val metadata = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureInMetadata(
+      createCapture(Rect(90, 90, 310, 210), WHITE, textBounds to GRAY_99),
+      metadata
+    )
+    val result = runCheck(createTextHierarchy(), metadata).single()
+
+    assertEquals(RESULT_ID_TEXTVIEW_HEURISTIC_CONTRAST_NOT_SUFFICIENT, result.resultId)
+    assertEquals(GRAY_99, result.metadata!!.getInt(KEY_FOREGROUND_COLOR))
+    assertEquals(viewBounds, check.getSampledRegion(createTextHierarchy(), null))
+  }
+
+  @Test
+  fun comparesDeclaredColorsWithoutCapture() {
+    val declared = { textColor: Int, backgroundColor: Int ->
+      createTextHierarchy { setTextColor(textColor).setBackgroundDrawableColor(backgroundColor) }
+    }
+    // Neither metadata nor a capture which could not be decoded give pixels to sample
+    val noCapture = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureSupplierInMetadata(
+      Supplier<Image> { null },
+      noCapture
+    )
+
+    for (metadata in listOf(null, noCapture)) {
+      assertTrue(runCheck(declared(BLACK, WHITE), metadata).isEmpty())
+
+      val result = runCheck(declared(GRAY_99, WHITE), metadata).single()
+      assertEquals(AccessibilityCheckResultType.ERROR, result.type)
+      assertEquals(RESULT_ID_TEXTVIEW_CONTRAST_NOT_SUFFICIENT, result.resultId)
+      val message = check.getMessageForResult(Locale.ENGLISH, result).toString()
+      listOf("2.85", "4.50", "#999999", "#FFFFFF").forEach {
+        assertTrue(message.contains(it), message)
+      }
+    }
+
+    assertEquals(
+      RESULT_ID_COULD_NOT_GET_TEXT_COLOR,
+      runCheck(createTextHierarchy { setBackgroundDrawableColor(WHITE) }, null).single().resultId
+    )
+    assertEquals(
+      RESULT_ID_COULD_NOT_GET_BACKGROUND_COLOR,
+      runCheck(createTextHierarchy { setTextColor(BLACK) }, null).single().resultId
+    )
+    val translucent = runCheck(declared(0x80000000.toInt(), WHITE), null).single()
+    assertEquals(RESULT_ID_TEXT_MUST_BE_OPAQUE, translucent.resultId)
+    val message = check.getMessageForResult(Locale.ENGLISH, translucent).toString()
+    assertTrue(message.contains("50.20%"), message)
+  }
+
+  @Test
+  fun skipsViewsWithoutVisibleText() {
+    val hierarchy = createHierarchyProto(
+      listOf(
+        createViewProto(0, -1, 0, 0, 400, 400),
+        createTextViewProto(1),
+        createTextViewProto(2).setText(CharSequenceProto.newBuilder().setText("")),
+        createTextViewProto(3).setVisibleToUser(false)
+      )
+    ).toHierarchy()
+    val results = check.runCheckOnHierarchy(hierarchy, null, capture(BLACK))
+
+    assertEquals(
+      listOf(
+        RESULT_ID_NOT_TEXT_VIEW,
+        RESULT_ID_TEXTVIEW_EMPTY,
+        RESULT_ID_NOT_VISIBLE
+      ),
+      results.map { it.resultId }
+    )
+    assertEquals(listOf(0, 2, 3), results.map { it.element!!.id })
+    assertEquals(viewBounds, check.getSampledRegion(hierarchy, null))
+  }
+
+  @Test
+  fun isRunOnlyByPrereleasePreset() {
+    for (preset in AccessibilityCheckPreset.values()) {
+      assertEquals(
+        preset == AccessibilityCheckPreset.PRERELEASE,
+        AccessibilityCheckPreset.getAccessibilityHierarchyChecksForPreset(preset)
+          .any { it is TextContrastCheck },
+        preset.toString()
+      )
+    }
+  }
+
+  /** Returns the results of the check for the text view of [hierarchy]. */
+  private fun runCheck(
+    hierarchy: AccessibilityHierarchy,
+    metadata: Metadata?
+  ): List<AccessibilityHierarchyCheckResult> =
+    check.runCheckOnHierarchy(hierarchy, null, metadata).filter { it.element!!.id == 1 }
+
+  /** Returns metadata holding a capture of the text drawn in [textColor] on white. */
+  private fun capture(textColor: Int): Metadata {
+    val metadata = Metadata()
+    AccessibilityCheckMetadata.putScreenCaptureInMetadata(
+      createCapture(screen, WHITE, textBounds to textColor),
+      metadata
+    )
+    return metadata
+  }
+
+  private fun createTextHierarchy(
+    configure: ViewHierarchyElementProto.Builder.() -> Unit = {}
+  ): AccessibilityHierarchy =
+    createHierarchyProto(
+      listOf(createViewProto(0, -1, 0, 0, 400, 400), createTextViewProto(1).apply(configure))
+    ).toHierarchy()
+
+  private fun createTextViewProto(id: Int): ViewHierarchyElementProto.Builder =
+    createViewProto(id, 0, viewBounds.left, viewBounds.top, viewBounds.right, viewBounds.bottom)
+      .setClassName("android.widget.TextView")
+      .setAccessibilityClassName("android.widget.TextView")
+      .setText(CharSequenceProto.newBuilder().setText("Hello"))
+
+  private companion object {
+    const val WHITE = 0xFFFFFFFF.toInt()
+    const val BLACK = 0xFF000000.toInt()
+    /** Contrasts with white by 3.54, enough only for large text. */
+    const val GRAY_88 = 0xFF888888.toInt()
+    /** Contrasts with white by 2.85, too little for any text. */
+    const val GRAY_99 = 0xFF999999.toInt()
+
+    // Text sizes in pixels, at the scaled density of 3.5 of the test hierarchies
+    const val SMALL_TEXT_SIZE = 14f * 3.5f
+    const val LARGE_TEXT_SIZE = 18f * 3.5f
+    const val LARGE_BOLD_TEXT_SIZE = 14f * 3.5f
+  }
+}
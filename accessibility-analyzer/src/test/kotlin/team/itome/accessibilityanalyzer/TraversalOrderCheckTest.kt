@@ -0,0 +1,239 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck
+import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck.RESULT_ID_NOT_IMPORTANT_FOR_ACCESSIBILITY
+import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck.RESULT_ID_NOT_VISIBLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck.RESULT_ID_TRAVERSAL_AFTER_CYCLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck.RESULT_ID_TRAVERSAL_BEFORE_CYCLE
+import com.google.android.apps.common.testing.accessibility.framework.checks.TraversalOrderCheck.RESULT_ID_TRAVERSAL_OVER_CONSTRAINED
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto
+import java.util.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class TraversalOrderCheckTest {
+
+  companion object {
+    private const val SECOND_WINDOW = 1L shl 32
+  }
+
+  private val check = TraversalOrderCheck()
+
+  @Test
+  fun reportsCyclesAndViewsLeadingToThem() {
+    val hierarchy = createHierarchy(
+      listOf(
+        // A before cycle of 1, 2 and 3, which 4 leads into
+        link(1) { it.setAccessibilityTraversalBeforeId(2) },
+        link(2) { it.setAccessibilityTraversalBeforeId(3) },
+        link(3) { it.setAccessibilityTraversalBeforeId(1) },
+        link(4) { it.setAccessibilityTraversalBeforeId(1) },
+        // An after cycle of 5 and 6, which 7 leads into
+        link(5) { it.setAccessibilityTraversalAfterId(6) },
+        link(6) { it.setAccessibilityTraversalAfterId(5) },
+        link(7) { it.setAccessibilityTraversalAfterId(6) },
+        // A view leading into both cycles is only reported for the before cycle
+        link(8) { it.setAccessibilityTraversalBeforeId(4).setAccessibilityTraversalAfterId(7) },
+        // A view pointing at itself
+        link(9) { it.setAccessibilityTraversalAfterId(9) }
+      )
+    )
+
+    assertEquals(
+      listOf(
+        "1: before cycle",
+        "2: before cycle",
+        "3: before cycle",
+        "4: before cycle",
+        "5: after cycle",
+        "6: after cycle",
+        "7: after cycle",
+        "8: before cycle",
+        "9: after cycle"
+      ),
+      describeResults(hierarchy)
+    )
+  }
+
+  @Test
+  fun reportsViewsWhoseChainsMeet() {
+    val hierarchy = createHierarchy(
+      listOf(
+        // 1 is before 2, and also after 3, which is after 2
+        link(1) { it.setAccessibilityTraversalBeforeId(2).setAccessibilityTraversalAfterId(3) },
+        link(3) { it.setAccessibilityTraversalAfterId(2) },
+        // 4 and 5 share the chain 6, 7, 8 before them and nothing after, so are not constrained
+        link(4) { it.setAccessibilityTraversalBeforeId(6) },
+        link(5) { it.setAccessibilityTraversalBeforeId(6) },
+        link(6) { it.setAccessibilityTraversalBeforeId(7) },
+        link(7) { it.setAccessibilityTraversalBeforeId(8) },
+        // 9 is before 6 and after 10, whose chains both reach 8
+        link(9) { it.setAccessibilityTraversalBeforeId(6).setAccessibilityTraversalAfterId(10) },
+        link(10) { it.setAccessibilityTraversalAfterId(8) },
+        // 11 is before and after the same view
+        link(11) { it.setAccessibilityTraversalBeforeId(12).setAccessibilityTraversalAfterId(12) }
+      )
+    )
+
+    assertEquals(
+      listOf("1: over-constrained", "9: over-constrained", "11: over-constrained"),
+      describeResults(hierarchy)
+    )
+  }
+
+  @Test
+  fun followsChainsIntoOtherWindows() {
+    val hierarchy = createHierarchy(
+      listOf(
+        // 1 is before a view of the other window, which is before 1 again
+        link(1) { it.setAccessibilityTraversalBeforeId(SECOND_WINDOW or 1) },
+        // 2 is before a view of the other window, which is after 3, which is after 2
+        link(2) {
+          it.setAccessibilityTraversalBeforeId(SECOND_WINDOW or 2)
+            .setAccessibilityTraversalAfterId(3)
+        },
+        link(3) { it.setAccessibilityTraversalAfterId(SECOND_WINDOW or 2) }
+      ),
+      listOf(
+        link(1) { it.setAccessibilityTraversalBeforeId(1) }
+      )
+    )
+
+    assertEquals(listOf("1: before cycle", "2: over-constrained"), describeResults(hierarchy))
+  }
+
+  @Test
+  fun reportsViewsNotEvaluated() {
+    val hierarchy = createHierarchy(
+      listOf(
+        link(1) { it.setVisibleToUser(false).setAccessibilityTraversalBeforeId(1) },
+        link(2) { it.setImportantForAccessibility(false).setAccessibilityTraversalBeforeId(2) },
+        // Views which are not evaluated are still followed by those which are
+        link(3) { it.setAccessibilityTraversalBeforeId(1) }
+      )
+    )
+
+    assertEquals(
+      listOf("1: not visible", "2: not important", "3: before cycle"),
+      describeResults(hierarchy)
+    )
+  }
+
+  @Test
+  fun matchesChainsFollowedFromEachView() {
+    for (seed in 0 until 100) {
+      val random = Random(seed.toLong())
+      val viewCount = 20 + seed * 3
+      // Denser links for later seeds, so that chains are long and often meet
+      val linkChance = 2 + (seed % 4)
+      val windows = (0 until 2).map { windowId ->
+        createRandomHierarchyProto(seed * 2L + windowId, viewCount).getWindows(0).viewsList.map {
+          val view = it.toBuilder()
+            .clearAccessibilityTraversalBeforeId()
+            .clearAccessibilityTraversalAfterId()
+          if (random.nextInt(linkChance) != 0) {
+            view.setAccessibilityTraversalBeforeId(randomViewId(random, viewCount))
+          }
+          if (random.nextInt(linkChance) != 0) {
+            view.setAccessibilityTraversalAfterId(randomViewId(random, viewCount))
+          }
+          view.clearChildIds()
+        }
+      }
+      val hierarchy = createHierarchyProto(windows).toHierarchy()
+      val activeViews = hierarchy.activeWindow.allViews
+
+      for (root in listOf(null, activeViews[seed % viewCount])) {
+        assertEquals(
+          followChains(hierarchy, root),
+          describeResults(hierarchy, root),
+          "seed $seed from ${root?.id}"
+        )
+      }
+    }
+  }
+
+  /** Returns the condensed unique id of a random view of either of two windows. */
+  private fun randomViewId(random: Random, viewCount: Int): Long =
+    (if (random.nextInt(4) == 0) SECOND_WINDOW else 0L) or random.nextInt(viewCount).toLong()
+
+  /**
+   * Describes the results expected for the views evaluated from [root], by following the chains
+   * from each of them in turn.
+   */
+  private fun followChains(hierarchy: AccessibilityHierarchy, root: ViewHierarchyElement?) =
+    (root?.selfAndAllDescendants ?: hierarchy.activeWindow.allViews).mapNotNull { view ->
+      val result = when {
+        view.isVisibleToUser != true -> RESULT_ID_NOT_VISIBLE
+        !view.isImportantForAccessibility -> RESULT_ID_NOT_IMPORTANT_FOR_ACCESSIBILITY
+        else -> {
+          val before = followChain(view) { it.accessibilityTraversalBefore }
+          val after = followChain(view) { it.accessibilityTraversalAfter }
+          when {
+            before == null -> RESULT_ID_TRAVERSAL_BEFORE_CYCLE
+            after == null -> RESULT_ID_TRAVERSAL_AFTER_CYCLE
+            before.any { it !== view && after.contains(it) } ->
+              RESULT_ID_TRAVERSAL_OVER_CONSTRAINED
+            else -> null
+          }
+        }
+      }
+      result?.let { "${view.id}: ${describeResultId(it)}" }
+    }
+
+  /** Returns the views reached from [start] by [next], or `null` if they repeat. */
+  private fun followChain(
+    start: ViewHierarchyElement,
+    next: (ViewHierarchyElement) -> ViewHierarchyElement?
+  ): List<ViewHierarchyElement>? {
+    val chain = mutableListOf(start)
+    var view = start
+    while (true) {
+      view = next(view) ?: return chain
+      if (chain.any { it === view }) {
+        return null
+      }
+      chain.add(view)
+    }
+  }
+
+  private fun describeResults(
+    hierarchy: AccessibilityHierarchy,
+    root: ViewHierarchyElement? = null
+  ) =
+    check.runCheckOnHierarchy(hierarchy, root, null).map {
+      "${it.element!!.id}: ${describeResultId(it.resultId)}"
+    }
+
+  private fun describeResultId(resultId: Int) = when (resultId) {
+    RESULT_ID_NOT_VISIBLE -> "not visible"
+    RESULT_ID_NOT_IMPORTANT_FOR_ACCESSIBILITY -> "not important"
+    RESULT_ID_TRAVERSAL_BEFORE_CYCLE -> "before cycle"
+    RESULT_ID_TRAVERSAL_AFTER_CYCLE -> "after cycle"
+    RESULT_ID_TRAVERSAL_OVER_CONSTRAINED -> "over-constrained"
+    else -> throw IllegalArgumentException("Unexpected result id $resultId")
+  }
+
+  /** Pairs the id of a view with how to configure it for [createHierarchy]. */
+  private fun link(id: Int, configure: (ViewHierarchyElementProto.Builder) -> Unit) =
+    id to configure
+
+  /**
+   * Returns a hierarchy of windows of up to 12 views under a root, each configured by its entry in
+   * [windows], if any.
+   */
+  private fun createHierarchy(
+    vararg windows: List<Pair<Int, (ViewHierarchyElementProto.Builder) -> Unit>>
+  ): AccessibilityHierarchy {
+    val protos = windows.map { configurations ->
+      (0..12).map { id ->
+        createViewProto(id, if (id == 0) -1 else 0, 0, 0, 100, 100).also { view ->
+          configurations.filter { it.first == id }.forEach { it.second(view) }
+        }
+      }
+    }
+    return createHierarchyProto(protos).toHierarchy()
+  }
+}
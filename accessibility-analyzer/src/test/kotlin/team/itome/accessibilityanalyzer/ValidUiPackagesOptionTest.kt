@@ -0,0 +1,93 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckMetadata.getCustomizedUiPackageNamesInMetadata
+import java.io.File
+import java.nio.file.Files
+import kotlin.test.AfterTest
+import kotlin.test.BeforeTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+/** Checks how `--valid-ui-package` and `--valid-ui-packages-file` are passed to the checks. */
+class ValidUiPackagesOptionTest {
+
+  private lateinit var dir: File
+
+  @BeforeTest
+  fun setUp() {
+    dir = Files.createTempDirectory("valid-ui-packages").toFile()
+  }
+
+  @AfterTest
+  fun tearDown() {
+    dir.deleteRecursively()
+  }
+
+  @Test
+  fun passesNoPackagesByDefault() {
+    assertNull(findPackages())
+  }
+
+  @Test
+  fun passesRepeatedOptions() {
+    assertEquals(
+      listOf("com.example.widget", "org.example"),
+      findPackages("--valid-ui-package", "com.example.widget", "--valid-ui-package", "org.example")
+    )
+  }
+
+  @Test
+  fun readsFileSkippingCommentsAndBlankLines() {
+    val file = File(dir, "packages.txt")
+    file.writeText(
+      listOf(
+        "# Views of the app",
+        "com.example.widget",
+        "",
+        "  com.example.chart  ",
+        "   # Indented comment",
+        "\t",
+        "org.example"
+      ).joinToString("\n")
+    )
+
+    assertEquals(
+      listOf("com.example.widget", "com.example.chart", "org.example"),
+      findPackages("--valid-ui-packages-file", file.path)
+    )
+  }
+
+  @Test
+  fun combinesOptionsWithFileWithoutRepeats() {
+    val file = File(dir, "packages.txt")
+    file.writeText("org.example\ncom.example.widget\n")
+
+    assertEquals(
+      listOf("com.example.widget", "net.example", "org.example"),
+      findPackages(
+        "--valid-ui-package", "com.example.widget",
+        "--valid-ui-packages-file", file.path,
+        "--valid-ui-package", "net.example"
+      )
+    )
+  }
+
+  @Test
+  fun passesNoPackagesForFileOfOnlyComments() {
+    val file = File(dir, "packages.txt")
+    file.writeText("# None yet\n\n")
+
+    assertNull(findPackages("--valid-ui-packages-file", file.path))
+  }
+
+  /**
+   * Runs the command on an empty target with [options], and returns the packages they pass to the
+   * checks, if any.
+   */
+  private fun findPackages(vararg options: String): List<String>? {
+    val command = AccessibilityCheckCommand()
+    command.parse(listOf("--target", dir.path) + options)
+    return getCustomizedUiPackageNamesInMetadata(command.createMetadata())
+  }
+}
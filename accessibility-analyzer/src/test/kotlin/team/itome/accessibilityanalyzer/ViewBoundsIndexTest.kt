@@ -0,0 +1,127 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewBoundsIndex
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement
+import java.util.Random
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+/** Compares the queries of [ViewBoundsIndex] with scans over every view. */
+class ViewBoundsIndexTest {
+
+  companion object {
+    // Around the node size, so that trees of one, two and three levels are covered
+    private val VIEW_COUNTS = listOf(0, 1, 2, 15, 16, 17, 255, 256, 257, 3000)
+    private const val QUERIES = 200
+  }
+
+  @Test
+  fun rectangleQueriesMatchScan() {
+    for (viewCount in VIEW_COUNTS) {
+      val views = createRandomHierarchyProto(viewCount.toLong(), viewCount).toHierarchy()
+        .activeWindow.allViews
+      val index = ViewBoundsIndex.of(views)
+      val random = Random(viewCount.toLong())
+      repeat(QUERIES) {
+        val left = random.nextInt(1500) - 50
+        val top = random.nextInt(3100) - 50
+        val query = Rect(left, top, left + random.nextInt(400), top + random.nextInt(400))
+
+        assertEquals(
+          views.filter { it.isIndexed() && intersects(it.boundsInScreen, query) },
+          index.findIntersecting(query),
+          "$viewCount views intersecting $query"
+        )
+        assertEquals(
+          views.filter { it.isIndexed() && query.contains(it.boundsInScreen) },
+          index.findContainedIn(query),
+          "$viewCount views contained in $query"
+        )
+        assertEquals(
+          views.filter { it.isIndexed() && it.boundsInScreen.contains(query) },
+          index.findContaining(query),
+          "$viewCount views containing $query"
+        )
+      }
+    }
+  }
+
+  @Test
+  fun nearestQueriesMatchScan() {
+    for (viewCount in VIEW_COUNTS) {
+      val views = createRandomHierarchyProto(viewCount.toLong(), viewCount).toHierarchy()
+        .activeWindow.allViews
+      val index = ViewBoundsIndex.of(views)
+      val random = Random(viewCount.toLong())
+      repeat(QUERIES) {
+        val x = random.nextInt(1500) - 50
+        val y = random.nextInt(3100) - 50
+        val count = random.nextInt(20)
+
+        // A stable sort, so that ties stay in the order the views were supplied
+        val expected = views
+          .filter { it.isIndexed() }
+          .sortedBy { distanceSquared(it.boundsInScreen, x, y) }
+          .take(count)
+        assertEquals(expected, index.findNearest(x, y, count), "$viewCount views near ($x, $y)")
+      }
+    }
+  }
+
+  @Test
+  fun nearestTiesAreInSuppliedOrder() {
+    // Views on a grid, many of them at the same distance from the query point, and a last view
+    // which, like the grid view whose corner is at the point, is at no distance from it
+    val views = (0 until 49).map { position ->
+      val left = (position % 7) * 100
+      val top = (position / 7) * 100
+      createViewProto(position + 1, 0, left, top, left + 50, top + 50)
+    }
+    val protos = listOf(createViewProto(0, -1, 0, 0, 0, 0)) + views +
+        createViewProto(50, 0, 340, 340, 360, 360)
+    val allViews = createHierarchyProto(protos).toHierarchy().activeWindow.allViews
+    val index = ViewBoundsIndex.of(allViews)
+
+    val expected = allViews
+      .filter { it.isIndexed() }
+      .sortedBy { distanceSquared(it.boundsInScreen, 350, 350) }
+    assertEquals(50, index.size())
+    assertEquals(listOf(allViews[25], allViews[50]), index.findNearest(350, 350, 2))
+    assertEquals(expected, index.findNearest(350, 350, 50))
+    assertEquals(expected.take(9), index.findNearest(350, 350, 9))
+  }
+
+  @Test
+  fun viewsWithEmptyBoundsAreNotIndexed() {
+    val protos = listOf(
+      createViewProto(0, -1, 0, 0, 100, 100),
+      createViewProto(1, 0, 10, 10, 10, 50),
+      createViewProto(2, 0, 10, 10, 50, 50)
+    )
+    val allViews = createHierarchyProto(protos).toHierarchy().activeWindow.allViews
+    val index = ViewBoundsIndex.of(allViews)
+
+    assertEquals(2, index.size())
+    assertEquals(listOf(allViews[0], allViews[2]), index.findContaining(Rect(20, 20, 30, 30)))
+    assertEquals(listOf(allViews[0], allViews[2]), index.findNearest(10, 10, 5))
+    assertTrue(index.findContainedIn(Rect(0, 0, 20, 60)).isEmpty())
+    assertTrue(index.findNearest(10, 10, 0).isEmpty())
+    assertFailsWith<IllegalArgumentException> { index.findNearest(10, 10, -1) }
+  }
+
+  private fun ViewHierarchyElement.isIndexed() = !boundsInScreen.isEmpty
+
+  /** Returns whether the rectangles share a region of non-zero area. */
+  private fun intersects(first: Rect, second: Rect) =
+    (first.left < second.right) && (second.left < first.right) &&
+        (first.top < second.bottom) && (second.top < first.bottom)
+
+  private fun distanceSquared(bounds: Rect, x: Int, y: Int): Long {
+    val dx = maxOf(0, bounds.left - x, x - bounds.right).toLong()
+    val dy = maxOf(0, bounds.top - y, y - bounds.bottom).toLong()
+    return (dx * dx) + (dy * dy)
+  }
+}
@@ -0,0 +1,96 @@
+package team.itome.accessibilityanalyzer
+
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+/** Checks the widget kind predicates of [ViewHierarchyElement] for the class names of common views. */
+class WidgetKindTest {
+
+  companion object {
+    private val CLASS_NAMES = listOf(
+      "android.view.View",
+      "android.widget.ListView",
+      "android.widget.GridView",
+      "android.support.v7.widget.RecyclerView",
+      "androidx.recyclerview.widget.RecyclerView",
+      "android.widget.Spinner",
+      "android.widget.ScrollView",
+      "android.widget.HorizontalScrollView",
+      "androidx.core.widget.NestedScrollView",
+      "android.webkit.WebView",
+      "android.widget.TextView",
+      "androidx.appcompat.widget.AppCompatTextView",
+      "android.widget.Button",
+      "android.widget.TextClock",
+      "android.widget.Chronometer",
+      "android.widget.DigitalClock",
+      "android.widget.EditText",
+      "android.widget.ImageView",
+      "android.widget.ImageButton",
+      "com.example.ListViewHolder"
+    )
+  }
+
+  @Test
+  fun predicatesMatchClassNames() {
+    val views = createHierarchyProto(
+      CLASS_NAMES.mapIndexed { id, className ->
+        createViewProto(id, if (id == 0) -1 else 0, 0, 0, 100, 100)
+          .setClassName(className)
+      }
+    ).toHierarchy().activeWindow.allViews
+
+    assertEquals(CLASS_NAMES.map { expectedKinds(it) }, views.map { describeKinds(it) })
+  }
+
+  /** Returns the kinds that the predicates should find in [className]. */
+  private fun expectedKinds(className: String): List<String> {
+    val kinds = ArrayList<String>()
+    if (className.contains("WebView")) {
+      kinds.add("web view")
+    }
+    if (className.contains("TextView") || className.contains("EditText")) {
+      kinds.add("text view")
+    }
+    if (className.contains("EditText")) {
+      kinds.add("edit text")
+    }
+    if (className.contains("ImageView") || className.contains("ImageButton")) {
+      kinds.add("image view")
+    }
+    return kinds
+  }
+
+  private fun describeKinds(view: ViewHierarchyElement): List<String> {
+    val kinds = ArrayList<String>()
+    if (view.isListView) {
+      kinds.add("list view")
+    }
+    if (view.isSpinner) {
+      kinds.add("spinner")
+    }
+    if (view.isAdapterView) {
+      kinds.add("adapter view")
+    }
+    if (view.isScrollView) {
+      kinds.add("scroll view")
+    }
+    if (view.isHorizontalScrollView) {
+      kinds.add("horizontal scroll view")
+    }
+    if (view.isWebView) {
+      kinds.add("web view")
+    }
+    if (view.isTextView) {
+      kinds.add("text view")
+    }
+    if (view.isEditText) {
+      kinds.add("edit text")
+    }
+    if (view.isImageView) {
+      kinds.add("image view")
+    }
+    return kinds
+  }
+}